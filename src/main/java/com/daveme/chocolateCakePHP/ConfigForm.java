@@ -2,9 +2,7 @@ package com.daveme.chocolateCakePHP;
 
 import com.intellij.openapi.options.SearchableConfigurable;
 import com.intellij.openapi.project.Project;
-import com.intellij.util.indexing.FileBasedIndex;
-import com.daveme.chocolateCakePHP.view.viewfileindex.ViewFileIndexServiceKt;
-import com.daveme.chocolateCakePHP.view.viewvariableindex.ViewVariableIndexServiceKt;
+import com.intellij.psi.PsiManager;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -178,14 +176,14 @@ class ConfigForm implements SearchableConfigurable {
 
         applyToSettings(settings);
 
-        // Check if any indexing-relevant settings changed
-        boolean needsReindex = false;
+        // The indexes are settings-independent, but cached query results are not.
+        boolean needsCacheInvalidation = false;
 
         // Check individual enable flags changed
         if (wasCake2Enabled != settings.getCake2Enabled() ||
             wasCake3Enabled != settings.getCake3Enabled() ||
             wasCake3ForceEnabled != settings.getCake3ForceEnabled()) {
-            needsReindex = true;
+            needsCacheInvalidation = true;
         }
 
         // Other settings changed (only check if enabled)
@@ -195,19 +193,18 @@ class ConfigForm implements SearchableConfigurable {
                 !oldAppDir.equals(settings.getAppDirectory()) ||
                 !oldCake2AppDir.equals(settings.getCake2AppDirectory()) ||
                 !oldAppNamespace.equals(settings.getAppNamespace())) {
-                needsReindex = true;
+                needsCacheInvalidation = true;
             }
         }
 
-        if (needsReindex) {
-            requestIndexRebuild();
+        if (needsCacheInvalidation) {
+            invalidateSettingsDependentCaches();
         }
     }
 
-    private void requestIndexRebuild() {
-        FileBasedIndex fileIndex = FileBasedIndex.getInstance();
-        fileIndex.requestRebuild(ViewFileIndexServiceKt.getVIEW_FILE_INDEX_KEY());
-        fileIndex.requestRebuild(ViewVariableIndexServiceKt.getVIEW_VARIABLE_INDEX_KEY());
+    private void invalidateSettingsDependentCaches() {
+        project.getService(PhpFilesModificationTracker.class).incModificationCount();
+        PsiManager.getInstance(project).dropPsiCaches();
     }
 
 }
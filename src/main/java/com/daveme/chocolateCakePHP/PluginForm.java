@@ -1,5 +1,6 @@
 package com.daveme.chocolateCakePHP;
 
+import com.daveme.chocolateCakePHP.cake.CakeIndexInputFilterKt;
 import com.daveme.chocolateCakePHP.cake.PluginEntry;
 import com.daveme.chocolateCakePHP.cake.ThemeEntry;
 import com.daveme.chocolateCakePHP.ui.PluginTableModel;
@@ -9,16 +10,16 @@ import com.intellij.openapi.options.SearchableConfigurable;
 import com.intellij.openapi.project.Project;
 import com.intellij.ui.ToolbarDecorator;
 import com.intellij.ui.table.TableView;
-import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.psi.PsiManager;
 import com.intellij.util.ui.ElementProducer;
-import com.daveme.chocolateCakePHP.view.viewfileindex.ViewFileIndexServiceKt;
-import com.daveme.chocolateCakePHP.view.viewvariableindex.ViewVariableIndexServiceKt;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static com.daveme.chocolateCakePHP.SettingsKt.*;
 
@@ -244,15 +245,46 @@ public class PluginForm implements SearchableConfigurable {
 
             if (!oldPluginConfigs.equals(newPluginConfigs) ||
                 !oldThemeConfigs.equals(newThemeConfigs)) {
-                requestIndexRebuild();
+                reindexChangedPaths(oldPluginConfigs, oldThemeConfigs, newPluginConfigs, newThemeConfigs);
+                invalidateSettingsDependentCaches();
             }
         }
     }
 
-    private void requestIndexRebuild() {
-        FileBasedIndex fileIndex = FileBasedIndex.getInstance();
-        fileIndex.requestRebuild(ViewFileIndexServiceKt.getVIEW_FILE_INDEX_KEY());
-        fileIndex.requestRebuild(ViewVariableIndexServiceKt.getVIEW_VARIABLE_INDEX_KEY());
+    private void reindexChangedPaths(
+            List<PluginConfig> oldPluginConfigs,
+            List<ThemeConfig> oldThemeConfigs,
+            List<PluginConfig> newPluginConfigs,
+            List<ThemeConfig> newThemeConfigs
+    ) {
+        // Only the paths that were added or removed can change which files are indexed:
+        Set<String> oldPaths = pluginAndThemePaths(oldPluginConfigs, oldThemeConfigs);
+        Set<String> newPaths = pluginAndThemePaths(newPluginConfigs, newThemeConfigs);
+        Set<String> changedPaths = new HashSet<>(oldPaths);
+        changedPaths.addAll(newPaths);
+        Set<String> unchangedPaths = new HashSet<>(oldPaths);
+        unchangedPaths.retainAll(newPaths);
+        changedPaths.removeAll(unchangedPaths);
+        CakeIndexInputFilterKt.reindexPluginAndThemePaths(project, changedPaths);
+    }
+
+    private static Set<String> pluginAndThemePaths(
+            List<PluginConfig> pluginConfigs,
+            List<ThemeConfig> themeConfigs
+    ) {
+        Set<String> paths = new HashSet<>();
+        for (PluginConfig pluginConfig : pluginConfigs) {
+            paths.add(pluginConfig.getPluginPath());
+        }
+        for (ThemeConfig themeConfig : themeConfigs) {
+            paths.add(themeConfig.getPluginPath());
+        }
+        return paths;
+    }
+
+    private void invalidateSettingsDependentCaches() {
+        project.getService(PhpFilesModificationTracker.class).incModificationCount();
+        PsiManager.getInstance(project).dropPsiCaches();
     }
 
 }
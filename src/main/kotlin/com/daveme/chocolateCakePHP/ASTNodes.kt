@@ -1,6 +1,7 @@
 package com.daveme.chocolateCakePHP
 
 import com.intellij.lang.ASTNode
+import com.intellij.psi.tree.IElementType
 import com.jetbrains.php.lang.parser.PhpElementTypes;
 
 /**
@@ -11,6 +12,9 @@ import com.jetbrains.php.lang.parser.PhpElementTypes;
  * occur if JetBrains moves these constants within the PHP plugin's class hierarchy.
  * Since IElementType.toString() returns the debug name of the element type, string
  * comparison is a stable way to identify element types across PHP plugin versions.
+ *
+ * The string comparison only runs once per element type: the result is memoized
+ * by [IElementType.getIndex], so checks on the indexing hot path are an array load.
  */
 
 // Element type name constants
@@ -27,7 +31,7 @@ private const val IDENTIFIER = "IDENTIFIER"
  * - "CLASS_METHOD" matches "class method", "ClassMethod", "class-method"
  * - "identifier" matches "IDENTIFIER", "Identifier"
  */
-private fun equalsAlphaIgnoreCase(a: CharSequence, b: CharSequence): Boolean {
+internal fun equalsAlphaIgnoreCase(a: CharSequence, b: CharSequence): Boolean {
     var i = 0
     var j = 0
     val na = a.length
@@ -60,10 +64,45 @@ private fun Char.isAsciiLetter(): Boolean =
 private fun Char.lowerAscii(): Char =
     if (this in 'A'..'Z') (this + 32) else this
 
+/**
+ * Matches element types by debug name, remembering the answer for each registered
+ * element type. Element types are never unregistered, so a memoized answer stays valid.
+ */
+internal class ElementTypeNameMatcher(private val name: String) {
+    // 0 = not resolved yet, otherwise MATCH or NO_MATCH. Racing writers store the
+    // same value, so no synchronization is needed.
+    private val memo = ByteArray(Short.MAX_VALUE + 1)
+
+    fun matches(elementType: IElementType): Boolean {
+        val index = elementType.index.toInt()
+        if (index < 0) {
+            return equalsAlphaIgnoreCase(elementType.toString(), name)
+        }
+        return when (memo[index]) {
+            MATCH -> true
+            NO_MATCH -> false
+            else -> {
+                val matches = equalsAlphaIgnoreCase(elementType.toString(), name)
+                memo[index] = if (matches) MATCH else NO_MATCH
+                matches
+            }
+        }
+    }
+
+    private companion object {
+        const val MATCH: Byte = 1
+        const val NO_MATCH: Byte = 2
+    }
+}
+
+private val variableMatcher = ElementTypeNameMatcher(VARIABLE)
+private val classMethodMatcher = ElementTypeNameMatcher(CLASS_METHOD)
+private val identifierMatcher = ElementTypeNameMatcher(IDENTIFIER)
+
 // Extension functions for type checking
-fun ASTNode.isVariable() = equalsAlphaIgnoreCase(this.elementType.toString(), VARIABLE)
-fun ASTNode.isClassMethod() = equalsAlphaIgnoreCase(this.elementType.toString(), CLASS_METHOD)
-fun ASTNode.isIdentifier() = equalsAlphaIgnoreCase(this.elementType.toString(), IDENTIFIER)
+fun ASTNode.isVariable() = variableMatcher.matches(this.elementType)
+fun ASTNode.isClassMethod() = classMethodMatcher.matches(this.elementType)
+fun ASTNode.isIdentifier() = identifierMatcher.matches(this.elementType)
 fun ASTNode.isMethodReference() = this.elementType == PhpElementTypes.METHOD_REFERENCE
 fun ASTNode.isParameterList() = this.elementType == PhpElementTypes.PARAMETER_LIST
 fun ASTNode.isAssignmentExpression() = this.elementType == PhpElementTypes.ASSIGNMENT_EXPRESSION
@@ -76,3 +115,12 @@ fun ASTNode.isArrayAccessExpression() = this.elementType == PhpElementTypes.ARRA
 fun ASTNode.isHashArrayElement() = this.elementType == PhpElementTypes.HASH_ARRAY_ELEMENT
 fun ASTNode.isArrayKey() = this.elementType == PhpElementTypes.ARRAY_KEY
 fun ASTNode.isArrayValue() = this.elementType == PhpElementTypes.ARRAY_VALUE
+fun ASTNode.isNewExpression() = this.elementType == PhpElementTypes.NEW_EXPRESSION
+fun ASTNode.isClassReference() = this.elementType == PhpElementTypes.CLASS_REFERENCE
+fun ASTNode.isNumber() = this.elementType == PhpElementTypes.NUMBER
+fun ASTNode.isConstantReference() = this.elementType == PhpElementTypes.CONSTANT_REF
+fun ASTNode.isNamespace() = this.elementType == PhpElementTypes.NAMESPACE
+fun ASTNode.isUseList() = this.elementType == PhpElementTypes.USE_LIST
+fun ASTNode.isClass() = this.elementType == PhpElementTypes.CLASS
+fun ASTNode.isClassConstantReference() = this.elementType == PhpElementTypes.CLASS_CONSTANT_REFERENCE
+fun ASTNode.isExtendsList() = this.elementType == PhpElementTypes.EXTENDS_LIST
@@ -0,0 +1,165 @@
+package com.daveme.chocolateCakePHP
+
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.progress.ProgressManager
+import com.intellij.openapi.project.Project
+import com.intellij.psi.stubs.StubUpdatingIndex
+import com.intellij.psi.util.CachedValue
+import com.intellij.psi.util.CachedValueProvider
+import com.intellij.psi.util.CachedValuesManager
+import com.jetbrains.php.PhpIndex
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The kinds of classes the catalog keeps, and the classes they extend in
+ * CakePHP 2 and in CakePHP 3 and later.
+ */
+enum class CakeClassKind(
+    val cake2ParentClass: String?,
+    val cake3ParentClass: String,
+) {
+    // Models in CakePHP 2
+    TABLE("\\AppModel", "\\Cake\\ORM\\Table"),
+    ENTITY(null, "\\Cake\\ORM\\Entity"),
+    COMPONENT("\\AppComponent", "\\Cake\\Controller\\Component"),
+    HELPER("\\AppHelper", "\\Cake\\View\\Helper"),
+    BEHAVIOR("\\ModelBehavior", "\\Cake\\ORM\\Behavior"),
+    CONTROLLER("\\AppController", "\\Cake\\Controller\\Controller"),
+}
+
+/**
+ * A class in the catalog, kept as names only so no PSI is held on to.
+ */
+class CakeClass(val fqn: String, val name: String) {
+    val namespace: String
+        get() = fqn.substring(0, maxOf(0, fqn.lastIndexOf('\\')))
+
+    override fun equals(other: Any?): Boolean =
+        other is CakeClass && other.fqn == fqn
+
+    override fun hashCode(): Int = fqn.hashCode()
+
+    override fun toString(): String = fqn
+}
+
+/**
+ * The classes of one [CakeClassKind], grouped by short name and namespace.
+ */
+class CakeClassGroup(val classes: List<CakeClass>) {
+
+    private val byShortName: Map<String, List<CakeClass>> =
+        classes.groupBy { it.name.lowercase() }
+
+    private val byNamespace: Map<String, List<CakeClass>> =
+        classes.groupBy { it.namespace.lowercase() }
+
+    fun withShortName(name: String): List<CakeClass> =
+        byShortName[name.lowercase()] ?: emptyList()
+
+    fun inNamespace(namespace: String): List<CakeClass> =
+        byNamespace[namespace.absoluteClassName().lowercase()] ?: emptyList()
+
+    companion object {
+        @JvmField
+        val EMPTY = CakeClassGroup(emptyList())
+    }
+}
+
+private val cake2HelperBlackList = hashSetOf(
+    "Html5TestHelper",
+    "OtherHelperHelper",
+    "OptionEngineHelper",
+    "PluggedHelperHelper",
+    "HtmlAliasHelper",
+    "TestHtmlHelper",
+    "TestPluginAppHelper",
+    "TimeHelperTestObject",
+    "NumberHelperTestObject",
+    "TextHelperTestObject"
+)
+
+/**
+ * The tables, entities, components, helpers, behaviors and controllers in
+ * the project, for completion.
+ *
+ * Each kind is found with one walk over the subclass index, and kept until
+ * the stub index changes. Edits inside method bodies don't change any stubs,
+ * so typing doesn't throw the catalog away.
+ */
+@Service(Service.Level.PROJECT)
+class CakeClassCatalog(private val project: Project) {
+
+    private val groups = ConcurrentHashMap<String, CachedValue<CakeClassGroup>>()
+
+    /**
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun classes(kind: CakeClassKind, settings: Settings): CakeClassGroup {
+        val cake2ParentClass = kind.cake2ParentClass
+        val cake2Classes = if (settings.cake2Enabled && cake2ParentClass != null)
+            group(kind, cake2ParentClass)
+        else
+            null
+        val cake3Classes = if (settings.cake3Enabled)
+            group(kind, kind.cake3ParentClass)
+        else
+            null
+        return when {
+            cake2Classes == null -> cake3Classes ?: CakeClassGroup.EMPTY
+            cake3Classes == null -> cake2Classes
+            else -> CakeClassGroup((cake2Classes.classes + cake3Classes.classes).distinct())
+        }
+    }
+
+    /**
+     * The CakePHP 3+ classes of [kind]. Doesn't read the settings, so callers
+     * check that CakePHP 3+ is enabled first.
+     *
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun cake3Classes(kind: CakeClassKind): CakeClassGroup =
+        group(kind, kind.cake3ParentClass)
+
+    private fun group(kind: CakeClassKind, parentClass: String): CakeClassGroup {
+        val cachedValue = groups.computeIfAbsent(parentClass) {
+            CachedValuesManager.getManager(project).createCachedValue {
+                var classes = findSubclasses(parentClass)
+                if (kind == CakeClassKind.HELPER && parentClass == kind.cake2ParentClass) {
+                    classes = classes.filter { !cake2HelperBlackList.contains(it.name) }
+                }
+                CachedValueProvider.Result.create(
+                    CakeClassGroup(classes),
+                    indexModificationTracker(project, StubUpdatingIndex.INDEX_ID)
+                )
+            }
+        }
+        return cachedValue.value
+    }
+
+    private fun findSubclasses(fqn: String): List<CakeClass> {
+        val phpIndex = PhpIndex.getInstance(project)
+        val result = LinkedHashMap<String, CakeClass>()
+        val queue = ArrayDeque<String>()
+        queue.add(fqn)
+        val visited = mutableSetOf<String>()
+
+        while (queue.isNotEmpty()) {
+            ProgressManager.checkCanceled()
+
+            val currentFqn = queue.removeFirst()
+            if (!visited.add(currentFqn)) continue
+
+            for (subclass in phpIndex.getDirectSubclasses(currentFqn)) {
+                ProgressManager.checkCanceled()
+
+                val subclassFqn = subclass.fqn
+                if (!result.containsKey(subclassFqn)) {
+                    result[subclassFqn] = CakeClass(subclassFqn, subclass.name)
+                    queue.add(subclassFqn)
+                }
+            }
+        }
+
+        return result.values.toList()
+    }
+}
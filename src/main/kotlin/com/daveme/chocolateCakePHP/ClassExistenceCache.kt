@@ -0,0 +1,44 @@
+package com.daveme.chocolateCakePHP
+
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Key
+import com.intellij.psi.stubs.StubUpdatingIndex
+import com.intellij.psi.util.CachedValue
+import com.intellij.psi.util.CachedValueProvider
+import com.intellij.psi.util.CachedValuesManager
+import com.jetbrains.php.PhpIndex
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Whether classes exist, by FQN, so type providers can narrow a list of
+ * guessed class names down to the real ones without asking the PHP index
+ * about every guess each time.
+ *
+ * Cleared when the stub index changes.
+ */
+@Service(Service.Level.PROJECT)
+class ClassExistenceCache(private val project: Project) {
+
+    private fun existingClasses(): ConcurrentHashMap<String, Boolean> =
+        CachedValuesManager.getManager(project).getCachedValue(project, EXISTING_CLASSES_KEY, {
+            CachedValueProvider.Result.create(
+                ConcurrentHashMap<String, Boolean>(),
+                indexModificationTracker(project, StubUpdatingIndex.INDEX_ID)
+            )
+        }, false)
+
+    /**
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun exists(fqn: String): Boolean =
+        // PHP class names are case-insensitive
+        existingClasses().computeIfAbsent(fqn.lowercase()) {
+            PhpIndex.getInstance(project).getClassesByFQN(fqn).isNotEmpty()
+        }
+
+    companion object {
+        private val EXISTING_CLASSES_KEY =
+            Key.create<CachedValue<ConcurrentHashMap<String, Boolean>>>("chocolateCakePHP.existingClasses")
+    }
+}
@@ -1,6 +1,5 @@
 package com.daveme.chocolateCakePHP
 
-import com.intellij.openapi.progress.ProgressManager
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.patterns.PlatformPatterns
@@ -21,28 +20,6 @@ val PRIMITIVE_TYPES: Set<String> = setOf(
     "integer", "boolean", "double"
 )
 
-private const val VIEW_HELPER_CAKE2_PARENT_CLASS = "\\AppHelper"
-private const val VIEW_HELPER_CAKE3_PARENT_CLASS = "\\Cake\\View\\Helper"
-
-private const val MODEL_CAKE2_PARENT_CLASS = "\\AppModel"
-private const val MODEL_CAKE3_PARENT_CLASS = "\\Cake\\ORM\\Table"
-
-private const val COMPONENT_CAKE2_PARENT_CLASS = "\\AppComponent"
-private const val COMPONENT_CAKE3_PARENT_CLASS = "\\Cake\\Controller\\Component"
-
-private val cake2HelperBlackList = hashSetOf(
-    "Html5TestHelper",
-    "OtherHelperHelper",
-    "OptionEngineHelper",
-    "PluggedHelperHelper",
-    "HtmlAliasHelper",
-    "TestHtmlHelper",
-    "TestPluginAppHelper",
-    "TimeHelperTestObject",
-    "NumberHelperTestObject",
-    "TextHelperTestObject"
-)
-
 private val cakeSkipRenderingMethods : HashSet<String> = listOf(
     "beforeFilter",
     "beforeRender",
@@ -73,68 +50,6 @@ fun Method.isCustomizableViewMethod(): Boolean {
                 !cakeSkipRenderingMethods.contains(this.name.lowercase())
 }
 
-private fun PhpIndex.getAllSubclassesRecursively(
-    fqn: String
-): Collection<PhpClass> {
-    val result = mutableSetOf<PhpClass>()
-    val queue = ArrayDeque<String>()
-    queue.add(fqn)
-    val visited = mutableSetOf<String>()
-
-    while (queue.isNotEmpty()) {
-        ProgressManager.checkCanceled()
-
-        val currentFqn = queue.removeFirst()
-        if (!visited.add(currentFqn)) continue
-
-        val directSubclasses = getDirectSubclasses(currentFqn)
-        for (subclass in directSubclasses) {
-            ProgressManager.checkCanceled()
-
-            if (result.add(subclass)) {
-                queue.add(subclass.fqn)
-            }
-        }
-    }
-
-    return result
-}
-
-fun PhpIndex.getViewHelperSubclasses(settings: Settings): Collection<PhpClass> {
-    val result = mutableSetOf<PhpClass>()
-    if (settings.cake2Enabled) {
-        result += getAllSubclassesRecursively(VIEW_HELPER_CAKE2_PARENT_CLASS).filter {
-            !cake2HelperBlackList.contains(it.name)
-        }
-    }
-    if (settings.cake3Enabled) {
-        result += getAllSubclassesRecursively(VIEW_HELPER_CAKE3_PARENT_CLASS)
-    }
-    return result
-}
-
-fun PhpIndex.getModelSubclasses(settings: Settings): Collection<PhpClass> {
-    val result = mutableSetOf<PhpClass>()
-    if (settings.cake2Enabled) {
-        result += getAllSubclassesRecursively(MODEL_CAKE2_PARENT_CLASS)
-    }
-    if (settings.cake3Enabled) {
-        result += getAllSubclassesRecursively(MODEL_CAKE3_PARENT_CLASS)
-    }
-    return result
-}
-
-fun PhpIndex.getComponentSubclasses(settings: Settings): Collection<PhpClass> {
-    val result = mutableSetOf<PhpClass>()
-    if (settings.cake2Enabled) {
-        result += getAllSubclassesRecursively(COMPONENT_CAKE2_PARENT_CLASS)
-    }
-    if (settings.cake3Enabled) {
-        result += getAllSubclassesRecursively(COMPONENT_CAKE3_PARENT_CLASS)
-    }
-    return result
-}
-
 fun PhpIndex.getAllAncestorTypesFromFQNs(classes: List<String>): List<PhpClass> {
     val result = ArrayList<PhpClass>()
     classes.map {
@@ -261,6 +176,7 @@ fun viewHelperTypeFromFieldName(settings: Settings, fieldName: String): PhpType
     return result
 }
 
+// All the classes a controller field could refer to, whether they exist or not.
 fun componentOrModelTypeFromFieldName(settings: Settings, fieldName: String): PhpType {
     var result = PhpType()
     if (settings.cake2Enabled) {
@@ -268,8 +184,6 @@ fun componentOrModelTypeFromFieldName(settings: Settings, fieldName: String): Ph
             .add("\\" + fieldName + "Component")
     }
     if (settings.cake3Enabled) {
-        // todo defer lookup to `complete()` in typeProviders and only use either
-        //      the singular or plural, whichever is available.
         val pluralFieldName = Inflector.pluralize(fieldName)
 
         result = result.add("\\Cake\\Controller\\Component\\${fieldName}Component")
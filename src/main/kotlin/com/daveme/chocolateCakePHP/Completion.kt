@@ -56,7 +56,7 @@ class CompleteStringParameter(
 }
 
 fun CompletionResultSet.completeFromClasses(
-    classes: Collection<PhpClass>,
+    classes: Collection<CakeClass>,
     removeFromEnd: String = "",
     containingClasses: List<PhpClass> = arrayListOf(),
 ) {
@@ -67,13 +67,13 @@ fun CompletionResultSet.completeFromClasses(
         }
         val lookupElement = LookupElementBuilder.create(targetName)
                 .withIcon(PhpIcons.FIELD)
-                .withTypeText(klass.type.toString().substring(1))
+                .withTypeText(klass.fqn.removePrefix("\\"))
         this.addElement(lookupElement)
     }
 }
 
 fun CompletionResultSet.completeMethodCallWithParameterFromClasses(
-    classes: Collection<PhpClass>,
+    classes: Collection<CakeClass>,
     removeFromEnd: String = "",
     advanceBeyondClosingParen: Boolean = false,
 ) {
@@ -81,7 +81,7 @@ fun CompletionResultSet.completeMethodCallWithParameterFromClasses(
         val targetName = klass.name.removeFromEnd(removeFromEnd, ignoreCase = true)
         val lookupElement = LookupElementBuilder.create(targetName)
             .withIcon(PhpIcons.FIELD)
-            .withTypeText(klass.type.toString().substring(1))
+            .withTypeText(klass.fqn.removePrefix("\\"))
             .withInsertHandler(CompleteStringParameter(advanceBeyondClosingParen))
         this.addElement(lookupElement)
     }
@@ -0,0 +1,150 @@
+package com.daveme.chocolateCakePHP
+
+/**
+ * Byte-level multi-pattern scan that runs over a file's raw content before any
+ * lexing or parsing, so the indexers can drop most PHP files after one pass over
+ * their bytes.
+ *
+ * The patterns are matched with an Aho-Corasick automaton, ASCII case-insensitively
+ * (PHP method and function names are case-insensitive), and whitespace is skipped,
+ * so `$this -> render (` still matches `->render(`. A consequence is that `class `
+ * is matched as the bare word `class`. Comments and strings are not excluded here:
+ * like [PhpTokenPrescan], every bit errs on the side of being set.
+ */
+object ContentPrefilter {
+
+    const val RENDER_CALL = 1
+    const val ELEMENT_CALL = 1 shl 1
+    const val SET_CALL = 1 shl 2
+    const val VIEW_FIELD = 1 shl 3
+    const val VIEW_BUILDER = 1 shl 4
+    const val COMPACT_CALL = 1 shl 5
+    const val CLASS_KEYWORD = 1 shl 6
+    const val ASSOCIATION_CALL = 1 shl 7
+    const val FINDER_METHOD = 1 shl 8
+    const val BEHAVIOR_CALL = 1 shl 9
+
+    // Files with any of these may have explicit view file references
+    const val VIEW_FILE_REFERENCES = RENDER_CALL or ELEMENT_CALL or VIEW_FIELD or VIEW_BUILDER
+
+    // Files with any of these may have custom finders of their own
+    const val FINDERS = FINDER_METHOD or BEHAVIOR_CALL
+
+    private const val ALL = RENDER_CALL or ELEMENT_CALL or SET_CALL or VIEW_FIELD or
+            VIEW_BUILDER or COMPACT_CALL or CLASS_KEYWORD or ASSOCIATION_CALL or
+            FINDER_METHOD or BEHAVIOR_CALL
+
+    private val patterns = listOf(
+        "->render(" to RENDER_CALL,
+        "->element(" to ELEMENT_CALL,
+        "->set(" to SET_CALL,
+        "->view" to VIEW_FIELD,
+        "viewbuilder" to VIEW_BUILDER,
+        "compact(" to COMPACT_CALL,
+        "class" to CLASS_KEYWORD,
+        // Also matches ->belongsToMany(
+        "->belongsto" to ASSOCIATION_CALL,
+        "->hasmany(" to ASSOCIATION_CALL,
+        "->hasone(" to ASSOCIATION_CALL,
+        // `function findOwnedBy(`, with the whitespace skipped
+        "functionfind" to FINDER_METHOD,
+        "->addbehavior(" to BEHAVIOR_CALL,
+    )
+
+    // Maps each byte to a column of the transition table; 0 is "not in any pattern".
+    private val byteClass = IntArray(256)
+    private val classCount: Int
+    private val transitions: IntArray
+    private val outputs: IntArray
+
+    init {
+        var nextClass = 1
+        for ((pattern, _) in patterns) {
+            for (ch in pattern) {
+                val b = ch.code
+                if (byteClass[b] == 0) {
+                    byteClass[b] = nextClass
+                    if (ch in 'a'..'z') {
+                        byteClass[b - 32] = nextClass
+                    }
+                    nextClass++
+                }
+            }
+        }
+        classCount = nextClass
+
+        // Trie
+        val goto = mutableListOf(IntArray(classCount) { -1 })
+        val output = mutableListOf(0)
+        for ((pattern, bit) in patterns) {
+            var state = 0
+            for (ch in pattern) {
+                val column = byteClass[ch.code]
+                if (goto[state][column] < 0) {
+                    goto[state][column] = goto.size
+                    goto.add(IntArray(classCount) { -1 })
+                    output.add(0)
+                }
+                state = goto[state][column]
+            }
+            output[state] = output[state] or bit
+        }
+
+        // Failure links, folded into a complete transition table (breadth first)
+        val stateCount = goto.size
+        transitions = IntArray(stateCount * classCount)
+        outputs = IntArray(stateCount)
+        val failure = IntArray(stateCount)
+        val queue = ArrayDeque<Int>()
+        for (column in 0 until classCount) {
+            val next = goto[0][column]
+            if (next > 0) {
+                failure[next] = 0
+                transitions[column] = next
+                queue.addLast(next)
+            } else {
+                transitions[column] = 0
+            }
+        }
+        outputs[0] = output[0]
+        while (queue.isNotEmpty()) {
+            val state = queue.removeFirst()
+            outputs[state] = output[state] or outputs[failure[state]]
+            for (column in 0 until classCount) {
+                val next = goto[state][column]
+                if (next > 0) {
+                    failure[next] = transitions[failure[state] * classCount + column]
+                    transitions[state * classCount + column] = next
+                    queue.addLast(next)
+                } else {
+                    transitions[state * classCount + column] =
+                        transitions[failure[state] * classCount + column]
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the bits of the patterns found in [content].
+     */
+    fun scan(content: ByteArray): Int {
+        var state = 0
+        var found = 0
+        for (b in content) {
+            val unsigned = b.toInt() and 0xff
+            if (unsigned == ' '.code || unsigned == '\t'.code || unsigned == '\n'.code || unsigned == '\r'.code) {
+                continue
+            }
+            state = transitions[state * classCount + byteClass[unsigned]]
+            val matched = outputs[state]
+            if (matched != 0) {
+                found = found or matched
+                if (found == ALL) {
+                    break
+                }
+            }
+        }
+        return found
+    }
+
+}
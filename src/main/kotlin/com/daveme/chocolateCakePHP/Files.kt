@@ -1,5 +1,6 @@
 package com.daveme.chocolateCakePHP
 
+import com.intellij.openapi.fileEditor.FileDocumentManager
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.project.guessProjectDir
 import com.intellij.openapi.vfs.VfsUtil
@@ -60,3 +61,28 @@ fun createDirectoriesIfMissing(relativePath: String): Boolean {
 
     return true
 }
+
+/**
+ * The modification stamps of some files at the time they were read, to tell
+ * whether anything computed from them is still current. Unsaved changes count
+ * too.
+ */
+class FileStamps(files: Collection<VirtualFile>) {
+
+    val files: Set<VirtualFile> = LinkedHashSet(files)
+
+    private val stamps = this.files.map { stampOf(it) }.toLongArray()
+
+    fun isUpToDate(): Boolean {
+        for ((index, file) in files.withIndex()) {
+            if (!file.isValid || stampOf(file) != stamps[index]) {
+                return false
+            }
+        }
+        return true
+    }
+
+    private fun stampOf(file: VirtualFile): Long =
+        FileDocumentManager.getInstance().getCachedDocument(file)?.modificationStamp
+            ?: file.modificationStamp
+}
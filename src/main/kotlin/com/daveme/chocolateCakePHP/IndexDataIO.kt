@@ -0,0 +1,92 @@
+package com.daveme.chocolateCakePHP
+
+import com.intellij.util.io.DataInputOutputUtil
+import com.intellij.util.io.IOUtil
+import java.io.DataInput
+import java.io.DataOutput
+import java.io.IOException
+
+/**
+ * Helpers shared by the plugin's index value externalizers.
+ *
+ * Values start with a format byte, so the layout can change without relying
+ * on the index version alone. Counts and offsets are varints, and offsets are
+ * stored as zigzag-encoded deltas so unsorted values stay small.
+ */
+
+fun writeIndexFormat(out: DataOutput, format: Int) {
+    out.writeByte(format)
+}
+
+fun readIndexFormat(input: DataInput, expectedFormat: Int) {
+    val format = input.readUnsignedByte()
+    if (format != expectedFormat) {
+        throw IOException("Unsupported index value format $format (expected $expectedFormat)")
+    }
+}
+
+fun writeVarInt(out: DataOutput, value: Int) {
+    DataInputOutputUtil.writeINT(out, value)
+}
+
+fun readVarInt(input: DataInput): Int {
+    return DataInputOutputUtil.readINT(input)
+}
+
+fun writeOffsetDelta(out: DataOutput, offset: Int, previousOffset: Int) {
+    val delta = offset - previousOffset
+    writeVarInt(out, (delta shl 1) xor (delta shr 31))
+}
+
+fun readOffsetDelta(input: DataInput, previousOffset: Int): Int {
+    val zigzag = readVarInt(input)
+    val delta = (zigzag ushr 1) xor -(zigzag and 1)
+    return previousOffset + delta
+}
+
+/**
+ * Writes strings as references into a per-value table: the first occurrence
+ * is written inline, later ones as a varint id. Strings in [predefined] never
+ * need to be written inline at all.
+ *
+ * Ids: 0 means an inline string follows, 1..predefined.size are predefined
+ * strings, and anything above refers to an earlier inline string.
+ */
+class IndexStringTableWriter(
+    private val out: DataOutput,
+    private val predefined: List<String>
+) {
+    private val seen = HashMap<String, Int>()
+
+    fun write(value: String) {
+        val predefinedIndex = predefined.indexOf(value)
+        if (predefinedIndex >= 0) {
+            writeVarInt(out, predefinedIndex + 1)
+            return
+        }
+        val seenIndex = seen[value]
+        if (seenIndex != null) {
+            writeVarInt(out, predefined.size + 1 + seenIndex)
+            return
+        }
+        writeVarInt(out, 0)
+        IOUtil.writeUTF(out, value)
+        seen[value] = seen.size
+    }
+}
+
+class IndexStringTableReader(
+    private val input: DataInput,
+    private val predefined: List<String>
+) {
+    private val seen = ArrayList<String>()
+
+    fun read(): String {
+        val id = readVarInt(input)
+        return when {
+            id == 0 -> IOUtil.readUTF(input).also { seen.add(it) }
+            id <= predefined.size -> predefined[id - 1]
+            else -> seen[id - predefined.size - 1]
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.daveme.chocolateCakePHP
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread
+import com.intellij.openapi.actionSystem.AnAction
+import com.intellij.openapi.actionSystem.AnActionEvent
+import com.intellij.openapi.application.PathManager
+import com.intellij.openapi.ui.Messages
+import java.io.File
+import java.io.IOException
+
+const val INDEXING_REPORT_FILE_NAME = "chocolate-cakephp-indexing-report.json"
+
+/**
+ * Writes the costs collected by [IndexingStats] to a JSON file in the IDE log directory.
+ */
+class IndexingReportAction : AnAction() {
+
+    override fun getActionUpdateThread(): ActionUpdateThread {
+        return ActionUpdateThread.BGT
+    }
+
+    override fun actionPerformed(e: AnActionEvent) {
+        val dialogTitle = "Chocolate CakePHP Indexing Report"
+        if (!IndexingStats.isEnabled) {
+            Messages.showInfoMessage(
+                "Indexing statistics are disabled. Enable the \"$INDEXING_STATS_REGISTRY_KEY\" " +
+                        "registry key and reindex to collect them.",
+                dialogTitle
+            )
+            return
+        }
+
+        val reportFile = File(PathManager.getLogPath(), INDEXING_REPORT_FILE_NAME)
+        try {
+            reportFile.writeText(IndexingStats.toJson())
+        } catch (ex: IOException) {
+            Messages.showErrorDialog("Failed to write ${reportFile.path}: ${ex.message}", dialogTitle)
+            return
+        }
+        Messages.showInfoMessage("Wrote indexing report to ${reportFile.path}", dialogTitle)
+    }
+
+}
@@ -0,0 +1,244 @@
+package com.daveme.chocolateCakePHP
+
+import com.intellij.openapi.util.registry.Registry
+import com.intellij.util.indexing.FileContent
+import com.intellij.util.io.DataExternalizer
+import com.intellij.util.io.IOUtil
+import java.io.DataOutputStream
+import java.io.OutputStream
+import java.util.PriorityQueue
+import java.util.concurrent.ConcurrentHashMap
+
+const val INDEXING_STATS_REGISTRY_KEY = "chocolatecakephp.indexing.stats"
+
+/**
+ * Counters an indexer fills in while it maps one file.
+ */
+class IndexingCounters {
+    var nodesVisited = 0
+}
+
+/**
+ * The cost of indexing one file.
+ */
+data class IndexedFileCost(
+    val path: String,
+    val wallTimeMicros: Long,
+    val nodesVisited: Int,
+    val keysEmitted: Int,
+    val serializedBytes: Int,
+)
+
+/**
+ * Histogram with power-of-two buckets: bucket `n` counts values in `[2^(n-1), 2^n)`,
+ * and bucket 0 counts zeros.
+ */
+class Log2Histogram {
+    val buckets = LongArray(64)
+
+    fun add(value: Long) {
+        val bucket = if (value <= 0) 0 else 64 - java.lang.Long.numberOfLeadingZeros(value)
+        buckets[bucket]++
+    }
+}
+
+/**
+ * Aggregated indexing costs of one indexer.
+ */
+class IndexerStats(val indexerName: String) {
+    var filesIndexed = 0L
+        private set
+    var totalWallTimeMicros = 0L
+        private set
+    var totalNodesVisited = 0L
+        private set
+    var totalKeysEmitted = 0L
+        private set
+    var totalSerializedBytes = 0L
+        private set
+
+    val wallTimeMicros = Log2Histogram()
+    val nodesVisited = Log2Histogram()
+    val keysEmitted = Log2Histogram()
+    val serializedBytes = Log2Histogram()
+
+    // Min-heap on wall time, so the cheapest of the slowest files gets evicted
+    private val slowestFiles = PriorityQueue<IndexedFileCost>(compareBy { it.wallTimeMicros })
+
+    @Synchronized
+    fun add(cost: IndexedFileCost) {
+        filesIndexed++
+        totalWallTimeMicros += cost.wallTimeMicros
+        totalNodesVisited += cost.nodesVisited
+        totalKeysEmitted += cost.keysEmitted
+        totalSerializedBytes += cost.serializedBytes
+        wallTimeMicros.add(cost.wallTimeMicros)
+        nodesVisited.add(cost.nodesVisited.toLong())
+        keysEmitted.add(cost.keysEmitted.toLong())
+        serializedBytes.add(cost.serializedBytes.toLong())
+        slowestFiles.add(cost)
+        if (slowestFiles.size > MAX_SLOWEST_FILES) {
+            slowestFiles.poll()
+        }
+    }
+
+    @Synchronized
+    fun slowestFiles(): List<IndexedFileCost> =
+        slowestFiles.sortedByDescending { it.wallTimeMicros }
+
+    @Synchronized
+    fun writeJson(out: StringBuilder) {
+        out.append("{")
+        out.append("\"indexer\":").appendJsonString(indexerName)
+        out.append(",\"filesIndexed\":").append(filesIndexed)
+        out.append(",\"totalWallTimeMicros\":").append(totalWallTimeMicros)
+        out.append(",\"totalNodesVisited\":").append(totalNodesVisited)
+        out.append(",\"totalKeysEmitted\":").append(totalKeysEmitted)
+        out.append(",\"totalSerializedBytes\":").append(totalSerializedBytes)
+        out.append(",\"histograms\":{")
+        out.append("\"wallTimeMicros\":").appendHistogram(wallTimeMicros)
+        out.append(",\"nodesVisited\":").appendHistogram(nodesVisited)
+        out.append(",\"keysEmitted\":").appendHistogram(keysEmitted)
+        out.append(",\"serializedBytes\":").appendHistogram(serializedBytes)
+        out.append("},\"slowestFiles\":[")
+        slowestFiles().forEachIndexed { index, cost ->
+            if (index > 0) out.append(",")
+            out.append("{\"path\":").appendJsonString(cost.path)
+            out.append(",\"wallTimeMicros\":").append(cost.wallTimeMicros)
+            out.append(",\"nodesVisited\":").append(cost.nodesVisited)
+            out.append(",\"keysEmitted\":").append(cost.keysEmitted)
+            out.append(",\"serializedBytes\":").append(cost.serializedBytes)
+            out.append("}")
+        }
+        out.append("]}")
+    }
+
+    companion object {
+        const val MAX_SLOWEST_FILES = 50
+    }
+}
+
+/**
+ * Opt-in instrumentation for the plugin's indexers, turned on with the
+ * `chocolatecakephp.indexing.stats` registry key. When it is off, the only cost
+ * is one registry lookup per indexed file.
+ */
+object IndexingStats {
+
+    private val statsByIndexer = ConcurrentHashMap<String, IndexerStats>()
+
+    val isEnabled: Boolean
+        get() = Registry.`is`(INDEXING_STATS_REGISTRY_KEY, false)
+
+    /**
+     * Runs [indexer] for one file, and records its cost when instrumentation
+     * is on. Serialized bytes are measured by writing the keys and values to a
+     * counting stream, the way the index storage would.
+     */
+    fun <V> measure(
+        indexerName: String,
+        inputData: FileContent,
+        valueExternalizer: DataExternalizer<V>,
+        indexer: (IndexingCounters) -> MutableMap<String, V>
+    ): MutableMap<String, V> {
+        val counters = IndexingCounters()
+        if (!isEnabled) {
+            return indexer(counters)
+        }
+
+        val start = System.nanoTime()
+        val result = indexer(counters)
+        val wallTimeMicros = (System.nanoTime() - start) / 1000
+
+        statsFor(indexerName).add(
+            IndexedFileCost(
+                path = inputData.file.path,
+                wallTimeMicros = wallTimeMicros,
+                nodesVisited = counters.nodesVisited,
+                keysEmitted = result.size,
+                serializedBytes = serializedSize(result, valueExternalizer),
+            )
+        )
+        return result
+    }
+
+    fun statsFor(indexerName: String): IndexerStats =
+        statsByIndexer.computeIfAbsent(indexerName) { IndexerStats(it) }
+
+    fun allStats(): List<IndexerStats> =
+        statsByIndexer.values.sortedBy { it.indexerName }
+
+    fun reset() {
+        statsByIndexer.clear()
+    }
+
+    fun toJson(): String {
+        val out = StringBuilder()
+        out.append("{\"indexers\":[")
+        allStats().forEachIndexed { index, stats ->
+            if (index > 0) out.append(",")
+            stats.writeJson(out)
+        }
+        out.append("]}")
+        return out.toString()
+    }
+
+    private fun <V> serializedSize(result: Map<String, V>, valueExternalizer: DataExternalizer<V>): Int {
+        val counter = CountingOutputStream()
+        val out = DataOutputStream(counter)
+        for ((key, value) in result) {
+            IOUtil.writeUTF(out, key)
+            valueExternalizer.save(out, value)
+        }
+        out.flush()
+        return counter.count
+    }
+
+    private class CountingOutputStream : OutputStream() {
+        var count = 0
+
+        override fun write(b: Int) {
+            count++
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            count += len
+        }
+    }
+}
+
+private fun StringBuilder.appendHistogram(histogram: Log2Histogram): StringBuilder {
+    // Only non-empty buckets, keyed by their exclusive upper bound ("0" for zeros)
+    append("{")
+    var first = true
+    histogram.buckets.forEachIndexed { bucket, count ->
+        if (count == 0L) return@forEachIndexed
+        if (!first) append(",")
+        first = false
+        val label = when {
+            bucket == 0 -> "0"
+            bucket >= 63 -> "max"
+            else -> "<" + (1L shl bucket)
+        }
+        append("\"").append(label).append("\":").append(count)
+    }
+    append("}")
+    return this
+}
+
+private fun StringBuilder.appendJsonString(value: String): StringBuilder {
+    append('"')
+    for (ch in value) {
+        when {
+            ch == '"' -> append("\\\"")
+            ch == '\\' -> append("\\\\")
+            ch == '\n' -> append("\\n")
+            ch == '\r' -> append("\\r")
+            ch == '\t' -> append("\\t")
+            ch < ' ' -> append(String.format("\\u%04x", ch.code))
+            else -> append(ch)
+        }
+    }
+    append('"')
+    return this
+}
@@ -1,8 +1,11 @@
 package com.daveme.chocolateCakePHP
 
+import com.daveme.chocolateCakePHP.cake.isInExcludedDirectory
 import com.intellij.openapi.Disposable
 import com.intellij.openapi.components.Service
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.roots.ProjectFileIndex
+import com.intellij.openapi.util.ModificationTracker
 import com.intellij.openapi.util.SimpleModificationTracker
 import com.intellij.openapi.vfs.VirtualFileManager
 import com.intellij.openapi.vfs.newvfs.BulkFileListener
@@ -14,6 +17,8 @@ import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent
 import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent
 import com.intellij.openapi.fileTypes.FileTypeRegistry
 import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.util.indexing.FileBasedIndex
+import com.intellij.util.indexing.ID
 import com.jetbrains.php.lang.PhpFileType
 
 /**
@@ -22,6 +27,10 @@ import com.jetbrains.php.lang.PhpFileType
  * This is used to invalidate caches that depend on PHP file contents,
  * such as the view variable cache which depends on controller files.
  *
+ * Changes to files that can't affect the application's controllers, views
+ * or models are ignored: excluded and library roots, and `vendor`, `tests`
+ * and similar directories (see [isInExcludedDirectory]).
+ *
  * The tracker uses lazy initialization - it only subscribes to VFS changes when
  * first needed, and only if the plugin is enabled for the project. This ensures
  * zero overhead for non-CakePHP projects.
@@ -40,9 +49,19 @@ class PhpFilesModificationTracker(
             // CakePHP project detected - arm the VFS listener
             val connection = project.messageBus.connect(this)
             connection.subscribe(VirtualFileManager.VFS_CHANGES, object : BulkFileListener {
+                override fun before(events: List<VFileEvent>) {
+                    // Deleted files can only be checked while they still exist
+                    for (e in events) {
+                        if (e is VFileDeleteEvent && affectsPhpFile(e)) {
+                            incModificationCount()
+                            break
+                        }
+                    }
+                }
+
                 override fun after(events: List<VFileEvent>) {
                     for (e in events) {
-                        if (affectsPhpFile(e)) {
+                        if (e !is VFileDeleteEvent && affectsPhpFile(e)) {
                             incModificationCount()
                             break
                         }
@@ -83,6 +102,8 @@ class PhpFilesModificationTracker(
             else -> null
         } ?: return false
 
+        if (isIgnored(file)) return false
+
         if (isPhp(file)) return true
 
         if (e is VFilePropertyChangeEvent && e.isRename) {
@@ -93,7 +114,25 @@ class PhpFilesModificationTracker(
         return false
     }
 
+    private fun isIgnored(file: VirtualFile): Boolean {
+        if (!file.isValid) {
+            return false
+        }
+        val fileIndex = ProjectFileIndex.getInstance(project)
+        return fileIndex.isExcluded(file) ||
+                fileIndex.isInLibrary(file) ||
+                isInExcludedDirectory(project, file)
+    }
+
     override fun dispose() {
         // Connection is automatically disposed via parent disposable
     }
 }
+
+/**
+ * Tracks updates to one of the plugin's file-based indexes.
+ */
+fun indexModificationTracker(project: Project, indexId: ID<*, *>): ModificationTracker =
+    ModificationTracker {
+        FileBasedIndex.getInstance().getIndexModificationStamp(indexId, project)
+    }
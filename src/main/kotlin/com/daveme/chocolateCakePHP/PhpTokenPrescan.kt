@@ -0,0 +1,110 @@
+package com.daveme.chocolateCakePHP
+
+import com.intellij.lang.LanguageParserDefinitions
+import com.intellij.openapi.project.Project
+import com.intellij.psi.TokenType
+import com.jetbrains.php.lang.PhpLanguage
+import com.jetbrains.php.lang.lexer.PhpTokenTypes
+
+/**
+ * What a lexer-only pass over a PHP file found. The indexers use this to decide
+ * whether building the AST is worth it at all.
+ *
+ * Every flag errs on the side of true: a false positive costs a parse, while a
+ * false negative would silently drop index entries.
+ */
+data class PhpPrescanResult(
+    // `->render(`, `->element(`, `->view =`, or `->setTemplate*(` candidates
+    val hasViewFileCandidates: Boolean,
+    // `->set(` candidates
+    val hasSetCalls: Boolean,
+    // At least one `function` keyword, so there may be controller actions
+    val hasFunctions: Boolean,
+) {
+    companion object {
+        val NOTHING = PhpPrescanResult(
+            hasViewFileCandidates = false,
+            hasSetCalls = false,
+            hasFunctions = false
+        )
+    }
+}
+
+/**
+ * Scans the PHP token stream for `->identifier` pairs and function declarations
+ * without building PSI or an AST.
+ */
+object PhpTokenPrescan {
+
+    private val viewFileMethodNames = arrayOf(
+        "render",
+        "element",
+        "view",
+        "setTemplate",
+        "setTemplatePath",
+    )
+
+    fun scan(project: Project?, text: CharSequence): PhpPrescanResult {
+        val parserDefinition = LanguageParserDefinitions.INSTANCE.forLanguage(PhpLanguage.INSTANCE)
+            ?: return PhpPrescanResult(
+                hasViewFileCandidates = true,
+                hasSetCalls = true,
+                hasFunctions = true
+            )
+        val commentTokens = parserDefinition.commentTokens
+        val lexer = parserDefinition.createLexer(project)
+        lexer.start(text)
+
+        var hasViewFileCandidates = false
+        var hasSetCalls = false
+        var hasFunctions = false
+        var previousWasArrow = false
+
+        while (true) {
+            val tokenType = lexer.tokenType ?: break
+            if (tokenType == TokenType.WHITE_SPACE || commentTokens.contains(tokenType)) {
+                lexer.advance()
+                continue
+            }
+
+            when (tokenType) {
+                PhpTokenTypes.kwFUNCTION -> hasFunctions = true
+                PhpTokenTypes.IDENTIFIER -> if (previousWasArrow) {
+                    val start = lexer.tokenStart
+                    val length = lexer.tokenEnd - start
+                    if (!hasSetCalls && tokenEquals(text, start, length, "set")) {
+                        hasSetCalls = true
+                    } else if (!hasViewFileCandidates && viewFileMethodNames.any { tokenEquals(text, start, length, it) }) {
+                        hasViewFileCandidates = true
+                    }
+                }
+            }
+
+            if (hasViewFileCandidates && hasSetCalls && hasFunctions) {
+                break
+            }
+            previousWasArrow = tokenType == PhpTokenTypes.ARROW
+            lexer.advance()
+        }
+
+        return PhpPrescanResult(
+            hasViewFileCandidates = hasViewFileCandidates,
+            hasSetCalls = hasSetCalls,
+            hasFunctions = hasFunctions
+        )
+    }
+
+    // PHP method names are case-insensitive, so compare that way without allocating.
+    private fun tokenEquals(text: CharSequence, start: Int, length: Int, name: String): Boolean {
+        if (length != name.length) {
+            return false
+        }
+        for (i in 0 until length) {
+            if (!text[start + i].equals(name[i], ignoreCase = true)) {
+                return false
+            }
+        }
+        return true
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.daveme.chocolateCakePHP
 
+import com.daveme.chocolateCakePHP.controller.ControllerFieldTypeProvider
 import com.intellij.openapi.project.Project
 import com.jetbrains.php.PhpIndex
 import com.jetbrains.php.lang.psi.resolve.types.PhpType
@@ -39,7 +40,11 @@ fun PhpType.isProbablyTableClass(): Boolean =
     if (this.isComplete)
         this.types.any { it.isAnyTableClass() }
     else
-        this.types.any { it.contains("Table", ignoreCase = true) }
+        this.types.any {
+            it.contains("Table", ignoreCase = true) ||
+                    // $this->Movies in a controller, resolved in complete()
+                    it.startsWith("#${ControllerFieldTypeProvider.TYPE_PROVIDER_CHAR}")
+        }
 
 fun PhpType.isProbablyQueryObject(): Boolean =
     if (this.isComplete)
@@ -7,6 +7,7 @@ import com.intellij.openapi.components.*
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.project.guessProjectDir
 import com.intellij.openapi.util.ModificationTracker
+import com.intellij.openapi.util.SimpleModificationTracker
 import com.intellij.openapi.vfs.VfsUtil
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.psi.util.CachedValueProvider
@@ -220,6 +221,17 @@ class Settings(val project: Project) : PersistentStateComponent<SettingsState>,
 
     private var state = SettingsState()
 
+    private val stateModificationTracker = SimpleModificationTracker()
+
+    /**
+     * Changes when the settings are changed, or when the values autodetected
+     * from composer.json and config/app.php may have changed.
+     */
+    val modificationTracker: ModificationTracker = ModificationTracker {
+        stateModificationTracker.modificationCount +
+                project.getService(CakePhpFilesModificationTracker::class.java).modificationCount
+    }
+
     override fun dispose() {
         // nothing here, but maybe should keep track of things to dispose that use this?
     }
@@ -335,6 +347,7 @@ class Settings(val project: Project) : PersistentStateComponent<SettingsState>,
 
     override fun loadState(newState: SettingsState) {
         XmlSerializerUtil.copyBean(newState, this.state)
+        stateModificationTracker.incModificationCount()
     }
 
     companion object {
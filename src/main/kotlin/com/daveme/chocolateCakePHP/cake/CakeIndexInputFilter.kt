@@ -0,0 +1,195 @@
+package com.daveme.chocolateCakePHP.cake
+
+import com.daveme.chocolateCakePHP.Settings
+import com.daveme.chocolateCakePHP.view.viewfileindex.isTemplateDir
+import com.intellij.openapi.application.ReadAction
+import com.intellij.openapi.progress.ProgressManager
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.project.guessProjectDir
+import com.intellij.openapi.vfs.VfsUtilCore
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.util.indexing.FileBasedIndex
+import com.intellij.util.indexing.IndexedFile
+import com.intellij.util.concurrency.AppExecutorUtil
+
+// Directories that never contain application controllers or templates, unless
+// they are part of a configured plugin or theme path.
+private val excludedDirectoryNames = hashSetOf(
+    "vendor",
+    "tmp",
+    "logs",
+    "tests",
+    "node_modules",
+)
+
+/**
+ * Input filter for the plugin's file-based indexes that understands the CakePHP
+ * project layout, so files whose index output would be empty anyway are skipped
+ * before their content is loaded.
+ *
+ * Accepted files are PHP files that are not tests and that are either a
+ * controller, or (when [acceptTemplates] is set) live below a
+ * `templates`/`Template`/`View` directory. Anything under `vendor`, `tmp`, `logs`,
+ * `tests` or `node_modules` is rejected unless it is inside a configured plugin
+ * or theme path.
+ */
+class CakeIndexInputFilter(
+    private val acceptTemplates: Boolean
+) : FileBasedIndex.ProjectSpecificInputFilter {
+
+    override fun acceptInput(file: IndexedFile): Boolean {
+        val virtualFile = file.file
+        if (virtualFile.fileType.name != "PHP") {
+            return false
+        }
+        val nameWithoutExtension = virtualFile.nameWithoutExtension
+        if (nameWithoutExtension.endsWith("Test")) {
+            return false
+        }
+
+        val isController = controllerPathFromControllerFile(virtualFile) != null &&
+                isCakeControllerFile(virtualFile)
+        if (!isController && !(acceptTemplates && hasTemplateDirAncestor(virtualFile))) {
+            return false
+        }
+
+        return !isInExcludedDirectory(file.project, virtualFile)
+    }
+
+    private fun hasTemplateDirAncestor(file: VirtualFile): Boolean {
+        var current = file.parent
+        while (current != null) {
+            if (isTemplateDir(current)) {
+                return true
+            }
+            current = current.parent
+        }
+        return false
+    }
+
+}
+
+/**
+ * Input filter for the indexes of model classes: PHP files like
+ * `Model/Table/ArticlesTable.php` for each of the [types] (`Table`,
+ * `Behavior`), in the app or a configured plugin.
+ */
+class ModelClassIndexInputFilter(
+    private vararg val types: String
+) : FileBasedIndex.ProjectSpecificInputFilter {
+
+    override fun acceptInput(file: IndexedFile): Boolean {
+        val virtualFile = file.file
+        if (virtualFile.fileType.name != "PHP") {
+            return false
+        }
+        val typeDir = virtualFile.parent ?: return false
+        val type = typeDir.name
+        if (
+            type !in types ||
+            typeDir.parent?.name != "Model" ||
+            !virtualFile.nameWithoutExtension.endsWith(type)
+        ) {
+            return false
+        }
+        return !isInExcludedDirectory(file.project, virtualFile)
+    }
+
+}
+
+/**
+ * Whether [file] is below a `vendor`, `tmp`, `logs`, `tests` or `node_modules`
+ * directory of the project, and not inside a configured plugin or theme path.
+ * Those directories are still excluded inside a plugin or theme.
+ */
+fun isInExcludedDirectory(project: Project?, file: VirtualFile): Boolean {
+    val projectDir = project?.guessProjectDir()
+    if (!hasExcludedAncestor(file, projectDir)) {
+        return false
+    }
+    if (project == null || projectDir == null) {
+        return true
+    }
+    val pluginDir = pluginAndThemeDirectoryOf(project, projectDir, file) ?: return true
+    return hasExcludedAncestor(file, pluginDir)
+}
+
+private fun hasExcludedAncestor(file: VirtualFile, stopAt: VirtualFile?): Boolean {
+    var current = file.parent
+    while (current != null && current != stopAt) {
+        if (excludedDirectoryNames.contains(current.name)) {
+            return true
+        }
+        current = current.parent
+    }
+    return false
+}
+
+private fun pluginAndThemeDirectoryOf(project: Project, projectDir: VirtualFile, file: VirtualFile): VirtualFile? {
+    val settings = Settings.getInstance(project)
+    for (config in settings.pluginAndThemeConfigs) {
+        val pluginDir = pluginDirectories(projectDir, config.pluginPath)
+            .firstOrNull { VfsUtilCore.isAncestor(it, file, false) }
+        if (pluginDir != null) {
+            return pluginDir
+        }
+    }
+    return null
+}
+
+/**
+ * The directories a configured plugin or theme path points to. Plugin paths
+ * are relative to the app root, which is usually the project directory but may
+ * be one level below it. That level is never one of the excluded directories.
+ */
+private fun pluginDirectories(projectDir: VirtualFile, pluginPath: String): List<VirtualFile> {
+    val relativePath = pluginPath.trim('/')
+    if (relativePath.isEmpty()) {
+        return emptyList()
+    }
+    val roots = sequenceOf(projectDir) + projectDir.children.asSequence()
+        .filter { it.isDirectory && !excludedDirectoryNames.contains(it.name) }
+    return roots.mapNotNull { it.findFileByRelativePath(relativePath) }
+        .filter { it.isDirectory }
+        .toList()
+}
+
+/**
+ * Plugin and theme paths are the only settings [CakeIndexInputFilter] depends on.
+ * When they change, only the files below the added or removed paths need to be
+ * re-filtered, not the whole project.
+ *
+ * Called from the settings dialog, so the plugin trees are walked in a
+ * background read action instead of on the UI thread.
+ */
+fun reindexPluginAndThemePaths(project: Project, changedPluginPaths: Collection<String>) {
+    if (changedPluginPaths.all { it.trim('/').isEmpty() }) {
+        return
+    }
+    ReadAction.nonBlocking<List<VirtualFile>> {
+        filesBelowPluginPaths(project, changedPluginPaths)
+    }
+        .expireWith(project)
+        .submit(AppExecutorUtil.getAppExecutorService())
+        .onSuccess { files ->
+            val fileIndex = FileBasedIndex.getInstance()
+            files.forEach { fileIndex.requestReindex(it) }
+        }
+}
+
+private fun filesBelowPluginPaths(project: Project, pluginPaths: Collection<String>): List<VirtualFile> {
+    val projectDir = project.guessProjectDir() ?: return emptyList()
+    val result = mutableListOf<VirtualFile>()
+    for (pluginPath in pluginPaths) {
+        for (pluginDir in pluginDirectories(projectDir, pluginPath)) {
+            VfsUtilCore.iterateChildrenRecursively(pluginDir, null) { file ->
+                ProgressManager.checkCanceled()
+                if (!file.isDirectory) {
+                    result.add(file)
+                }
+                true
+            }
+        }
+    }
+    return result
+}
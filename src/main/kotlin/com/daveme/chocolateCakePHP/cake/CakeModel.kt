@@ -1,6 +1,8 @@
 package com.daveme.chocolateCakePHP.cake
 
 import com.daveme.chocolateCakePHP.Settings
+import com.daveme.chocolateCakePHP.absoluteClassName
+import com.daveme.chocolateCakePHP.effectivePluginName
 import com.jetbrains.php.PhpIndex
 import com.jetbrains.php.lang.psi.elements.PhpClass
 
@@ -17,4 +19,31 @@ fun PhpIndex.getPossibleTableClasses(settings: Settings, possibleTableName: Stri
         resultClasses += this.getClassesByFQN("${pluginConfig.namespace}\\Model\\Table\\${possibleTableName}Table")
     }
     return resultClasses
-}
\ No newline at end of file
+}
+/**
+ * The class a model name refers to, resolved the way CakePHP's
+ * `App::className()` does for the given [type] (`Table`, `Behavior`):
+ * `Articles` is `\App\Model\Table\ArticlesTable`, and `Plugin.Articles` is
+ * `\Plugin\Model\Table\ArticlesTable`. Class names are returned as they are.
+ */
+fun modelClassName(settings: Settings, name: String, type: String): String {
+    if (name.contains('\\')) {
+        return name.absoluteClassName()
+    }
+    val pluginName = name.substringBeforeLast('.', "")
+    val baseName = name.substringAfterLast('.')
+    val namespace = if (pluginName.isEmpty())
+        settings.appNamespace
+    else
+        pluginNamespace(settings, pluginName)
+    return "${namespace}\\Model\\${type}\\${baseName}${type}"
+}
+
+private fun pluginNamespace(settings: Settings, pluginName: String): String {
+    val pluginConfig = settings.pluginConfigs.firstOrNull {
+        it.effectivePluginName().equals(pluginName, ignoreCase = true)
+    }
+    // Plugin names like `Vendor/Plugin` map to the `Vendor\Plugin` namespace
+    return pluginConfig?.namespace?.absoluteClassName()
+        ?: pluginName.replace('/', '\\').absoluteClassName()
+}
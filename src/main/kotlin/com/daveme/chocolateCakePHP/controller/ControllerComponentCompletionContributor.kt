@@ -73,9 +73,10 @@ class ControllerComponentCompletionContributor : CompletionContributor() {
                 val phpIndex = PhpIndex.getInstance(fieldReference.project)
                 val containingClasses = phpIndex.getAllAncestorTypesFromFQNs(controllerClassNames)
 
-                val componentSubclasses = phpIndex.getComponentSubclasses(settings)
+                val componentSubclasses = fieldReference.project.getService(CakeClassCatalog::class.java)
+                    .classes(CakeClassKind.COMPONENT, settings)
                 completionResultSet.completeFromClasses(
-                    componentSubclasses,
+                    componentSubclasses.classes,
                     removeFromEnd = "Component",
                     containingClasses = containingClasses
                 )
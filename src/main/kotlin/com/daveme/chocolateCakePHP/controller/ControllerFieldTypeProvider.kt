@@ -3,12 +3,12 @@ package com.daveme.chocolateCakePHP.controller
 import com.daveme.chocolateCakePHP.*
 import com.daveme.chocolateCakePHP.cake.getPossibleTableClasses
 import com.daveme.chocolateCakePHP.cake.isCakeTwoModelClass
+import com.daveme.chocolateCakePHP.model.associationindex.AssociationIndexService
 import com.intellij.openapi.project.DumbService
 import com.intellij.openapi.project.Project
 import com.intellij.psi.PsiElement
 import com.jetbrains.php.PhpIndex
 import com.jetbrains.php.lang.psi.elements.FieldReference
-import com.jetbrains.php.lang.psi.elements.PhpClass
 import com.jetbrains.php.lang.psi.elements.PhpNamedElement
 import com.jetbrains.php.lang.psi.resolve.types.PhpType
 import com.jetbrains.php.lang.psi.resolve.types.PhpTypeProvider4
@@ -18,6 +18,13 @@ class ControllerFieldTypeProvider : PhpTypeProvider4 {
 
     companion object {
         const val TYPE_PROVIDER_CHAR = '\u8312'
+
+        /**
+         * The field names in a signature from this provider: one for
+         * `$this->Movies`, and the whole path for `$this->Movies->Articles`.
+         */
+        fun fieldPath(signature: String): List<String> =
+            signature.substringAfter(TYPE_PROVIDER_CHAR).split(TYPE_PROVIDER_CHAR)
     }
 
     override fun getKey(): Char {
@@ -47,7 +54,8 @@ class ControllerFieldTypeProvider : PhpTypeProvider4 {
         val referenceType = classReference.type.filterUnknown()
         for (type in referenceType.types) {
             if (type.isAnyControllerClass()) {
-                return componentOrModelTypeFromFieldName(settings, fieldReferenceName)
+                // Defer lookup to complete, which keeps only the classes that exist.
+                return PhpType().add("#" + getKey() + fieldReferenceName)
             }
         }
         return null
@@ -60,19 +68,22 @@ class ControllerFieldTypeProvider : PhpTypeProvider4 {
         psiElement: FieldReference
     ): PhpType? {
         var element = psiElement as? FieldReference ?: return null
+        val path = ArrayDeque<String>()
         while (element.firstChild != null) {
-            if (!(element.name?.startsWithUppercaseCharacter() ?: false)) {
+            val name = element.name
+            if (name == null || !name.startsWithUppercaseCharacter()) {
                 return null
             }
+            path.addFirst(name)
             val child = element.firstChild
             if (child is FieldReference)
                 element = child
             else
                 break
         }
-        // Defer lookup to complete.
-        // First verify that first index extends from AppModel, and then that the last one is also a model.
-        return PhpType().add("#" + getKey() + element.name + getKey() + psiElement.name)
+        // Defer lookup to complete, with the whole path so the associations
+        // along the way can be followed.
+        return PhpType().add("#" + getKey() + path.joinToString(getKey().toString()))
     }
 
     override fun complete(expression: String, project: Project): PhpType? {
@@ -80,12 +91,13 @@ class ControllerFieldTypeProvider : PhpTypeProvider4 {
             return null
         }
 
-        val indexOfSign  = expression.indexOf(getKey())
-        val indexOfDelimiter = expression.indexOf(getKey(), indexOfSign + 1)
-        val firstFieldName = expression.substringOrNull(indexOfSign + 1, indexOfDelimiter)
-            ?: return null
-        val targetFieldName = expression.substringOrNull(indexOfDelimiter + 1)
-            ?: return null
+        val path = fieldPath(expression)
+        if (path.size == 1) {
+            // A single field: $this->Movies
+            return componentOrModelType(project, path[0])
+        }
+        val firstFieldName = path.first()
+        val targetFieldName = path.last()
 
         val index = PhpIndex.getInstance(project)
         val settings = Settings.getInstance(project)
@@ -93,10 +105,7 @@ class ControllerFieldTypeProvider : PhpTypeProvider4 {
         val result = PhpType()
 
         if (settings.cake3Enabled) {
-            val cakeThreeClasses = getCakeThreeClasses(index, settings, firstFieldName, targetFieldName)
-            if (cakeThreeClasses.size > 0) {
-                cakeThreeClasses.forEach { result.add(it.fqn) }
-            }
+            getCakeThreeClasses(project, index, settings, path).forEach { result.add(it) }
         }
 
         if (settings.cake2Enabled) {
@@ -113,6 +122,18 @@ class ControllerFieldTypeProvider : PhpTypeProvider4 {
         }
     }
 
+    private fun componentOrModelType(project: Project, fieldName: String): PhpType? {
+        val settings = Settings.getInstance(project)
+        val existenceCache = project.getService(ClassExistenceCache::class.java)
+        val result = PhpType()
+        for (type in componentOrModelTypeFromFieldName(settings, fieldName).types) {
+            if (existenceCache.exists(type)) {
+                result.add(type)
+            }
+        }
+        return if (result.isEmpty) null else result
+    }
+
     private fun getCakeTwoClass(phpIndex: PhpIndex, firstFieldName: String, targetFieldName: String): String? {
         val firstClasses = phpIndex.getClassesByFQN("\\" + firstFieldName)
         if (!isCakeTwoModelClass(firstClasses)) {
@@ -126,13 +147,29 @@ class ControllerFieldTypeProvider : PhpTypeProvider4 {
         return "\\" + targetFieldName
     }
 
-    private fun getCakeThreeClasses(phpIndex: PhpIndex, settings: Settings,
-                                    firstFieldName: String, targetFieldName: String): Collection<PhpClass> {
-        val firstClasses = phpIndex.getPossibleTableClasses(settings, firstFieldName)
+    private fun getCakeThreeClasses(
+        project: Project,
+        phpIndex: PhpIndex,
+        settings: Settings,
+        path: List<String>
+    ): Collection<String> {
+        val firstClasses = phpIndex.getPossibleTableClasses(settings, path.first())
         if (firstClasses.size == 0) {
             return listOf()
         }
-        return phpIndex.getPossibleTableClasses(settings, targetFieldName)
+        // Follow the associations the tables declare, and only guess from the
+        // field name when one along the way isn't declared.
+        val associatedClasses = AssociationIndexService.targetTableClassesOfPath(
+            project,
+            settings,
+            firstClasses.map { it.fqn },
+            path.drop(1)
+        )
+        if (associatedClasses != null) {
+            val existenceCache = project.getService(ClassExistenceCache::class.java)
+            return associatedClasses.filter { existenceCache.exists(it) }
+        }
+        return phpIndex.getPossibleTableClasses(settings, path.last()).map { it.fqn }
     }
 
     override fun getBySignature(
@@ -1,11 +1,14 @@
 package com.daveme.chocolateCakePHP.controller
 
 import com.daveme.chocolateCakePHP.*
+import com.daveme.chocolateCakePHP.model.associationindex.AssociationIndexService
 import com.intellij.codeInsight.completion.*
+import com.intellij.codeInsight.lookup.LookupElementBuilder
 import com.intellij.openapi.project.DumbService
 import com.intellij.patterns.PlatformPatterns
 import com.intellij.psi.impl.source.tree.LeafPsiElement
 import com.intellij.util.ProcessingContext
+import com.jetbrains.php.PhpIcons
 import com.jetbrains.php.PhpIndex
 import com.jetbrains.php.lang.psi.elements.FieldReference
 import com.jetbrains.php.lang.psi.elements.Variable
@@ -102,9 +105,10 @@ class ControllerModelOrTableCompletionContributor : CompletionContributor() {
             if (controllerClassNames.size > 0) {
                 val phpIndex = PhpIndex.getInstance(fieldReference.project)
                 val containingClasses = phpIndex.getAllAncestorTypesFromFQNs(controllerClassNames)
-                val modelSubclasses = phpIndex.getModelSubclasses(settings)
+                val modelSubclasses = fieldReference.project.getService(CakeClassCatalog::class.java)
+                    .classes(CakeClassKind.TABLE, settings)
                 completionResultSet.completeFromClasses(
-                        modelSubclasses,
+                        modelSubclasses.classes,
                         removeFromEnd = "Table",
                         containingClasses = containingClasses,
                 )
@@ -116,17 +120,36 @@ class ControllerModelOrTableCompletionContributor : CompletionContributor() {
             completionResultSet: CompletionResultSet,
             fieldReferenceChild: FieldReference,
         ) {
-            val phpIndex = PhpIndex.getInstance(fieldReferenceChild.project)
-            val fieldName = fieldReferenceChild.name
+            val fieldName = fieldReferenceChild.name ?: return
+
+            // The associations the field's table declares, if it declares any
+            val project = fieldReferenceChild.project
+            val tableClasses = fieldReferenceChild.type.lookupCompleteType(project, null)
+                .types
+                .filter { it.startsWith("\\") && it.isAnyTableClass() && !it.isTopLevelTableClass() }
+            val associations = AssociationIndexService.associationsWithTargets(project, settings, tableClasses)
+            if (associations.isNotEmpty()) {
+                associations.forEach { (association, targetClass) ->
+                    val lookupElement = LookupElementBuilder.create(association.alias)
+                        .withIcon(PhpIcons.FIELD)
+                        .withTypeText(targetClass.removePrefix("\\"))
+                    completionResultSet.addElement(lookupElement)
+                }
+                return
+            }
 
             // Check if "child" (preceding $this->FieldReference) is in the list of model subclasses
-            val modelClasses = phpIndex.getModelSubclasses(settings)
-            val fieldStr = "\\" + fieldName
-            if (!modelClasses.any { modelClass -> modelClass.fqn.contains(fieldStr) }) {
+            val modelClasses = fieldReferenceChild.project.getService(CakeClassCatalog::class.java)
+                .classes(CakeClassKind.TABLE, settings)
+            if (
+                modelClasses.withShortName(fieldName).isEmpty() &&
+                modelClasses.withShortName("${fieldName}Table").isEmpty()
+            ) {
                 return
             }
+
             completionResultSet.completeFromClasses(
-                    modelClasses,
+                    modelClasses.classes,
                     removeFromEnd = "Table"
             )
         }
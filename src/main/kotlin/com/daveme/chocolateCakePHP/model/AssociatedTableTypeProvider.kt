@@ -2,14 +2,17 @@ package com.daveme.chocolateCakePHP.model
 
 import com.daveme.chocolateCakePHP.*
 import com.daveme.chocolateCakePHP.cake.getPossibleTableClasses
+import com.daveme.chocolateCakePHP.model.associationindex.AssociationIndexService
 import com.daveme.chocolateCakePHP.startsWithUppercaseCharacter
 import com.daveme.chocolateCakePHP.substringOrNull
 import com.intellij.openapi.project.DumbService
 import com.intellij.openapi.project.Project
 import com.intellij.psi.PsiElement
+import com.intellij.psi.util.PsiTreeUtil
 import com.jetbrains.php.PhpIndex
 import com.jetbrains.php.lang.psi.elements.FieldReference
 import com.jetbrains.php.lang.psi.elements.MethodReference
+import com.jetbrains.php.lang.psi.elements.PhpClass
 import com.jetbrains.php.lang.psi.elements.PhpNamedElement
 import com.jetbrains.php.lang.psi.elements.Variable
 import com.jetbrains.php.lang.psi.resolve.types.PhpType
@@ -49,7 +52,11 @@ class AssociatedTableTypeProvider : PhpTypeProvider4 {
             if (!parentFieldName.startsWithUppercaseCharacter()) {
                 return null
             }
-            return PhpType().add("#${key}.v1.${fieldName}")
+            // $this->Articles inside a table: pass along the table, so the
+            // association it declares can be looked up
+            val containingTable = containingTableClass(fieldReference)
+                ?: return PhpType().add("#${key}.v1.${fieldName}")
+            return PhpType().add("#${key}.v1.${fieldName}.${containingTable}")
         }
 
         if (!fieldName.startsWithUppercaseCharacter()) {
@@ -102,7 +109,7 @@ class AssociatedTableTypeProvider : PhpTypeProvider4 {
         }
 
         val version = expression.substringOrNull(3, 5) ?: return null
-        val possibleTableName = expression.substringOrNull(6) ?: return null
+        val fieldAndTable = expression.substringOrNull(6) ?: return null
         if (version != "v1") {
             return null
         }
@@ -110,6 +117,17 @@ class AssociatedTableTypeProvider : PhpTypeProvider4 {
         if (!settings.cake3Enabled) {
             return null
         }
+        val possibleTableName = fieldAndTable.substringBefore('.')
+        val containingTable = fieldAndTable.substringAfter('.', "")
+        if (containingTable.isNotEmpty()) {
+            val association = AssociationIndexService.associations(project, containingTable)
+                .firstOrNull { it.alias == possibleTableName }
+            if (association != null) {
+                return PhpType()
+                    .add(association.type.associationClass)
+                    .add(AssociationIndexService.targetTableClass(settings, association))
+            }
+        }
         val phpIndex = PhpIndex.getInstance(project)
         return getAllPossibleAssociationTableClassesFromName(
             phpIndex,
@@ -167,9 +185,20 @@ class AssociatedTableTypeProvider : PhpTypeProvider4 {
         }
 
         if (completeType.isDefinitelyTableClass()) {
+            // The table the association declared in initialize() points to
+            val tableClasses = completeType.types.filter { it.startsWith("\\") && it.isAnyTableClass() }
+            val associatedClasses = AssociationIndexService.targetTableClasses(
+                project,
+                settings,
+                tableClasses,
+                possibleTableName
+            )?.flatMap { phpIndex.getClassesByFQN(it) }
+            if (!associatedClasses.isNullOrEmpty()) {
+                return associatedClasses
+            }
+
             val resultClasses = phpIndex.getPossibleTableClasses(settings, possibleTableName)
             if (resultClasses.isNotEmpty()) {
-                // todo add association classes?
                 return resultClasses
             }
 
@@ -197,6 +226,17 @@ class AssociatedTableTypeProvider : PhpTypeProvider4 {
         return null
     }
 
+    private fun containingTableClass(fieldReference: FieldReference): String? {
+        val variable = fieldReference.classReference as? Variable ?: return null
+        if (variable.name != "this") {
+            return null
+        }
+        val phpClass = PsiTreeUtil.getParentOfType(fieldReference, PhpClass::class.java)
+            ?: return null
+        val fqn = phpClass.fqn
+        return if (fqn.isAnyTableClass()) fqn else null
+    }
+
     private fun isTableLocatorCall(methodReference: MethodReference): Boolean {
         val child = methodReference.firstChild as? MethodReference ?: return false
         return child.name.equals("getTableLocator", ignoreCase = true)
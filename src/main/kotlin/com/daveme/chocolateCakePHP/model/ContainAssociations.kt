@@ -0,0 +1,63 @@
+package com.daveme.chocolateCakePHP.model
+
+import com.daveme.chocolateCakePHP.*
+import com.daveme.chocolateCakePHP.model.associationindex.AssociationIndexService
+import com.intellij.psi.util.PsiTreeUtil
+import com.jetbrains.php.lang.psi.elements.MethodReference
+import com.jetbrains.php.lang.psi.elements.PhpClass
+
+/**
+ * The table classes a `contain()` call starts from: the table it's called
+ * on, or the table a query came from (`$this->Articles->find()->contain()`).
+ * A query whose table isn't known is taken to be one of the containing
+ * table's, as in a custom finder.
+ */
+fun containRootTableClasses(method: MethodReference): List<String> {
+    val classReference = method.classReference ?: return emptyList()
+    val completedType = classReference.type.lookupCompleteType(method.project, null)
+    val tableTypes = completedType.types.mapNotNull { type ->
+            when {
+                type.isPluginSpecificTypeForQueryBuilder() -> type.unwrapFromPluginSpecificTypeForQueryBuilder()
+                type.isAnyTableClass() -> type
+                else -> null
+            }
+        }
+        .filter {
+            it.startsWith("\\") &&  // only full-formed classes
+                    !it.isTopLevelTableClass() // more specific types only
+        }
+        .distinct()
+    if (tableTypes.isNotEmpty()) {
+        return tableTypes
+    }
+    if (!completedType.isProbablyQueryObject()) {
+        return emptyList()
+    }
+    val containingClass = PsiTreeUtil.getParentOfType(method, PhpClass::class.java)
+        ?: return emptyList()
+    return if (containingClass.fqn.isAnyTableClass()) listOf(containingClass.fqn) else emptyList()
+}
+
+/**
+ * The table classes at the end of a `contain()` path like `Authors.Addresses`,
+ * or null if the table the call starts from or an association along the way
+ * isn't known.
+ *
+ * Assumes: read lock held + smart mode (indices ready)
+ */
+fun containPathTableClasses(
+    method: MethodReference,
+    settings: Settings,
+    aliases: List<String>
+): List<String>? {
+    val rootTableClasses = containRootTableClasses(method)
+    if (rootTableClasses.isEmpty()) {
+        return null
+    }
+    return AssociationIndexService.targetTableClassesOfPath(
+        method.project,
+        settings,
+        rootTableClasses,
+        aliases
+    )
+}
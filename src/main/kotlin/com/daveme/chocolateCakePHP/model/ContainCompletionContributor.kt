@@ -1,11 +1,15 @@
 package com.daveme.chocolateCakePHP.model
 
+import com.daveme.chocolateCakePHP.CakeClassCatalog
+import com.daveme.chocolateCakePHP.CakeClassKind
 import com.daveme.chocolateCakePHP.Settings
+import com.daveme.chocolateCakePHP.model.associationindex.AssociationIndexService
 import com.intellij.codeInsight.completion.*
 import com.intellij.codeInsight.lookup.LookupElementBuilder
 import com.intellij.openapi.project.DumbService
+import com.intellij.psi.util.PsiTreeUtil
 import com.intellij.util.ProcessingContext
-import com.jetbrains.php.PhpIndex
+import com.jetbrains.php.lang.psi.elements.MethodReference
 
 class ContainCompletionContributor : CompletionContributor() {
     init {
@@ -41,11 +45,33 @@ class ContainCompletionContributor : CompletionContributor() {
                 return
             }
 
-            val phpIndex = PhpIndex.getInstance(project)
+            // The associations of the table being contained from, for
+            // 'Authors.<caret>' those of the Authors association's table
+            val method = PsiTreeUtil.getParentOfType(position, MethodReference::class.java)
+            if (method != null) {
+                val typedText = position.text
+                    .substring(0, (completionParameters.offset - position.textRange.startOffset).coerceIn(0, position.textLength))
+                    .trimStart('\'', '"')
+                val aliases = typedText.split(".")
+                val tableClasses = containPathTableClasses(method, settings, aliases.dropLast(1))
+                if (tableClasses != null) {
+                    val associations = AssociationIndexService.associationsWithTargets(project, settings, tableClasses)
+                    if (associations.isNotEmpty()) {
+                        val associationResult = result.withPrefixMatcher(aliases.last())
+                        associations.forEach { (association, targetClass) ->
+                            val lookupElement = LookupElementBuilder.create(association.alias)
+                                .withTypeText(targetClass.removePrefix("\\"))
+                            associationResult.addElement(lookupElement)
+                        }
+                        return
+                    }
+                }
+            }
 
-            // Get all Table subclasses
-            val tableBaseClass = "\\Cake\\ORM\\Table"
-            val tableClasses = phpIndex.getAllSubclasses(tableBaseClass)
+            // Get all Table subclasses: contain() is only for CakePHP 3+ tables
+            val tableClasses = project.getService(CakeClassCatalog::class.java)
+                .cake3Classes(CakeClassKind.TABLE)
+                .classes
 
             // Collect allowed namespace prefixes: app + all plugins
             val allowedPrefixes = mutableListOf(settings.appNamespace)
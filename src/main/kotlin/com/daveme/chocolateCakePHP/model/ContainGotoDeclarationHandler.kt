@@ -59,18 +59,26 @@ class ContainGotoDeclarationHandler : GotoDeclarationHandler {
             return PsiElement.EMPTY_ARRAY
         }
 
-        // Extract table name, handling nested associations
-        // "Authors.Addresses" → "Authors"
-        // "Authors" → "Authors"
-        val tableName = stringLiteralArg.contents.split(".", limit = 2)[0]
+        // Extract the association under the caret, handling nested associations
+        // "Authors.Addresses" → "Authors" or "Addresses"
+        val contents = stringLiteralArg.contents
+        val caretInContents = (offset - stringLiteralArg.textRange.startOffset - stringLiteralArg.valueRange.startOffset)
+            .coerceIn(0, contents.length)
+        val aliases = contents.split(".")
+        val aliasIndex = contents.substring(0, caretInContents).count { it == '.' }
+        val tableName = aliases[aliasIndex]
 
         if (tableName.isEmpty()) {
             return PsiElement.EMPTY_ARRAY
         }
 
-        // Find the Table class
+        // Find the Table class: the one the association is declared with,
+        // or else the one named after it
         val phpIndex = PhpIndex.getInstance(project)
-        val tableClasses = phpIndex.getPossibleTableClasses(settings, tableName)
+        val associatedClasses = containPathTableClasses(method, settings, aliases.take(aliasIndex + 1))
+        val tableClasses = associatedClasses?.flatMap { phpIndex.getClassesByFQN(it) }
+            ?.takeIf { it.isNotEmpty() }
+            ?: phpIndex.getPossibleTableClasses(settings, tableName)
 
         if (tableClasses.isEmpty()) {
             return PsiElement.EMPTY_ARRAY
@@ -1,6 +1,7 @@
 package com.daveme.chocolateCakePHP.model
 
 import com.daveme.chocolateCakePHP.*
+import com.daveme.chocolateCakePHP.model.finderindex.FinderIndexService
 import com.intellij.codeInsight.completion.*
 import com.intellij.codeInsight.lookup.LookupElementBuilder
 import com.intellij.openapi.project.DumbService
@@ -70,41 +71,23 @@ class CustomFinderCompletionContributor : CompletionContributor() {
             if (!hasRequiredType(type)) {
                 return
             }
-            val tableClasses = type.types.filter {
-                it.startsWith("\\") && it.isAnyTableClass()
-            }
-            tableClasses.asSequence()
-                .map { className ->
-                    val replacedName = className.unwrapFromPluginSpecificTypeForQueryBuilder()
-                    replacedName
-                }
-                .flatMap { className ->
-                    phpIndex.getClassesByFQN(className)
-                }
-                .flatMap { klass ->
-                    klass.methods
-                }
-                .filter { method ->
-                    method.name.startsWith("find", ignoreCase = true) &&
-                            method.name.length > 4 &&
-                            // already generated by another completion contributor
-                            // for default arguments:
-                            !method.name.equals("findAll", ignoreCase = true)
-                }
-                .filter { method ->
-                    val methodType = method.type.lookupCompleteType(project, phpIndex, null)
-                    methodType.types.any { it.contains("Query", ignoreCase = true) }
+            val tableClasses = type.types
+                .filter { it.startsWith("\\") && it.isAnyTableClass() }
+                .map { it.unwrapFromPluginSpecificTypeForQueryBuilder() }
+                .distinct()
+
+            FinderIndexService.customFinders(project, settings, tableClasses)
+                .filter { finder ->
+                    // already generated by another completion contributor
+                    // for default arguments:
+                    !finder.methodName.equals("findAll", ignoreCase = true) &&
+                            finder.returnsQuery
                 }
-                .map { method ->
-                        val targetName = method.name
-                            .removeFromStart("find", ignoreCase = true)
-                            .replaceFirstChar { it.lowercase() }
-                        val lookupElement = LookupElementBuilder.create(targetName)
-                            .withTypeText("string")
-                        completionResultSet.addElement(lookupElement)
+                .forEach { finder ->
+                    val lookupElement = LookupElementBuilder.create(finder.finderName)
+                        .withTypeText("string")
+                    completionResultSet.addElement(lookupElement)
                 }
-                .lastOrNull()
-
         }
 
         private fun hasRequiredType(type: PhpType): Boolean {
@@ -1,6 +1,7 @@
 package com.daveme.chocolateCakePHP.model
 
 import com.daveme.chocolateCakePHP.*
+import com.daveme.chocolateCakePHP.model.finderindex.FinderIndexService
 import com.intellij.codeInsight.navigation.actions.GotoDeclarationHandler
 import com.intellij.openapi.actionSystem.DataContext
 import com.intellij.openapi.editor.Editor
@@ -64,7 +65,16 @@ class CustomFinderGotoDeclarationHandler : GotoDeclarationHandler {
             return PsiElement.EMPTY_ARRAY
         }
 
-        // Iterate each of the types looking for the findXXX method:
+        val project = sourceElement.project
+        val finderMethodName = "find" + sourceElement.text
+        val indexedFinders = FinderIndexService.customFinders(project, settings, tableTypes)
+            .filter { it.methodName.equals(finderMethodName, ignoreCase = true) }
+            .mapNotNull { it.findMethod(project) }
+        if (indexedFinders.isNotEmpty()) {
+            return indexedFinders.toTypedArray()
+        }
+
+        // Finders outside the app and plugins, like the table's findList():
         return phpIndex.customFinderMethods(tableTypes, sourceElement.text).toTypedArray()
     }
 
@@ -0,0 +1,117 @@
+package com.daveme.chocolateCakePHP.model
+
+import com.daveme.chocolateCakePHP.*
+import com.daveme.chocolateCakePHP.view.viewvariableindex.FileImports
+import com.intellij.lang.ASTNode
+import com.intellij.psi.TokenType
+import com.jetbrains.php.lang.lexer.PhpTokenTypes
+
+/**
+ * A method call read from the AST: `$this->hasMany('Comments', [...])`.
+ */
+class MethodCallNode(
+    val receiver: ASTNode?,
+    val methodName: String,
+    val arguments: List<ASTNode>
+) {
+    val isOnThis: Boolean get() = receiver?.text == "\$this"
+}
+
+/**
+ * AST helpers for the indexes of model classes, which read calls like
+ * `$this->hasMany()` and `$this->addBehavior()` and their options without PSI.
+ */
+object ModelClassAST {
+
+    fun parseCall(node: ASTNode): MethodCallNode? {
+        var receiver: ASTNode? = null
+        var methodName: String? = null
+        var arguments: List<ASTNode> = emptyList()
+        var child = node.firstChildNode
+        while (child != null) {
+            when {
+                receiver == null && methodName == null && !isWhiteSpace(child) -> receiver = child
+                child.elementType == PhpTokenTypes.IDENTIFIER -> methodName = child.text
+                child.isParameterList() -> {
+                    val parameters = mutableListOf<ASTNode>()
+                    var parameter = child.firstChildNode
+                    while (parameter != null) {
+                        if (!isWhiteSpace(parameter) && parameter.elementType != PhpTokenTypes.opCOMMA) {
+                            parameters.add(parameter)
+                        }
+                        parameter = parameter.treeNext
+                    }
+                    arguments = parameters
+                }
+            }
+            child = child.treeNext
+        }
+        return methodName?.let { MethodCallNode(receiver, it, arguments) }
+    }
+
+    /**
+     * The values of an options array like `['className' => 'Users']`, by key.
+     */
+    fun arrayOptions(node: ASTNode?): Map<String, ASTNode> {
+        if (node == null || !node.isArrayCreationExpression()) {
+            return emptyMap()
+        }
+        val result = HashMap<String, ASTNode>()
+        var element = node.firstChildNode
+        while (element != null) {
+            if (element.isHashArrayElement()) {
+                val key = findChild(element) { it.isArrayKey() }
+                    ?.let { firstExpression(it) }
+                    ?.let { stringValue(it) }
+                val value = findChild(element) { it.isArrayValue() }
+                    ?.let { firstExpression(it) }
+                if (key != null && value != null) {
+                    result[key] = value
+                }
+            }
+            element = element.treeNext
+        }
+        return result
+    }
+
+    // String literals without interpolation
+    fun stringValue(node: ASTNode): String? {
+        if (!node.isString()) {
+            return null
+        }
+        val text = node.text
+        if (text.startsWith("\"") && text.contains('$')) {
+            return null
+        }
+        return text.removeSurrounding("'")
+            .removeSurrounding("\"")
+            .replace("\\\\", "\\")
+    }
+
+    // 'Users', 'Plugin.Users', or UsersTable::class
+    fun classNameValue(node: ASTNode, imports: FileImports): String? {
+        if (!node.isClassConstantReference()) {
+            return stringValue(node)
+        }
+        val constantName = node.text.substringAfterLast("::").trim()
+        if (!constantName.equals("class", ignoreCase = true)) {
+            return null
+        }
+        return findChild(node) { it.isClassReference() }
+            ?.let { imports.resolveClassName(it.text) }
+    }
+
+    fun findChild(node: ASTNode, predicate: (ASTNode) -> Boolean): ASTNode? {
+        var child = node.firstChildNode
+        while (child != null && !predicate(child)) {
+            child = child.treeNext
+        }
+        return child
+    }
+
+    fun firstExpression(node: ASTNode): ASTNode? =
+        findChild(node) { !isWhiteSpace(it) }
+
+    fun isWhiteSpace(node: ASTNode): Boolean =
+        node.elementType == TokenType.WHITE_SPACE
+}
@@ -0,0 +1,82 @@
+package com.daveme.chocolateCakePHP.model
+
+import com.daveme.chocolateCakePHP.lookupCompleteType
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Key
+import com.intellij.psi.util.CachedValue
+import com.intellij.psi.util.CachedValueProvider
+import com.intellij.psi.util.CachedValuesManager
+import com.intellij.psi.util.PsiModificationTracker
+import com.jetbrains.php.PhpIndex
+import com.jetbrains.php.lang.PhpLanguage
+import com.jetbrains.php.lang.psi.elements.Method
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Which methods return a query, so chained query builder calls
+ * (`->where()->contain()->order()`) don't look up the query classes and
+ * resolve the same return types again for every call in the chain.
+ *
+ * Results are filled in as methods are asked about, and all of them are
+ * dropped when any PHP file changes.
+ */
+@Service(Service.Level.PROJECT)
+class QueryMethodReturnTypes(private val project: Project) {
+
+    private class Tables {
+        // Keyed by lowercase method name, as PHP method names are case-insensitive
+        val queryClassMethods = ConcurrentHashMap<String, Boolean>()
+    }
+
+    private fun tables(): Tables =
+        CachedValuesManager.getManager(project).getCachedValue(project, TABLES_KEY, {
+            CachedValueProvider.Result.create(
+                Tables(),
+                PsiModificationTracker.getInstance(project).forLanguage(PhpLanguage.INSTANCE)
+            )
+        }, false)
+
+    /**
+     * Whether the method named [methodName] on the query class
+     * (`\Cake\ORM\Query\SelectQuery` in CakePHP 5, `\Cake\ORM\Query` before)
+     * returns a query.
+     *
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun queryClassMethodReturnsQuery(methodName: String): Boolean =
+        getOrCompute(tables().queryClassMethods, methodName.lowercase()) {
+            val phpIndex = PhpIndex.getInstance(project)
+            QUERY_CLASSES.asSequence()
+                .flatMap { phpIndex.getClassesByFQN(it) }
+                .mapNotNull { klass -> klass.findMethodByName(methodName) }
+                .any { method -> resolveReturnsQuery(method, phpIndex) }
+        }
+
+    // Not computeIfAbsent: resolving a return type can run type providers
+    // that ask about other methods, which would update the map recursively
+    private fun getOrCompute(
+        map: ConcurrentHashMap<String, Boolean>,
+        key: String,
+        compute: () -> Boolean
+    ): Boolean {
+        map[key]?.let { return it }
+        val result = compute()
+        map.putIfAbsent(key, result)
+        return result
+    }
+
+    private fun resolveReturnsQuery(method: Method, phpIndex: PhpIndex): Boolean {
+        val returnType = method.type.lookupCompleteType(project, phpIndex, null)
+        return returnType.types.any { it.contains("Query", ignoreCase = true) }
+    }
+
+    companion object {
+        private val TABLES_KEY = Key.create<CachedValue<Tables>>("chocolateCakePHP.queryMethodReturnTypes")
+
+        private val QUERY_CLASSES = listOf(
+            "\\Cake\\ORM\\Query",
+            "\\Cake\\ORM\\Query\\SelectQuery",
+        )
+    }
+}
@@ -70,9 +70,10 @@ class TableLocatorCompletionContributor : CompletionContributor() {
             if (!hasRequiredType(type)) {
                 return
             }
-            val modelSubclasses = phpIndex.getModelSubclasses(settings)
+            val modelSubclasses = project.getService(CakeClassCatalog::class.java)
+                .classes(CakeClassKind.TABLE, settings)
             completionResultSet.completeMethodCallWithParameterFromClasses(
-                modelSubclasses,
+                modelSubclasses.classes,
                 removeFromEnd = "Table",
                 advanceBeyondClosingParen = true
             )
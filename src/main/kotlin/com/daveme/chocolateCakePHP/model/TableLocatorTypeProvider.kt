@@ -3,6 +3,7 @@ package com.daveme.chocolateCakePHP.model
 import com.daveme.chocolateCakePHP.*
 import com.daveme.chocolateCakePHP.cake.getPossibleTableClasses
 import com.daveme.chocolateCakePHP.controller.ControllerFieldTypeProvider
+import com.daveme.chocolateCakePHP.model.associationindex.AssociationIndexService
 import com.intellij.openapi.project.DumbService
 import com.intellij.openapi.project.Project
 import com.intellij.psi.PsiElement
@@ -19,6 +20,7 @@ class TableLocatorTypeProvider : PhpTypeProvider4 {
     companion object {
         const val TYPE_PROVIDER_CHAR = '\u8316'
         const val RECURSIVE_START = "#$TYPE_PROVIDER_CHAR"
+        const val CONTROLLER_FIELD_START = "#${ControllerFieldTypeProvider.TYPE_PROVIDER_CHAR}"
     }
 
     override fun getKey(): Char {
@@ -73,10 +75,11 @@ class TableLocatorTypeProvider : PhpTypeProvider4 {
                     // $this->Movies->get():
                     return PhpType().add(type.tableToEntityClass())
                 }
-                else if (type.startsWith("#${ControllerFieldTypeProvider.TYPE_PROVIDER_CHAR}")) {
+                else if (type.startsWith(CONTROLLER_FIELD_START)) {
+                    // $this->Movies->get():
                     // $this->Movies->Articles->get():
-                    val wrappedType = type.split(ControllerFieldTypeProvider.TYPE_PROVIDER_CHAR).last()
-                    return PhpType().add("#${key}.${name}.${wrappedType}")
+                    val fieldPath = type.removePrefix(CONTROLLER_FIELD_START)
+                    return PhpType().add("#${key}.${name}.${fieldPath}")
                 }
             }
             return result
@@ -105,6 +108,19 @@ class TableLocatorTypeProvider : PhpTypeProvider4 {
             if (name.equals("find", ignoreCase = true)) {
                 val classRefType = classReference.type.filterUnknown()
 
+                // $this->Movies->find(): the tables the field can refer
+                // to are only looked up in complete()
+                val fieldTypes = PhpType()
+                for (eachClassRefType in classRefType.types) {
+                    if (eachClassRefType.startsWith(CONTROLLER_FIELD_START)) {
+                        val fieldPath = eachClassRefType.removePrefix(CONTROLLER_FIELD_START)
+                        fieldTypes.add("#${key}.${name}.${fieldPath}")
+                    }
+                }
+                if (!fieldTypes.isEmpty) {
+                    return fieldTypes
+                }
+
                 // TODO: handle incomplete types here by deferring lookup to
                 //       complete method
                 if (!classRefType.isComplete) {
@@ -179,39 +195,79 @@ class TableLocatorTypeProvider : PhpTypeProvider4 {
         val settings = Settings.getInstance(project)
 
         //
-        // For non-find methods, check the return type is "SelectQuery".
+        // Controller fields only pass along the field names, so look up
+        // the tables they can refer to.
         //
         val phpIndex = PhpIndex.getInstance(project)
-        if (
-            invokingMethodName.equals("all", ignoreCase = true) &&
-            wrappedType.isAnyTableClass()
-        ) {
-            val entityClass = wrappedType.tableToEntityClass()
-            return PhpType().add("$entityClass[]")
+        val tableClasses = if (wrappedType.startsWith("\\"))
+            listOf(wrappedType)
+        else
+            tableClassesFromFieldPath(project, phpIndex, settings, wrappedType)
+
+        //
+        // For non-find methods, check the return type is "SelectQuery".
+        //
+        if (invokingMethodName.equals("all", ignoreCase = true)) {
+            val tableClass = tableClasses.firstOrNull { it.isAnyTableClass() }
+            if (tableClass != null) {
+                val entityClass = tableClass.tableToEntityClass()
+                return PhpType().add("$entityClass[]")
+            }
         } else if (
             invokingMethodName.equals("get", ignoreCase = true)
         ) {
-            val classes = phpIndex.getPossibleTableClasses(settings, wrappedType)
-            classes.forEach { klass -> result.add(klass.fqn.tableToEntityClass()) }
+            tableClasses.forEach { tableClass -> result.add(tableClass.tableToEntityClass()) }
             return result
         }
 
-
-        // todo: cache method lists
-        val cakeFiveClasses = phpIndex.getClassesByFQN("\\Cake\\ORM\\Query\\SelectQuery")
-        val cakeFourClasses = phpIndex.getClassesByFQN("\\Cake\\ORM\\Query")
-
-        (cakeFourClasses + cakeFiveClasses).forEach { klass ->
-            val method = klass.findMethodByName(invokingMethodName) ?: return@forEach
-            val returnType = method.type.lookupCompleteType(project, phpIndex, null)
-            if (returnType.types.any { it.contains("Query", ignoreCase = true) }) {
-                result.add(wrappedType.wrapInPluginSpecificTypeForQueryBuilder())
+        val queryMethods = project.getService(QueryMethodReturnTypes::class.java)
+        if (queryMethods.queryClassMethodReturnsQuery(invokingMethodName)) {
+            tableClasses.forEach { tableClass ->
+                result.add(tableClass.wrapInPluginSpecificTypeForQueryBuilder())
             }
         }
 
         return result
     }
 
+    // $this->Movies->Articles: the tables of the first field, then the
+    // associations they declare
+    private fun tableClassesFromFieldPath(
+        project: Project,
+        phpIndex: PhpIndex,
+        settings: Settings,
+        fieldPath: String
+    ): List<String> {
+        val fieldNames = fieldPath.split(ControllerFieldTypeProvider.TYPE_PROVIDER_CHAR)
+        val rootTableClasses = tableClassesFromFieldName(phpIndex, settings, fieldNames.first())
+        if (fieldNames.size == 1) {
+            return rootTableClasses
+        }
+        return AssociationIndexService.targetTableClassesOfPath(
+            project,
+            settings,
+            rootTableClasses,
+            fieldNames.drop(1)
+        ) ?: tableClassesFromFieldName(phpIndex, settings, fieldNames.last())
+    }
+
+    private fun tableClassesFromFieldName(
+        phpIndex: PhpIndex,
+        settings: Settings,
+        fieldName: String
+    ): List<String> {
+        val tableNames = listOf(fieldName, Inflector.pluralize(fieldName)).distinct()
+        val existingClasses = tableNames
+            .flatMap { phpIndex.getPossibleTableClasses(settings, it) }
+            .map { it.fqn }
+            .distinct()
+        if (existingClasses.isNotEmpty()) {
+            return existingClasses
+        }
+        // Table classes are optional, so the entity class may still exist
+        return tableNames.map { "${settings.appNamespace}\\Model\\Table\\${it}Table" }
+    }
+
     override fun getBySignature(
         p0: String?,
         p1: MutableSet<String>?,
@@ -0,0 +1,52 @@
+package com.daveme.chocolateCakePHP.model.associationindex
+
+import com.daveme.chocolateCakePHP.*
+import com.intellij.util.io.DataExternalizer
+import java.io.DataInput
+import java.io.DataOutput
+
+object AssociationDataExternalizer : DataExternalizer<List<AssociationData>> {
+
+    private const val FORMAT = 1
+
+    private val associationTypes = AssociationType.values()
+
+    override fun save(out: DataOutput, value: List<AssociationData>) {
+        writeIndexFormat(out, FORMAT)
+        writeVarInt(out, value.size)
+        val strings = IndexStringTableWriter(out, emptyList())
+        var previousOffset = 0
+        value.forEach { data ->
+            out.writeByte(data.type.ordinal)
+            strings.write(data.alias)
+            // Empty when the option isn't given
+            strings.write(data.className ?: "")
+            strings.write(data.propertyName ?: "")
+            writeOffsetDelta(out, data.offset, previousOffset)
+            previousOffset = data.offset
+        }
+    }
+
+    override fun read(`in`: DataInput): List<AssociationData> {
+        readIndexFormat(`in`, FORMAT)
+        val size = readVarInt(`in`)
+        val strings = IndexStringTableReader(`in`, emptyList())
+        var previousOffset = 0
+        return List(size) {
+            val type = associationTypes[`in`.readUnsignedByte()]
+            val alias = strings.read()
+            val className = strings.read().ifEmpty { null }
+            val propertyName = strings.read().ifEmpty { null }
+            val offset = readOffsetDelta(`in`, previousOffset)
+            previousOffset = offset
+            AssociationData(
+                alias = alias,
+                type = type,
+                className = className,
+                propertyName = propertyName,
+                offset = offset
+            )
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.daveme.chocolateCakePHP.model.associationindex
+
+import com.daveme.chocolateCakePHP.*
+import com.daveme.chocolateCakePHP.model.ModelClassAST
+import com.daveme.chocolateCakePHP.view.viewvariableindex.FileImports
+import com.intellij.lang.ASTNode
+import com.intellij.util.indexing.DataIndexer
+import com.intellij.util.indexing.FileContent
+import com.jetbrains.php.lang.lexer.PhpTokenTypes
+
+/**
+ * Indexes the `$this->belongsTo()`, `hasOne()`, `hasMany()` and
+ * `belongsToMany()` calls of each Table class by the class's FQN, along with
+ * the `className` and `propertyName` options, whether they are passed in the
+ * options array or set with `->setClassName()` and `->setProperty()`.
+ */
+object AssociationDataIndexer : DataIndexer<String, List<AssociationData>, FileContent> {
+
+    override fun map(inputData: FileContent): MutableMap<String, List<AssociationData>> {
+        return IndexingStats.measure("AssociationIndex", inputData, AssociationDataExternalizer) { counters ->
+            indexFile(inputData, counters)
+        }
+    }
+
+    private fun indexFile(
+        inputData: FileContent,
+        counters: IndexingCounters
+    ): MutableMap<String, List<AssociationData>> {
+        val result = mutableMapOf<String, List<AssociationData>>()
+        if ((ContentPrefilter.scan(inputData.content) and ContentPrefilter.ASSOCIATION_CALL) == 0) {
+            return result
+        }
+        val rootNode = inputData.psiFile.node ?: return result
+        visit(rootNode, FileImports(), null, result, counters)
+        return result
+    }
+
+    private fun visit(
+        node: ASTNode,
+        imports: FileImports,
+        containingClassFqn: String?,
+        result: MutableMap<String, List<AssociationData>>,
+        counters: IndexingCounters
+    ) {
+        var classFqn = containingClassFqn
+        counters.nodesVisited++
+
+        when {
+            node.isNamespace() -> imports.addNamespace(node)
+            node.isUseList() -> {
+                // Closures have use lists too, but only file level ones are imports
+                if (classFqn == null) {
+                    imports.addUseList(node)
+                }
+            }
+            node.isClass() -> {
+                val className = node.findChildByType(PhpTokenTypes.IDENTIFIER)?.text
+                if (className != null) {
+                    classFqn = imports.resolveClassName(className)
+                }
+            }
+            node.isMethodReference() && classFqn != null -> {
+                val association = parseAssociationCall(node, imports)
+                if (association != null) {
+                    val key = AssociationIndexService.tableKey(classFqn)
+                    result[key] = result.getOrDefault(key, emptyList()) + association
+                }
+            }
+        }
+
+        var child = node.firstChildNode
+        while (child != null) {
+            visit(child, imports, classFqn, result, counters)
+            child = child.treeNext
+        }
+    }
+
+    private fun parseAssociationCall(node: ASTNode, imports: FileImports): AssociationData? {
+        val call = ModelClassAST.parseCall(node) ?: return null
+        if (!call.isOnThis) {
+            return null
+        }
+        val type = AssociationType.fromMethodName(call.methodName) ?: return null
+        val alias = call.arguments.firstOrNull()?.let { ModelClassAST.stringValue(it) } ?: return null
+        if (alias.isEmpty()) {
+            return null
+        }
+
+        val options = ModelClassAST.arrayOptions(call.arguments.getOrNull(1))
+        var className = options["className"]?.let { ModelClassAST.classNameValue(it, imports) }
+        var propertyName = options["propertyName"]?.let { ModelClassAST.stringValue(it) }
+
+        // $this->belongsTo('Authors')->setClassName('Users')->setProperty('writer')
+        var current = node
+        var parent = node.treeParent
+        while (parent != null && parent.isMethodReference() && parent.firstChildNode == current) {
+            val setter = ModelClassAST.parseCall(parent) ?: break
+            val argument = setter.arguments.firstOrNull()
+            when {
+                argument == null -> {}
+                setter.methodName.equals("setClassName", ignoreCase = true) ->
+                    className = ModelClassAST.classNameValue(argument, imports)
+                setter.methodName.equals("setProperty", ignoreCase = true) ->
+                    propertyName = ModelClassAST.stringValue(argument)
+            }
+            current = parent
+            parent = parent.treeParent
+        }
+
+        return AssociationData(
+            alias = alias,
+            type = type,
+            className = className,
+            propertyName = propertyName,
+            offset = node.startOffset
+        )
+    }
+}
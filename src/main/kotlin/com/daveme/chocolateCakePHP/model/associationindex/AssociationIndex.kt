@@ -0,0 +1,34 @@
+package com.daveme.chocolateCakePHP.model.associationindex
+
+import com.daveme.chocolateCakePHP.cake.ModelClassIndexInputFilter
+import com.intellij.util.indexing.*
+import com.intellij.util.io.DataExternalizer
+import com.intellij.util.io.EnumeratorStringDescriptor
+import com.intellij.util.io.KeyDescriptor
+
+class AssociationIndex : FileBasedIndexExtension<String, List<AssociationData>>() {
+
+    override fun getName() = ASSOCIATION_INDEX_KEY
+
+    override fun getIndexer(): DataIndexer<String, List<AssociationData>, FileContent> =
+        AssociationDataIndexer
+
+    override fun getKeyDescriptor(): KeyDescriptor<String> =
+        EnumeratorStringDescriptor.INSTANCE
+
+    override fun getValueExternalizer(): DataExternalizer<List<AssociationData>> =
+        AssociationDataExternalizer
+
+    override fun getVersion(): Int {
+        return 1
+    }
+
+    override fun getInputFilter(): FileBasedIndex.InputFilter {
+        return ModelClassIndexInputFilter("Table")
+    }
+
+    override fun dependsOnFileContent(): Boolean {
+        return true
+    }
+
+}
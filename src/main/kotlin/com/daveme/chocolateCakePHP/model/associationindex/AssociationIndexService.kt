@@ -0,0 +1,140 @@
+package com.daveme.chocolateCakePHP.model.associationindex
+
+import com.daveme.chocolateCakePHP.Settings
+import com.daveme.chocolateCakePHP.absoluteClassName
+import com.daveme.chocolateCakePHP.cake.modelClassName
+import com.intellij.openapi.progress.ProgressManager
+import com.intellij.openapi.project.Project
+import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.util.indexing.FileBasedIndex
+import com.intellij.util.indexing.ID
+
+val ASSOCIATION_INDEX_KEY : ID<String, List<AssociationData>> =
+    ID.create("com.daveme.chocolateCakePHP.model.associationindex.AssociationIndex")
+
+enum class AssociationType(val methodName: String, val associationClass: String) {
+    BELONGS_TO("belongsTo", "\\Cake\\ORM\\Association\\BelongsTo"),
+    BELONGS_TO_MANY("belongsToMany", "\\Cake\\ORM\\Association\\BelongsToMany"),
+    HAS_ONE("hasOne", "\\Cake\\ORM\\Association\\HasOne"),
+    HAS_MANY("hasMany", "\\Cake\\ORM\\Association\\HasMany");
+
+    companion object {
+        fun fromMethodName(methodName: String): AssociationType? =
+            values().firstOrNull { it.methodName.equals(methodName, ignoreCase = true) }
+    }
+}
+
+data class AssociationData(
+    val alias: String,
+    val type: AssociationType,
+    // The `className` option as written: a table alias, `Plugin.Alias`, or a
+    // class name. Null when the alias is also the table name.
+    val className: String?,
+    // The `propertyName` option, null for the default entity property
+    val propertyName: String?,
+    val offset: Int,
+)
+
+/**
+ * Looks up the associations Table classes declare in `initialize()`, so
+ * `$this->Articles->Authors` and `contain('Authors.Addresses')` resolve to
+ * the table the association points to instead of a table guessed from the
+ * alias.
+ *
+ * The index holds the options as written; the app namespace and plugin
+ * namespaces are applied here, so configuration changes do not require a
+ * reindex.
+ */
+object AssociationIndexService {
+
+    /**
+     * The index key of a table class: its FQN, lowercase as PHP class names
+     * are case-insensitive.
+     */
+    fun tableKey(tableFqn: String): String =
+        tableFqn.absoluteClassName().lowercase()
+
+    /**
+     * The associations declared by the table class [tableFqn].
+     *
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun associations(project: Project, tableFqn: String): List<AssociationData> {
+        val values = FileBasedIndex.getInstance().getValues(
+            ASSOCIATION_INDEX_KEY,
+            tableKey(tableFqn),
+            GlobalSearchScope.allScope(project)
+        )
+        return if (values.size == 1) values[0] else values.flatten()
+    }
+
+    /**
+     * The table classes the association [alias] of any of [tableFqns] points
+     * to, or null if none of them declares it.
+     *
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun targetTableClasses(
+        project: Project,
+        settings: Settings,
+        tableFqns: Collection<String>,
+        alias: String
+    ): List<String>? {
+        var declared = false
+        val result = LinkedHashSet<String>()
+        for (tableFqn in tableFqns) {
+            ProgressManager.checkCanceled()
+            val association = associations(project, tableFqn)
+                .firstOrNull { it.alias == alias }
+                ?: continue
+            declared = true
+            result += targetTableClass(settings, association)
+        }
+        return if (declared) result.toList() else null
+    }
+
+    /**
+     * The table classes at the end of a path of association aliases, like
+     * `Authors.Addresses`, starting from [rootTableFqns]. Null if an alias
+     * along the way isn't declared.
+     *
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun targetTableClassesOfPath(
+        project: Project,
+        settings: Settings,
+        rootTableFqns: Collection<String>,
+        aliases: List<String>
+    ): List<String>? {
+        var tableFqns = rootTableFqns
+        for (alias in aliases) {
+            tableFqns = targetTableClasses(project, settings, tableFqns, alias)
+                ?: return null
+        }
+        return tableFqns.toList()
+    }
+
+    /**
+     * The associations of any of [tableFqns], each with the table class it
+     * points to.
+     *
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun associationsWithTargets(
+        project: Project,
+        settings: Settings,
+        tableFqns: Collection<String>
+    ): List<Pair<AssociationData, String>> =
+        tableFqns
+            .flatMap { associations(project, it) }
+            .distinctBy { it.alias }
+            .map { it to targetTableClass(settings, it) }
+
+    /**
+     * The table class an association points to: the `className` option if
+     * given, resolved the way CakePHP's table locator does, or else the
+     * app's table named after the alias.
+     */
+    fun targetTableClass(settings: Settings, association: AssociationData): String =
+        modelClassName(settings, association.className ?: association.alias, "Table")
+}
@@ -0,0 +1,67 @@
+package com.daveme.chocolateCakePHP.model.finderindex
+
+import com.daveme.chocolateCakePHP.*
+import com.intellij.util.io.DataExternalizer
+import java.io.DataInput
+import java.io.DataOutput
+
+object FinderDataExternalizer : DataExternalizer<ModelClassFinders> {
+
+    private const val FORMAT = 1
+
+    override fun save(out: DataOutput, value: ModelClassFinders) {
+        writeIndexFormat(out, FORMAT)
+        val strings = IndexStringTableWriter(out, emptyList())
+        // Empty when the class extends nothing
+        strings.write(value.parentClass ?: "")
+
+        writeVarInt(out, value.finders.size)
+        var previousOffset = 0
+        value.finders.forEach { finder ->
+            strings.write(finder.methodName)
+            strings.write(finder.returnType)
+            writeOffsetDelta(out, finder.offset, previousOffset)
+            previousOffset = finder.offset
+        }
+
+        writeVarInt(out, value.behaviors.size)
+        value.behaviors.forEach { behavior ->
+            strings.write(behavior.name)
+            strings.write(behavior.className ?: "")
+        }
+    }
+
+    override fun read(`in`: DataInput): ModelClassFinders {
+        readIndexFormat(`in`, FORMAT)
+        val strings = IndexStringTableReader(`in`, emptyList())
+        val parentClass = strings.read().ifEmpty { null }
+
+        val finderCount = readVarInt(`in`)
+        var previousOffset = 0
+        val finders = List(finderCount) {
+            val methodName = strings.read()
+            val returnType = strings.read()
+            val offset = readOffsetDelta(`in`, previousOffset)
+            previousOffset = offset
+            FinderData(
+                methodName = methodName,
+                returnType = returnType,
+                offset = offset
+            )
+        }
+
+        val behaviorCount = readVarInt(`in`)
+        val behaviors = List(behaviorCount) {
+            val name = strings.read()
+            val className = strings.read().ifEmpty { null }
+            BehaviorData(name = name, className = className)
+        }
+
+        return ModelClassFinders(
+            parentClass = parentClass,
+            finders = finders,
+            behaviors = behaviors
+        )
+    }
+
+}
@@ -0,0 +1,207 @@
+package com.daveme.chocolateCakePHP.model.finderindex
+
+import com.daveme.chocolateCakePHP.*
+import com.daveme.chocolateCakePHP.model.ModelClassAST
+import com.daveme.chocolateCakePHP.view.viewvariableindex.FileImports
+import com.daveme.chocolateCakePHP.view.viewvariableindex.ViewVariableTypeHints
+import com.intellij.lang.ASTNode
+import com.intellij.util.indexing.DataIndexer
+import com.intellij.util.indexing.FileContent
+import com.jetbrains.php.lang.lexer.PhpTokenTypes
+
+/**
+ * Indexes the custom finders of each Table and Behavior class by the class's
+ * FQN: the `find*()` methods it declares with their declared return types,
+ * the class it extends, and the behaviors it adds with `$this->addBehavior()`.
+ */
+object FinderDataIndexer : DataIndexer<String, ModelClassFinders, FileContent> {
+
+    private const val INITIALIZE = "initialize"
+    private const val ADD_BEHAVIOR = "addBehavior"
+
+    private val docReturnTag = Regex("@return\\s+(\\S+)")
+
+    override fun map(inputData: FileContent): MutableMap<String, ModelClassFinders> {
+        return IndexingStats.measure("FinderIndex", inputData, FinderDataExternalizer) { counters ->
+            indexFile(inputData, counters)
+        }
+    }
+
+    private fun indexFile(
+        inputData: FileContent,
+        counters: IndexingCounters
+    ): MutableMap<String, ModelClassFinders> {
+        val result = mutableMapOf<String, ModelClassFinders>()
+        // Classes without finders or behaviors of their own are left out, and
+        // FinderIndexService follows their parent class through PhpIndex
+        if ((ContentPrefilter.scan(inputData.content) and ContentPrefilter.FINDERS) == 0) {
+            return result
+        }
+        val rootNode = inputData.psiFile.node ?: return result
+        visit(rootNode, FileImports(), result, counters)
+        return result
+    }
+
+    // Only walks down to the classes: what's indexed is in their direct children
+    private fun visit(
+        node: ASTNode,
+        imports: FileImports,
+        result: MutableMap<String, ModelClassFinders>,
+        counters: IndexingCounters
+    ) {
+        counters.nodesVisited++
+        when {
+            node.isNamespace() -> imports.addNamespace(node)
+            node.isUseList() -> imports.addUseList(node)
+            node.isClass() -> {
+                indexClass(node, imports, result, counters)
+                return
+            }
+        }
+
+        var child = node.firstChildNode
+        while (child != null) {
+            visit(child, imports, result, counters)
+            child = child.treeNext
+        }
+    }
+
+    private fun indexClass(
+        node: ASTNode,
+        imports: FileImports,
+        result: MutableMap<String, ModelClassFinders>,
+        counters: IndexingCounters
+    ) {
+        val className = node.findChildByType(PhpTokenTypes.IDENTIFIER)?.text ?: return
+        val classFqn = imports.resolveClassName(className) ?: return
+        var parentClass: String? = null
+        val finders = mutableListOf<FinderData>()
+        val behaviors = mutableListOf<BehaviorData>()
+
+        var child = node.firstChildNode
+        while (child != null) {
+            counters.nodesVisited++
+            when {
+                child.isExtendsList() -> {
+                    parentClass = ModelClassAST.findChild(child) { it.isClassReference() }
+                        ?.let { imports.resolveClassName(it.text) }
+                }
+                child.isClassMethod() -> {
+                    val methodName = child.findChildByType(PhpTokenTypes.IDENTIFIER)?.text
+                    when {
+                        methodName == null -> {}
+                        methodName.equals(INITIALIZE, ignoreCase = true) ->
+                            collectBehaviors(child, imports, behaviors, counters)
+                        isFinderName(methodName) && !isPrivate(child) ->
+                            finders.add(FinderData(
+                                methodName = methodName,
+                                returnType = declaredReturnType(child, imports),
+                                offset = child.startOffset
+                            ))
+                    }
+                }
+            }
+            child = child.treeNext
+        }
+
+        if (finders.isNotEmpty() || behaviors.isNotEmpty()) {
+            result[FinderIndexService.classKey(classFqn)] = ModelClassFinders(
+                parentClass = parentClass,
+                finders = finders,
+                behaviors = behaviors
+            )
+        }
+    }
+
+    // `find` alone is the table's own method, not a finder
+    private fun isFinderName(methodName: String): Boolean =
+        methodName.length > 4 && methodName.startsWith("find", ignoreCase = true)
+
+    private fun isPrivate(methodNode: ASTNode): Boolean {
+        val modifierList = ModelClassAST.findChild(methodNode) { it.isModifierList() } ?: return false
+        return modifierList.findChildByType(PhpTokenTypes.kwPRIVATE) != null
+    }
+
+    /**
+     * The return type declared in the signature, or else by the `@return`
+     * tag of the doc comment, with class names resolved. Empty when neither
+     * is declared, or the type can't be resolved without PSI (`self`).
+     */
+    private fun declaredReturnType(methodNode: ASTNode, imports: FileImports): String {
+        val signatureType = signatureReturnType(methodNode)
+        if (signatureType.isNotEmpty()) {
+            return ViewVariableTypeHints.ofDeclaredType(signatureType, imports)
+        }
+        val docType = docComment(methodNode)
+            ?.let { docReturnTag.find(it)?.groupValues?.get(1) }
+            // SelectQuery<\App\Model\Entity\Movie>
+            ?.substringBefore('<')
+            ?: return ViewVariableTypeHints.NONE
+        return ViewVariableTypeHints.ofDeclaredType(docType, imports)
+    }
+
+    // `function findOwnedBy(SelectQuery $query): SelectQuery {`
+    private fun signatureReturnType(methodNode: ASTNode): String {
+        val parameterList = ModelClassAST.findChild(methodNode) { it.isParameterList() } ?: return ""
+        val text = StringBuilder()
+        var child = parameterList.treeNext
+        while (child != null) {
+            val childText = child.text
+            if (childText.startsWith("{") || childText.startsWith(";")) {
+                break
+            }
+            text.append(childText)
+            child = child.treeNext
+        }
+        val afterParameters = text.toString().trim().removePrefix(")").trim()
+        if (!afterParameters.startsWith(":")) {
+            return ""
+        }
+        return afterParameters.substring(1).trim()
+    }
+
+    // The doc comment is the method's first child or the sibling before it
+    private fun docComment(methodNode: ASTNode): String? {
+        val firstChild = methodNode.firstChildNode
+        if (firstChild != null && firstChild.text.startsWith("/**")) {
+            return firstChild.text
+        }
+        var previous = methodNode.treePrev
+        while (previous != null && ModelClassAST.isWhiteSpace(previous)) {
+            previous = previous.treePrev
+        }
+        return previous?.text?.takeIf { it.startsWith("/**") }
+    }
+
+    private fun collectBehaviors(
+        node: ASTNode,
+        imports: FileImports,
+        behaviors: MutableList<BehaviorData>,
+        counters: IndexingCounters
+    ) {
+        counters.nodesVisited++
+        if (node.isMethodReference()) {
+            parseAddBehaviorCall(node, imports)?.let { behaviors.add(it) }
+        }
+        var child = node.firstChildNode
+        while (child != null) {
+            collectBehaviors(child, imports, behaviors, counters)
+            child = child.treeNext
+        }
+    }
+
+    // $this->addBehavior('Sluggable', ['className' => SluggableBehavior::class])
+    private fun parseAddBehaviorCall(node: ASTNode, imports: FileImports): BehaviorData? {
+        val call = ModelClassAST.parseCall(node) ?: return null
+        if (!call.isOnThis || !call.methodName.equals(ADD_BEHAVIOR, ignoreCase = true)) {
+            return null
+        }
+        val name = call.arguments.firstOrNull()?.let { ModelClassAST.stringValue(it) } ?: return null
+        if (name.isEmpty()) {
+            return null
+        }
+        val className = ModelClassAST.arrayOptions(call.arguments.getOrNull(1))["className"]
+            ?.let { ModelClassAST.classNameValue(it, imports) }
+        return BehaviorData(name = name, className = className)
+    }
+}
@@ -0,0 +1,34 @@
+package com.daveme.chocolateCakePHP.model.finderindex
+
+import com.daveme.chocolateCakePHP.cake.ModelClassIndexInputFilter
+import com.intellij.util.indexing.*
+import com.intellij.util.io.DataExternalizer
+import com.intellij.util.io.EnumeratorStringDescriptor
+import com.intellij.util.io.KeyDescriptor
+
+class FinderIndex : FileBasedIndexExtension<String, ModelClassFinders>() {
+
+    override fun getName() = FINDER_INDEX_KEY
+
+    override fun getIndexer(): DataIndexer<String, ModelClassFinders, FileContent> =
+        FinderDataIndexer
+
+    override fun getKeyDescriptor(): KeyDescriptor<String> =
+        EnumeratorStringDescriptor.INSTANCE
+
+    override fun getValueExternalizer(): DataExternalizer<ModelClassFinders> =
+        FinderDataExternalizer
+
+    override fun getVersion(): Int {
+        return 2
+    }
+
+    override fun getInputFilter(): FileBasedIndex.InputFilter {
+        return ModelClassIndexInputFilter("Table", "Behavior")
+    }
+
+    override fun dependsOnFileContent(): Boolean {
+        return true
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.daveme.chocolateCakePHP.model.finderindex
+
+import com.daveme.chocolateCakePHP.Settings
+import com.daveme.chocolateCakePHP.absoluteClassName
+import com.daveme.chocolateCakePHP.cake.modelClassName
+import com.daveme.chocolateCakePHP.removeFromStart
+import com.intellij.openapi.progress.ProgressManager
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.psi.PsiManager
+import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.util.indexing.FileBasedIndex
+import com.intellij.util.indexing.ID
+import com.jetbrains.php.PhpIndex
+import com.jetbrains.php.lang.psi.elements.Method
+
+val FINDER_INDEX_KEY : ID<String, ModelClassFinders> =
+    ID.create("com.daveme.chocolateCakePHP.model.finderindex.FinderIndex")
+
+data class FinderData(
+    val methodName: String,
+    // The declared return type, from the signature or else the `@return`
+    // tag, with class names resolved. Empty when none is declared.
+    val returnType: String,
+    val offset: Int,
+)
+
+data class BehaviorData(
+    // As passed to addBehavior(): `Timestamp`, `Plugin.Timestamp`, or a class name
+    val name: String,
+    // The `className` option, null when not given
+    val className: String?,
+)
+
+/**
+ * The custom finders of a Table or Behavior class, and where it gets more
+ * of them from: the class it extends and the behaviors it adds.
+ */
+data class ModelClassFinders(
+    val parentClass: String?,
+    val finders: List<FinderData>,
+    val behaviors: List<BehaviorData>,
+)
+
+/**
+ * A custom finder read from the finder index. PSI is only loaded by
+ * [findMethod], when navigating.
+ */
+class CustomFinder(
+    val file: VirtualFile,
+    val offset: Int,
+    val methodName: String,
+    val returnType: String,
+) {
+    // findOwnedBy() is the "ownedBy" finder
+    val finderName: String
+        get() = methodName
+            .removeFromStart("find", ignoreCase = true)
+            .replaceFirstChar { it.lowercase() }
+
+    // Finders without a declared return type are taken to return a query
+    val returnsQuery: Boolean
+        get() = returnType.isEmpty() || returnType.contains("Query", ignoreCase = true)
+
+    /**
+     * Assumes: read lock held
+     */
+    fun findMethod(project: Project): Method? {
+        val psiFile = PsiManager.getInstance(project).findFile(file) ?: return null
+        val leaf = psiFile.findElementAt(offset) ?: return null
+        return PsiTreeUtil.getParentOfType(leaf, Method::class.java, false)
+    }
+}
+
+/**
+ * Looks up the custom finders of Table classes in the finder index, so
+ * completing and navigating to `find('ownedBy')` needs neither the tables'
+ * PSI nor their methods' return types.
+ */
+object FinderIndexService {
+
+    /**
+     * The index key of a table or behavior class: its FQN, lowercase as PHP
+     * class names are case-insensitive.
+     */
+    fun classKey(classFqn: String): String =
+        classFqn.absoluteClassName().lowercase()
+
+    /**
+     * The custom finders of [tableFqns], including the ones they inherit and
+     * the ones of the behaviors they add. A finder a table declares hides
+     * the one of the same name further up.
+     *
+     * Classes without finders or behaviors of their own aren't in the index,
+     * so their parent class is read from PhpIndex instead.
+     *
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun customFinders(
+        project: Project,
+        settings: Settings,
+        tableFqns: Collection<String>
+    ): List<CustomFinder> {
+        val fileIndex = FileBasedIndex.getInstance()
+        val phpIndex = PhpIndex.getInstance(project)
+        val scope = GlobalSearchScope.allScope(project)
+        val result = LinkedHashMap<String, CustomFinder>()
+        val visited = HashSet<String>()
+        val queue = ArrayDeque(tableFqns)
+
+        while (queue.isNotEmpty()) {
+            ProgressManager.checkCanceled()
+            val classFqn = queue.removeFirst()
+            val key = classKey(classFqn)
+            if (!visited.add(key)) {
+                continue
+            }
+            var indexed = false
+            fileIndex.processValues(FINDER_INDEX_KEY, key, null,
+                { file, modelClassFinders ->
+                    indexed = true
+                    for (finder in modelClassFinders.finders) {
+                        result.putIfAbsent(
+                            finder.methodName.lowercase(),
+                            CustomFinder(file, finder.offset, finder.methodName, finder.returnType)
+                        )
+                    }
+                    modelClassFinders.parentClass?.let { queue.add(it) }
+                    for (behavior in modelClassFinders.behaviors) {
+                        queue.add(modelClassName(settings, behavior.className ?: behavior.name, "Behavior"))
+                    }
+                    true
+                },
+                scope
+            )
+            if (!indexed) {
+                phpIndex.getClassesByFQN(classFqn).mapNotNullTo(queue) { it.superFQN }
+            }
+        }
+        return result.values.toList()
+    }
+}
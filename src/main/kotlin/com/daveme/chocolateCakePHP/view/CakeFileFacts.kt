@@ -0,0 +1,110 @@
+package com.daveme.chocolateCakePHP.view
+
+import com.daveme.chocolateCakePHP.ContentPrefilter
+import com.daveme.chocolateCakePHP.IndexingCounters
+import com.daveme.chocolateCakePHP.PhpTokenPrescan
+import com.daveme.chocolateCakePHP.cake.isCakeControllerFile
+import com.daveme.chocolateCakePHP.view.viewfileindex.MethodInfo
+import com.daveme.chocolateCakePHP.view.viewfileindex.ViewFileASTCollector
+import com.daveme.chocolateCakePHP.view.viewfileindex.ViewFileFacts
+import com.daveme.chocolateCakePHP.view.viewvariableindex.SetCallInfo
+import com.intellij.openapi.util.Key
+import com.intellij.util.indexing.FileContent
+
+// Public controller methods that are part of the framework, not actions
+private val nonActionMethods: HashSet<String> = listOf(
+    "beforefilter",
+    "beforerender",
+    "afterfilter",
+    "initialize",
+    "implementedEvents",
+    "constructclasses",
+    "invokeaction",
+    "startupprocess",
+    "shutdownprocess",
+    "redirect",
+    "setaction",
+    "render",
+    "viewclasses",
+    "paginate",
+    "isaction",
+    "loadcomponent",
+    "setrequest",
+).map { it.lowercase() }.toHashSet()
+
+fun isControllerActionName(methodName: String): Boolean =
+    !nonActionMethods.contains(methodName.lowercase())
+
+private val CAKE_FILE_FACTS_KEY = Key.create<CakeFileFacts>("chocolatecakephp.cakeFileFacts")
+
+/**
+ * Everything the plugin's indexes extract from one PHP file, computed once per
+ * [FileContent] and shared between [viewfileindex.ViewFileIndex] and
+ * [viewvariableindex.ViewVariableIndex], so a controller is only walked once.
+ */
+class CakeFileFacts private constructor(
+    val isController: Boolean,
+    // Null when the file was ruled out before building the AST
+    val ast: ViewFileFacts?,
+) {
+
+    /**
+     * Public, non-framework methods of a controller, in document order. Both
+     * indexes use this list, so they always agree on what an action is.
+     */
+    val actions: List<MethodInfo> by lazy(LazyThreadSafetyMode.NONE) {
+        ast?.methods?.filter { it.isPublic && isControllerActionName(it.name) }
+            ?: emptyList()
+    }
+
+    fun setCallsIn(action: MethodInfo): List<SetCallInfo> =
+        ast?.setCallsByMethodOffset?.get(action.offset) ?: emptyList()
+
+    companion object {
+        private val NOTHING = CakeFileFacts(isController = false, ast = null)
+
+        fun of(inputData: FileContent, counters: IndexingCounters): CakeFileFacts {
+            inputData.getUserData(CAKE_FILE_FACTS_KEY)?.let { return it }
+            val facts = extract(inputData)
+            facts.ast?.let { counters.nodesVisited = it.nodesVisited }
+            inputData.putUserData(CAKE_FILE_FACTS_KEY, facts)
+            return facts
+        }
+
+        private fun extract(inputData: FileContent): CakeFileFacts {
+            val virtualFile = inputData.file
+            if (virtualFile.nameWithoutExtension.endsWith("Test")) {
+                return NOTHING
+            }
+
+            // Raw byte scan first: most PHP files (vendor code especially) have no
+            // candidates at all, so don't even lex them.
+            val isController = isCakeControllerFile(virtualFile)
+            val prefilter = ContentPrefilter.scan(inputData.content)
+            val mayHaveActions = isController && (prefilter and ContentPrefilter.CLASS_KEYWORD) != 0
+            if ((prefilter and ContentPrefilter.VIEW_FILE_REFERENCES) == 0 && !mayHaveActions) {
+                return NOTHING
+            }
+
+            // Lexer-only pre-pass, which ignores comments and strings, before
+            // building the AST.
+            val prescan = PhpTokenPrescan.scan(inputData.project, inputData.contentAsText)
+            val hasActions = mayHaveActions && prescan.hasFunctions
+            if (!prescan.hasViewFileCandidates && !hasActions) {
+                return CakeFileFacts(isController, ast = null)
+            }
+
+            // Collect everything in one AST traversal instead of PSI
+            val rootNode = inputData.psiFile.node ?: return CakeFileFacts(isController, ast = null)
+            val ast = ViewFileASTCollector.collect(
+                rootNode,
+                // The prefilter lets the visitor skip viewBuilder parsing entirely
+                collectViewBuilderCalls = (prefilter and ContentPrefilter.VIEW_BUILDER) != 0,
+                collectMethods = isController,
+                // Unlike the byte prefilter, the prescan skips `->set(` in comments and strings
+                collectSetCalls = hasActions && prescan.hasSetCalls
+            )
+            return CakeFileFacts(isController, ast)
+        }
+    }
+}
@@ -60,8 +60,6 @@ class ElementToUsagesGotoRelatedProvider : GotoRelatedProvider() {
         // Get all references to this element file
         val referencingElements = ViewFileIndexService
             .referencingElementsInSmartReadAction(project, filenameKey)
-            .mapNotNull { it.psiElement }
-            .filter { it.isValid }
 
         // Convert to GotoRelatedItems with appropriate grouping
         return referencingElements.map { element ->
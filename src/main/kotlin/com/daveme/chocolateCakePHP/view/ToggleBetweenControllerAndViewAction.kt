@@ -6,7 +6,6 @@ import com.daveme.chocolateCakePHP.createViewActionPopupFromAllViewPaths
 import com.daveme.chocolateCakePHP.getScreenPoint
 import com.daveme.chocolateCakePHP.showPsiElementPopupFromEditor
 import com.daveme.chocolateCakePHP.showPsiFilePopupFromEditor
-import com.daveme.chocolateCakePHP.view.viewfileindex.PsiElementAndPath
 import com.daveme.chocolateCakePHP.view.viewfileindex.ViewFileIndexService
 import com.intellij.openapi.actionSystem.ActionUpdateThread
 import com.intellij.openapi.actionSystem.AnAction
@@ -18,7 +17,6 @@ import com.intellij.openapi.application.ReadAction
 import com.intellij.openapi.editor.Editor
 import com.intellij.openapi.fileEditor.FileEditorManager
 import com.intellij.openapi.progress.ProgressIndicator
-import com.intellij.openapi.progress.ProgressManager
 import com.intellij.openapi.progress.Task
 import com.intellij.openapi.project.DumbService
 import com.intellij.openapi.project.Project
@@ -154,15 +152,7 @@ class ToggleBetweenControllerAndViewAction : AnAction() {
         val filenameKey = ViewFileIndexService.canonicalizeFilenameToKey(templatesDir, settings, relativePath)
 
         ReadAction.nonBlocking<List<PsiElement>> {
-            val list = ViewFileIndexService.referencingElementsInSmartReadAction(project, filenameKey)
-            val acc = ArrayList<PsiElement>(list.size)
-            for (p in list) {
-                ProgressManager.checkCanceled()
-                val el = p.psiElement ?: continue
-                if (!el.isValid) continue
-                acc += el
-            }
-            acc
+            ViewFileIndexService.referencingElementsInSmartReadAction(project, filenameKey)
         }
             .inSmartMode(project)                        // wait until indices are ready
             .expireWith(settings)                         // cancel if settings removed
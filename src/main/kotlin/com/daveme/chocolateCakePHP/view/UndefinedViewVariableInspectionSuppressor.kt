@@ -10,7 +10,11 @@ import com.intellij.codeInspection.InspectionSuppressor
 import com.intellij.codeInspection.SuppressQuickFix
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.vfs.VfsUtil
+import com.intellij.openapi.vfs.VirtualFileManager
 import com.intellij.psi.PsiElement
+import com.intellij.psi.PsiFile
+import com.intellij.psi.util.CachedValueProvider
+import com.intellij.psi.util.CachedValuesManager
 import com.jetbrains.php.lang.psi.elements.Variable
 
 
@@ -32,14 +36,10 @@ class UndefinedViewVariableInspectionSuppressor : InspectionSuppressor {
         settings: Settings,
         variable: Variable
     ): Boolean {
-        val psiFile = variable.containingFile
-        val virtualFile = psiFile?.virtualFile ?: return false
-        val templatesDir = templatesDirectoryOfViewFile(project, settings, psiFile) ?: return false
-        val templateDirVirtualFile = templatesDir.directory
-        val relativePath = VfsUtil.getRelativePath(virtualFile, templateDirVirtualFile) ?: return false
+        val psiFile = variable.containingFile ?: return false
 
         try {
-            val filenameKey = ViewFileIndexService.canonicalizeFilenameToKey(templatesDir, settings, relativePath)
+            val filenameKey = viewFilenameKey(project, settings, psiFile) ?: return false
 
             // Use cache for variable lookup
             val cache = project.getService(ViewVariableCache::class.java)
@@ -50,20 +50,13 @@ class UndefinedViewVariableInspectionSuppressor : InspectionSuppressor {
             phpTracker.ensureArmed()
 
             return cache.isVariableDefined(
-                psiFile,
                 filenameKey,
                 variable.name,
                 phpTracker
-            ) { key, varName ->
-                // Fast path: Check variable existence without type resolution
-                // Phase 1: Static patterns only (PAIR, ARRAY, COMPACT, TUPLE)
-                // Future phases will add dynamic pattern support
-                ViewVariableIndexService.variableExistsInViewPath(
-                    project,
-                    settings,
-                    key,
-                    varName
-                )
+            ) { key ->
+                // Fast path: all the variable names of the view at once, without type resolution,
+                // so the other checks in the file are set lookups
+                ViewVariableIndexService.variablesDefinedInViewPath(project, key)
             }
         } catch (e: Exception) {
             println("Exception: ${e.message}")
@@ -71,6 +64,26 @@ class UndefinedViewVariableInspectionSuppressor : InspectionSuppressor {
         }
     }
 
+    // The view's filename key only depends on where the file is and on the
+    // settings, so it's worked out once for all the variables in the file.
+    private fun viewFilenameKey(project: Project, settings: Settings, psiFile: PsiFile): String? {
+        return CachedValuesManager.getCachedValue(psiFile) {
+            CachedValueProvider.Result.create(
+                computeViewFilenameKey(project, settings, psiFile),
+                VirtualFileManager.VFS_STRUCTURE_MODIFICATIONS,
+                settings.modificationTracker
+            )
+        }
+    }
+
+    private fun computeViewFilenameKey(project: Project, settings: Settings, psiFile: PsiFile): String? {
+        val virtualFile = psiFile.virtualFile ?: return null
+        val templatesDir = templatesDirectoryOfViewFile(project, settings, psiFile) ?: return null
+        val templateDirVirtualFile = templatesDir.directory
+        val relativePath = VfsUtil.getRelativePath(virtualFile, templateDirVirtualFile) ?: return null
+        return ViewFileIndexService.canonicalizeFilenameToKey(templatesDir, settings, relativePath)
+    }
+
     override fun getSuppressActions(
         element: PsiElement?,
         toolId: String
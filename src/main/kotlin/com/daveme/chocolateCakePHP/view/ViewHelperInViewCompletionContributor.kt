@@ -7,7 +7,6 @@ import com.intellij.openapi.project.DumbService
 import com.intellij.patterns.PlatformPatterns
 import com.intellij.psi.util.PsiTreeUtil
 import com.intellij.util.ProcessingContext
-import com.jetbrains.php.PhpIndex
 import com.jetbrains.php.lang.psi.elements.FieldReference
 
 class ViewHelperInViewCompletionContributor : CompletionContributor() {
@@ -52,9 +51,9 @@ class ViewHelperInViewCompletionContributor : CompletionContributor() {
             if (!isCakeViewFile(psiElement.project, settings, containingFile)) {
                 return
             }
-            val phpIndex = PhpIndex.getInstance(psiElement.project)
-            val viewHelperClasses = phpIndex.getViewHelperSubclasses(settings)
-            completionResultSet.completeFromClasses(viewHelperClasses, "Helper")
+            val viewHelperClasses = psiElement.project.getService(CakeClassCatalog::class.java)
+                .classes(CakeClassKind.HELPER, settings)
+            completionResultSet.completeFromClasses(viewHelperClasses.classes, "Helper")
         }
     }
 
@@ -1,14 +1,14 @@
 package com.daveme.chocolateCakePHP.view
 
+import com.daveme.chocolateCakePHP.CakeClassCatalog
+import com.daveme.chocolateCakePHP.CakeClassKind
 import com.daveme.chocolateCakePHP.Settings
 import com.daveme.chocolateCakePHP.completeFromClasses
-import com.daveme.chocolateCakePHP.getViewHelperSubclasses
 import com.intellij.codeInsight.completion.*
 import com.intellij.openapi.project.DumbService
 import com.intellij.patterns.PlatformPatterns
 import com.intellij.psi.util.PsiTreeUtil
 import com.intellij.util.ProcessingContext
-import com.jetbrains.php.PhpIndex
 import com.jetbrains.php.lang.psi.elements.FieldReference
 
 class ViewHelperInViewHelperCompletionContributor : CompletionContributor() {
@@ -56,8 +56,9 @@ class ViewHelperInViewHelperCompletionContributor : CompletionContributor() {
             }
 
             val type = classReference.type
-            val phpIndex = PhpIndex.getInstance(psiElement.project)
-            val viewHelperSubclasses = phpIndex.getViewHelperSubclasses(settings)
+            val viewHelperSubclasses = psiElement.project.getService(CakeClassCatalog::class.java)
+                .classes(CakeClassKind.HELPER, settings)
+                .classes
             val filtered = viewHelperSubclasses.filter { !type.types.contains(it.fqn) }
 
             val isCurrentFileAViewHelper = filtered.size < viewHelperSubclasses.size
@@ -58,8 +58,6 @@ class ViewToControllerGotoRelatedProvider : GotoRelatedProvider() {
         // Get all controller references to this view file
         val referencingElements = ViewFileIndexService
             .referencingElementsInSmartReadAction(project, filenameKey)
-            .mapNotNull { it.psiElement }
-            .filter { it.isValid }
 
         // Convert to GotoRelatedItems
         return referencingElements.map { element ->
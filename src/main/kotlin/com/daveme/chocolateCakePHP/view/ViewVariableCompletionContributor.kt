@@ -67,7 +67,6 @@ class ViewVariableCompletionContributor : CompletionContributor() {
             )
             val viewVarValues = ViewVariableIndexService.lookupVariablesFromViewPathInSmartReadAction(
                 project,
-                settings,
                 filenameKey
             )
             val phpIndex = PhpIndex.getInstance(project)
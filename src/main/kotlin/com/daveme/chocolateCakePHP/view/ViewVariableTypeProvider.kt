@@ -74,11 +74,8 @@ class ViewVariableTypeProvider : PhpTypeProvider4 {
             return null
         }
 
-        val settings = Settings.getInstance(project)
-
         val type = ViewVariableIndexService.lookupVariableTypeFromViewPathInSmartReadAction(
             project,
-            settings,
             relativePath,
             varName
         )
@@ -0,0 +1,444 @@
+package com.daveme.chocolateCakePHP.view.viewfileindex
+
+import com.daveme.chocolateCakePHP.*
+import com.daveme.chocolateCakePHP.view.viewvariableindex.FileImports
+import com.daveme.chocolateCakePHP.view.viewvariableindex.MethodScope
+import com.daveme.chocolateCakePHP.view.viewvariableindex.SetCallInfo
+import com.daveme.chocolateCakePHP.view.viewvariableindex.SetCallParser
+import com.intellij.lang.ASTNode
+import com.intellij.psi.TokenType
+import com.jetbrains.php.lang.lexer.PhpTokenTypes
+import com.jetbrains.php.lang.parser.PhpElementTypes
+
+// Data structures for AST-level parsing
+data class MethodCallInfo(
+    val methodName: String,
+    val receiverText: String?,
+    val firstParameterText: String?,
+    val offset: Int
+)
+
+data class MethodInfo(
+    val name: String,
+    val isPublic: Boolean,
+    val offset: Int
+)
+
+data class FieldAssignmentInfo(
+    val fieldName: String,
+    val receiverText: String?,
+    val assignedValue: String?,
+    val offset: Int
+)
+
+data class ViewBuilderCallInfo(
+    val methodName: String,        // "setTemplate" or "setTemplatePath"
+    val parameterValue: String?,   // The template name or path
+    val offset: Int,
+    val containingMethodStartOffset: Int  // Offset of containing CLASS_METHOD node
+)
+
+/**
+ * Everything the view file index needs to know about a PHP file, collected
+ * in a single walk of its AST. Each list is in document (pre-order) order.
+ */
+class ViewFileFacts {
+    val renderCalls = mutableListOf<MethodCallInfo>()
+    val elementCalls = mutableListOf<MethodCallInfo>()
+    val viewFieldAssignments = mutableListOf<FieldAssignmentInfo>()
+    val viewBuilderCalls = mutableListOf<ViewBuilderCallInfo>()
+    val methods = mutableListOf<MethodInfo>()
+    // `$this->set()` calls, keyed by the offset of the containing method
+    val setCallsByMethodOffset = HashMap<Int, MutableList<SetCallInfo>>()
+    var nodesVisited = 0
+
+    fun hasExplicitReferences(): Boolean {
+        return renderCalls.isNotEmpty() ||
+                elementCalls.isNotEmpty() ||
+                viewFieldAssignments.isNotEmpty() ||
+                viewBuilderCalls.isNotEmpty()
+    }
+}
+
+/**
+ * Single-pass AST visitor that collects `$this->render()`, `$this->element()`,
+ * `$this->view = ...`, `$this->viewBuilder()->setTemplate*()`, `$this->set()`
+ * and method declaration facts.
+ */
+object ViewFileASTCollector {
+
+    fun collect(
+        root: ASTNode,
+        collectViewBuilderCalls: Boolean,
+        collectMethods: Boolean,
+        collectSetCalls: Boolean = false
+    ): ViewFileFacts {
+        val facts = ViewFileFacts()
+        val imports = if (collectSetCalls) FileImports() else null
+        visit(root, facts, collectViewBuilderCalls, collectMethods, collectSetCalls, -1, imports, null)
+        return facts
+    }
+
+    private fun visit(
+        node: ASTNode,
+        facts: ViewFileFacts,
+        collectViewBuilderCalls: Boolean,
+        collectMethods: Boolean,
+        collectSetCalls: Boolean,
+        containingMethodOffset: Int,
+        imports: FileImports?,
+        containingMethodScope: MethodScope?
+    ) {
+        var currentMethodOffset = containingMethodOffset
+        // Parameters and the value last assigned to each local variable of the method, so far
+        var scope = containingMethodScope
+        facts.nodesVisited++
+
+        when {
+            node.isNamespace() -> {
+                imports?.addNamespace(node)
+            }
+            node.isUseList() -> {
+                // Closures have use lists too, but only file level ones are imports
+                if (currentMethodOffset < 0) {
+                    imports?.addUseList(node)
+                }
+            }
+            node.isClassMethod() -> {
+                // Track when we enter a CLASS_METHOD
+                currentMethodOffset = node.startOffset
+                if (imports != null) {
+                    val methodScope = MethodScope(imports)
+                    node.findChildByType(PhpElementTypes.PARAMETER_LIST)?.let { methodScope.addParameters(it) }
+                    scope = methodScope
+                }
+                if (collectMethods) {
+                    parseMethodDeclaration(node)?.let { facts.methods.add(it) }
+                }
+            }
+            node.isMethodReference() -> {
+                val methodCall = parseMethodCall(node)
+                if (methodCall != null && methodCall.receiverText == "this") {
+                    when {
+                        methodCall.methodName.equals("render", ignoreCase = true) ->
+                            facts.renderCalls.add(methodCall)
+                        methodCall.methodName.equals("element", ignoreCase = true) ->
+                            facts.elementCalls.add(methodCall)
+                    }
+                }
+                if (collectViewBuilderCalls) {
+                    val viewBuilderCall = parseViewBuilderCall(node, currentMethodOffset)
+                    if (viewBuilderCall?.parameterValue != null) {
+                        facts.viewBuilderCalls.add(viewBuilderCall)
+                    }
+                }
+                if (collectSetCalls && currentMethodOffset >= 0) {
+                    val setCalls = SetCallParser.parseSetCalls(node, scope ?: MethodScope.NONE)
+                    if (setCalls.isNotEmpty()) {
+                        facts.setCallsByMethodOffset
+                            .getOrPut(currentMethodOffset) { mutableListOf() }
+                            .addAll(setCalls)
+                    }
+                }
+            }
+            node.isAssignmentExpression() -> {
+                parseFieldAssignment(node, "view")?.let { facts.viewFieldAssignments.add(it) }
+                if (scope != null) {
+                    SetCallParser.recordLocalAssignment(node, scope)
+                }
+            }
+        }
+
+        // Recursively check child nodes - avoid toList() allocation
+        var child = node.firstChildNode
+        while (child != null) {
+            visit(child, facts, collectViewBuilderCalls, collectMethods, collectSetCalls, currentMethodOffset, imports, scope)
+            child = child.treeNext
+        }
+    }
+
+    // Robust string literal extraction that handles different PHP plugin versions
+    private fun extractStringLiteral(node: ASTNode): String? {
+        // Accept either STRING wrapper or direct STRING_LITERAL token
+        val strNode = node.takeIf { it.isString() } ?: node
+
+        // Try child token
+        val lit = strNode.findChildByType(PhpTokenTypes.STRING_LITERAL)
+        val text = (lit ?: strNode).text
+        // Strip quotes if present
+        return text.removeSurrounding("'").removeSurrounding("\"")
+    }
+
+    private fun parseMethodCall(node: ASTNode): MethodCallInfo? {
+        // Look for VARIABLE, arrow, identifier, parameter list pattern
+        var receiverName: String? = null
+        var methodName: String? = null
+        var parameterValue: String? = null
+
+        // Parse structure based on AST: VARIABLE -> arrow -> identifier -> (...) - avoid toList()
+        var child = node.firstChildNode
+        while (child != null) {
+            when {
+                child.isVariable() -> {
+                    receiverName = child.text.removePrefix("$")
+                }
+                child.elementType == PhpTokenTypes.IDENTIFIER -> {
+                    methodName = child.text
+                }
+                child.isParameterList() -> {
+                    // Extract the first string parameter, ignoring additional parameters
+                    // Both element() and render() accept optional parameters - we only need the first one
+                    var paramChild = child.firstChildNode
+                    while (paramChild != null) {
+                        // Skip whitespace and commas to find actual parameters
+                        if (paramChild.elementType != TokenType.WHITE_SPACE && paramChild.elementType != PhpTokenTypes.opCOMMA) {
+                            // Try to extract string literal from the first parameter we encounter
+                            val extractedValue = extractStringLiteral(paramChild)
+                            if (extractedValue != null) {
+                                parameterValue = extractedValue
+                                break  // Found the first string parameter, stop looking
+                            }
+                        }
+                        paramChild = paramChild.treeNext
+                    }
+                }
+            }
+            child = child.treeNext
+        }
+
+        // Only return if we have all required parts
+        if (methodName != null && receiverName != null && parameterValue != null) {
+            return MethodCallInfo(
+                methodName = methodName,
+                receiverText = receiverName,
+                firstParameterText = parameterValue,
+                offset = node.startOffset
+            )
+        }
+
+        return null
+    }
+
+    private fun parseMethodDeclaration(node: ASTNode): MethodInfo? {
+        var isPublic = true  // PHP default visibility is public if unspecified
+        var methodName: String? = null
+
+        var child = node.firstChildNode
+        while (child != null) {
+            when {
+                child.isModifierList() -> {
+                    var m = child.firstChildNode
+                    while (m != null) {
+                        when (m.elementType) {
+                            PhpTokenTypes.kwPUBLIC    -> isPublic = true
+                            PhpTokenTypes.kwPRIVATE,
+                            PhpTokenTypes.kwPROTECTED -> isPublic = false
+                        }
+                        m = m.treeNext
+                    }
+                }
+                child.elementType == PhpTokenTypes.IDENTIFIER -> methodName = child.text
+            }
+            child = child.treeNext
+        }
+
+        return methodName?.let {
+            MethodInfo(name = it, isPublic = isPublic, offset = node.startOffset)
+        }
+    }
+
+    private fun parseFieldAssignment(node: ASTNode, targetFieldName: String): FieldAssignmentInfo? {
+        // Look for: $this->view = 'template_name'
+        // AST structure: ASSIGNMENT_EXPRESSION -> FIELD_REFERENCE (left) -> STRING (right)
+        var fieldReference: ASTNode? = null
+        var assignedValue: String? = null
+
+        var child = node.firstChildNode
+        while (child != null) {
+            when {
+                child.isFieldReference() -> {
+                    fieldReference = child
+                }
+                child.isString() -> {
+                    assignedValue = extractStringLiteral(child)
+                }
+            }
+            child = child.treeNext
+        }
+
+        // Parse the field reference to ensure it's $this->view
+        if (fieldReference != null && assignedValue != null) {
+            var receiverName: String? = null
+            var fieldName: String? = null
+
+            var refChild = fieldReference.firstChildNode
+            while (refChild != null) {
+                when {
+                    refChild.isVariable() -> {
+                        receiverName = refChild.text.removePrefix("$")
+                    }
+                    refChild.elementType == PhpTokenTypes.IDENTIFIER -> {
+                        fieldName = refChild.text
+                    }
+                }
+                refChild = refChild.treeNext
+            }
+
+            if (receiverName == "this" && fieldName?.equals(targetFieldName, ignoreCase = true) == true) {
+                return FieldAssignmentInfo(
+                    fieldName = fieldName,
+                    receiverText = receiverName,
+                    assignedValue = assignedValue,
+                    offset = fieldReference.startOffset
+                )
+            }
+        }
+
+        return null
+    }
+
+    private fun parseViewBuilderCall(
+        node: ASTNode,
+        containingMethodOffset: Int
+    ): ViewBuilderCallInfo? {
+        // Look for:
+        //   1. $this->viewBuilder()->setTemplate('name')
+        //   2. $this->viewBuilder()->setTemplatePath('path')
+        //   3. $this->viewBuilder()->setTemplatePath('path')->setTemplate('name')  (chained)
+        //
+        // For chained calls, both setTemplatePath and setTemplate are returned as separate
+        // ViewBuilderCallInfo objects to preserve state tracking behavior.
+        //
+        // AST structure:
+        //   Normal: METHOD_REFERENCE (setTemplate/setTemplatePath)
+        //     -> receiver: METHOD_REFERENCE (viewBuilder)
+        //         -> receiver: VARIABLE ($this)
+        //   Chained: METHOD_REFERENCE (setTemplate)
+        //     -> receiver: METHOD_REFERENCE (setTemplatePath)
+        //         -> receiver: METHOD_REFERENCE (viewBuilder)
+        //             -> receiver: VARIABLE ($this)
+
+        // Quick check: get method name first for early rejection
+        val methodName = getMethodName(node)
+        if (methodName != "setTemplate" && methodName != "setTemplatePath") {
+            return null  // Early exit for non-target methods
+        }
+
+        // Now parse the rest of the structure
+        var parameterValue: String? = null
+        var receiverMethodRef: ASTNode? = null
+
+        // Parse the outer method reference (setTemplate or setTemplatePath)
+        var child = node.firstChildNode
+        while (child != null) {
+            when {
+                child.isMethodReference() -> {
+                    receiverMethodRef = child
+                }
+                child.isParameterList() -> {
+                    // Extract single string parameter
+                    var significantChild: ASTNode? = null
+                    var significantCount = 0
+                    var paramChild = child.firstChildNode
+                    while (paramChild != null) {
+                        if (paramChild.elementType != TokenType.WHITE_SPACE && paramChild.elementType != PhpTokenTypes.opCOMMA) {
+                            significantChild = paramChild
+                            significantCount++
+                        }
+                        paramChild = paramChild.treeNext
+                    }
+                    if (significantCount == 1 && significantChild != null) {
+                        parameterValue = extractStringLiteral(significantChild)
+                    }
+                }
+            }
+            child = child.treeNext
+        }
+
+        if (receiverMethodRef == null) {
+            return null
+        }
+
+        // Pattern 1: Normal calls - receiver is viewBuilder()
+        if (isViewBuilderMethodCall(receiverMethodRef)) {
+            return ViewBuilderCallInfo(
+                methodName = methodName,
+                parameterValue = parameterValue,
+                offset = node.startOffset,
+                containingMethodStartOffset = containingMethodOffset
+            )
+        }
+
+        // Pattern 2: Chained calls - setTemplate's receiver is setTemplatePath
+        // Check receiver method name to see if it's setTemplatePath
+        val receiverMethodName = getMethodName(receiverMethodRef)
+        if (methodName == "setTemplate" && receiverMethodName == "setTemplatePath") {
+            // Verify the chain goes back to viewBuilder()
+            val viewBuilderNode = getReceiverMethodRef(receiverMethodRef)
+            if (viewBuilderNode != null && isViewBuilderMethodCall(viewBuilderNode)) {
+                // Return as normal setTemplate - state tracking will handle the path
+                return ViewBuilderCallInfo(
+                    methodName = "setTemplate",
+                    parameterValue = parameterValue,  // Just the template name, not combined!
+                    offset = node.startOffset,
+                    containingMethodStartOffset = containingMethodOffset
+                )
+            }
+        }
+
+        // Pattern 3: Chained setTemplatePath - will be processed normally by Pattern 1
+        // AST traversal visits it separately, so no special handling needed
+
+        return null
+    }
+
+    /**
+     * Get the method name from a METHOD_REFERENCE node
+     */
+    private fun getMethodName(node: ASTNode): String? {
+        var child = node.firstChildNode
+        while (child != null) {
+            if (child.elementType == PhpTokenTypes.IDENTIFIER) {
+                return child.text
+            }
+            child = child.treeNext
+        }
+        return null
+    }
+
+    /**
+     * Get the receiver METHOD_REFERENCE from a METHOD_REFERENCE node
+     */
+    private fun getReceiverMethodRef(node: ASTNode): ASTNode? {
+        var child = node.firstChildNode
+        while (child != null) {
+            if (child.isMethodReference()) {
+                return child
+            }
+            child = child.treeNext
+        }
+        return null
+    }
+
+    private fun isViewBuilderMethodCall(node: ASTNode): Boolean {
+        // Check if this is a METHOD_REFERENCE with name "viewBuilder" and receiver "$this"
+        var receiverVariable: String? = null
+        var methodName: String? = null
+
+        var child = node.firstChildNode
+        while (child != null) {
+            when {
+                child.isVariable() -> {
+                    receiverVariable = child.text.removePrefix("$")
+                }
+                child.elementType == PhpTokenTypes.IDENTIFIER -> {
+                    methodName = child.text
+                }
+            }
+            child = child.treeNext
+        }
+
+        return receiverVariable == "this" && methodName == "viewBuilder"
+    }
+
+}
@@ -1,29 +1,58 @@
 package com.daveme.chocolateCakePHP.view.viewfileindex
 
+import com.daveme.chocolateCakePHP.*
 import com.intellij.util.io.DataExternalizer
 import java.io.DataInput
 import java.io.DataOutput
 
 object ViewReferenceDataExternalizer : DataExternalizer<List<ViewReferenceData>> {
 
+    private const val FORMAT = 2
+
+    // Nearly every explicit reference is one of these, so they are never
+    // written out as strings.
+    private val commonMethodNames = listOf(
+        "render",
+        "element",
+        "view",
+        "setTemplate",
+    )
+
+    private val elementTypes = ElementType.values()
+
     override fun save(out: DataOutput, value: List<ViewReferenceData>) {
-        out.writeInt(value.size)
+        writeIndexFormat(out, FORMAT)
+        writeVarInt(out, value.size)
+        val strings = IndexStringTableWriter(out, commonMethodNames)
+        var previousOffset = 0
         value.forEach { data ->
-            out.writeUTF(data.methodName)
             out.writeByte(data.elementType.ordinal)
-            out.writeInt(data.offset)
+            strings.write(data.methodName)
+            // Empty for references outside of controllers
+            strings.write(data.containingMethodName ?: "")
+            writeOffsetDelta(out, data.offset, previousOffset)
+            previousOffset = data.offset
         }
     }
 
     override fun read(`in`: DataInput): List<ViewReferenceData> {
-        val size = `in`.readInt()
+        readIndexFormat(`in`, FORMAT)
+        val size = readVarInt(`in`)
+        val strings = IndexStringTableReader(`in`, commonMethodNames)
+        var previousOffset = 0
         return List(size) {
+            val elementType = elementTypes[`in`.readUnsignedByte()]
+            val methodName = strings.read()
+            val containingMethodName = strings.read().ifEmpty { null }
+            val offset = readOffsetDelta(`in`, previousOffset)
+            previousOffset = offset
             ViewReferenceData(
-                methodName = `in`.readUTF(),
-                elementType = ElementType.values()[`in`.readByte().toInt()],
-                offset = `in`.readInt()
+                methodName = methodName,
+                elementType = elementType,
+                offset = offset,
+                containingMethodName = containingMethodName
             )
         }
     }
 
-}
\ No newline at end of file
+}
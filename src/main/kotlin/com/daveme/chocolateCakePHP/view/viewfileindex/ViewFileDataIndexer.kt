@@ -1,527 +1,73 @@
 package com.daveme.chocolateCakePHP.view.viewfileindex
 
-import com.daveme.chocolateCakePHP.Settings
-import com.daveme.chocolateCakePHP.cake.isCakeControllerFile
-import com.daveme.chocolateCakePHP.*
+import com.daveme.chocolateCakePHP.IndexingCounters
+import com.daveme.chocolateCakePHP.IndexingStats
+import com.daveme.chocolateCakePHP.view.CakeFileFacts
 import com.intellij.openapi.project.guessProjectDir
 import com.intellij.openapi.vfs.VirtualFile
-import com.intellij.lang.ASTNode
 import com.intellij.openapi.diagnostic.thisLogger
-import com.intellij.psi.PsiFile
-import com.intellij.psi.TokenType
 import com.intellij.util.indexing.DataIndexer
 import com.intellij.util.indexing.FileContent
-import com.jetbrains.php.lang.lexer.PhpTokenTypes
-
-// Methods that should not trigger implicit view rendering
-private val cakeSkipRenderingMethods : HashSet<String> = listOf(
-    "beforefilter",
-    "beforerender",
-    "afterfilter",
-    "initialize",
-    "implementedEvents",
-    "constructclasses",
-    "invokeaction",
-    "startupprocess",
-    "shutdownprocess",
-    "redirect",
-    "setaction",
-    "render",
-    "viewclasses",
-    "paginate",
-    "isaction",
-    "loadcomponent",
-    "setrequest",
-).map { it.lowercase() }.toHashSet()
-
-// Data structures for AST-level parsing
-data class MethodCallInfo(
-    val methodName: String,
-    val receiverText: String?,
-    val firstParameterText: String?,
-    val offset: Int
-)
-
-data class MethodInfo(
-    val name: String,
-    val isPublic: Boolean,
-    val offset: Int
-)
-
-data class FieldAssignmentInfo(
-    val fieldName: String,
-    val receiverText: String?,
-    val assignedValue: String?,
-    val offset: Int
-)
-
-data class ViewBuilderCallInfo(
-    val methodName: String,        // "setTemplate" or "setTemplatePath"
-    val parameterValue: String?,   // The template name or path
-    val offset: Int,
-    val containingMethodStartOffset: Int  // Offset of containing CLASS_METHOD node
-)
-
 
 object ViewFileDataIndexer : DataIndexer<String, List<ViewReferenceData>, FileContent> {
     val logger = this.thisLogger()
 
-    // Robust string literal extraction that handles different PHP plugin versions
-    private fun extractStringLiteral(node: ASTNode): String? {
-        // Accept either STRING wrapper or direct STRING_LITERAL token
-        val strNode = node.takeIf { it.isString() } ?: node
-
-        // Try child token
-        val lit = strNode.findChildByType(PhpTokenTypes.STRING_LITERAL)
-        val text = (lit ?: strNode).text
-        // Strip quotes if present
-        return text.removeSurrounding("'").removeSurrounding("\"")
-    }
-
-    // AST-based parsing implementation (tested and proven)
-    private fun findMethodCallsByName(node: ASTNode, methodName: String): List<MethodCallInfo> {
-        val result = mutableListOf<MethodCallInfo>()
-        findMethodCallsRecursive(node, methodName, result)
-        return result
-    }
-    
-    private fun findMethodCallsRecursive(node: ASTNode, targetMethodName: String, result: MutableList<MethodCallInfo>) {
-        // Check if this node represents a method reference
-        if (isMethodReference(node)) {
-            val methodCall = parseMethodCall(node, targetMethodName)
-            if (methodCall != null) {
-                result.add(methodCall)
-            }
-        }
-        
-        // Recursively check child nodes - avoid toList() allocation
-        var child = node.firstChildNode
-        while (child != null) {
-            findMethodCallsRecursive(child, targetMethodName, result)
-            child = child.treeNext
-        }
-    }
-    
-    private fun isMethodReference(node: ASTNode): Boolean {
-        return node.isMethodReference()
-    }
-    
-    private fun parseMethodCall(node: ASTNode, targetMethodName: String): MethodCallInfo? {
-        // Look for VARIABLE, arrow, identifier, parameter list pattern
-        var receiverName: String? = null
-        var methodName: String? = null
-        var parameterValue: String? = null
-        
-        // Parse structure based on AST: VARIABLE -> arrow -> identifier -> (...) - avoid toList()
-        var child = node.firstChildNode
-        while (child != null) {
-            when {
-                child.isVariable() -> {
-                    receiverName = child.text.removePrefix("$")
-                }
-                child.elementType == PhpTokenTypes.IDENTIFIER -> {
-                    methodName = child.text
-                }
-                child.isParameterList() -> {
-                    // Extract the first string parameter, ignoring additional parameters
-                    // Both element() and render() accept optional parameters - we only need the first one
-                    var paramChild = child.firstChildNode
-                    while (paramChild != null) {
-                        // Skip whitespace and commas to find actual parameters
-                        if (paramChild.elementType != TokenType.WHITE_SPACE && paramChild.elementType != PhpTokenTypes.opCOMMA) {
-                            // Try to extract string literal from the first parameter we encounter
-                            val extractedValue = extractStringLiteral(paramChild)
-                            if (extractedValue != null) {
-                                parameterValue = extractedValue
-                                break  // Found the first string parameter, stop looking
-                            }
-                        }
-                        paramChild = paramChild.treeNext
-                    }
-                }
-            }
-            child = child.treeNext
-        }
-        
-        // Only return if method name matches target and we have all required parts
-        if (methodName?.equals(targetMethodName, ignoreCase = true) == true && 
-            receiverName != null && parameterValue != null) {
-            return MethodCallInfo(
-                methodName = methodName,
-                receiverText = receiverName,
-                firstParameterText = parameterValue,
-                offset = node.startOffset
-            )
-        }
-        
-        return null
-    }
-
-    private fun findMethodDeclarations(node: ASTNode): List<MethodInfo> {
-        val result = mutableListOf<MethodInfo>()
-        findMethodDeclarationsRecursive(node, result)
-        return result
-    }
-    
-    private fun findMethodDeclarationsRecursive(node: ASTNode, result: MutableList<MethodInfo>) {
-        // Check if this node represents a method declaration
-        if (isMethodDeclaration(node)) {
-            val methodInfo = parseMethodDeclaration(node)
-            if (methodInfo != null) {
-                result.add(methodInfo)
-            }
-        }
-        
-        // Recursively check child nodes - avoid toList() allocation
-        var child = node.firstChildNode
-        while (child != null) {
-            findMethodDeclarationsRecursive(child, result)
-            child = child.treeNext
-        }
-    }
-    
-    private fun isMethodDeclaration(node: ASTNode): Boolean {
-        return node.isClassMethod()
-    }
-    
-    private fun parseMethodDeclaration(node: ASTNode): MethodInfo? {
-        var isPublic = true  // PHP default visibility is public if unspecified
-        var methodName: String? = null
-
-        var child = node.firstChildNode
-        while (child != null) {
-            when {
-                child.isModifierList() -> {
-                    var m = child.firstChildNode
-                    while (m != null) {
-                        when (m.elementType) {
-                            PhpTokenTypes.kwPUBLIC    -> isPublic = true
-                            PhpTokenTypes.kwPRIVATE,
-                            PhpTokenTypes.kwPROTECTED -> isPublic = false
-                        }
-                        m = m.treeNext
-                    }
-                }
-                child.elementType == PhpTokenTypes.IDENTIFIER -> methodName = child.text
-            }
-            child = child.treeNext
-        }
-
-        return methodName?.let {
-            MethodInfo(name = it, isPublic = isPublic, offset = node.startOffset)
+    override fun map(inputData: FileContent): MutableMap<String, List<ViewReferenceData>> {
+        return IndexingStats.measure("ViewFileIndex", inputData, ViewReferenceDataExternalizer) { counters ->
+            indexFile(inputData, counters)
         }
     }
 
-    private fun findFieldAssignments(node: ASTNode, fieldName: String): List<FieldAssignmentInfo> {
-        val result = mutableListOf<FieldAssignmentInfo>()
-        findFieldAssignmentsRecursive(node, fieldName, result)
-        return result
-    }
+    private fun indexFile(
+        inputData: FileContent,
+        counters: IndexingCounters
+    ): MutableMap<String, List<ViewReferenceData>> {
+        val result = mutableMapOf<String, List<ViewReferenceData>>()
+        // No settings are read here: the index stores settings-free facts, and
+        // ViewFileIndexService applies the settings at query time. That way
+        // configuration changes do not require a reindex.
+        val project = inputData.project
+        val projectDir = project.guessProjectDir() ?: return result
 
-    private fun findFieldAssignmentsRecursive(node: ASTNode, targetFieldName: String, result: MutableList<FieldAssignmentInfo>) {
-        // Check if this node represents an assignment expression
-        if (node.isAssignmentExpression()) {
-            val fieldAssignment = parseFieldAssignment(node, targetFieldName)
-            if (fieldAssignment != null) {
-                result.add(fieldAssignment)
-            }
+        val virtualFile = inputData.file
+        val cakeFileFacts = CakeFileFacts.of(inputData, counters)
+        val facts = cakeFileFacts.ast ?: return result
+        if (!facts.hasExplicitReferences() && !cakeFileFacts.isController) {
+            return result
         }
 
-        // Recursively check child nodes
-        var child = node.firstChildNode
-        while (child != null) {
-            findFieldAssignmentsRecursive(child, targetFieldName, result)
-            child = child.treeNext
-        }
-    }
+        indexRenderCalls(result, projectDir, facts.renderCalls, virtualFile)
+        indexElementCalls(result, projectDir, facts.elementCalls, virtualFile)
+        indexViewFieldAssignments(result, projectDir, facts.viewFieldAssignments, virtualFile)
+        indexViewBuilderCalls(result, projectDir, facts.viewBuilderCalls, virtualFile)
 
-    private fun parseFieldAssignment(node: ASTNode, targetFieldName: String): FieldAssignmentInfo? {
-        // Look for: $this->view = 'template_name'
-        // AST structure: ASSIGNMENT_EXPRESSION -> FIELD_REFERENCE (left) -> STRING (right)
-        var fieldReference: ASTNode? = null
-        var assignedValue: String? = null
-
-        var child = node.firstChildNode
-        while (child != null) {
-            when {
-                child.isFieldReference() -> {
-                    fieldReference = child
-                }
-                child.isString() -> {
-                    assignedValue = extractStringLiteral(child)
-                }
-            }
-            child = child.treeNext
+        if (cakeFileFacts.isController) {
+            indexImplicitRender(result, projectDir, cakeFileFacts.actions, virtualFile)
+            addContainingMethodNames(result, facts.methods)
         }
 
-        // Parse the field reference to ensure it's $this->view
-        if (fieldReference != null && assignedValue != null) {
-            var receiverName: String? = null
-            var fieldName: String? = null
-
-            var refChild = fieldReference.firstChildNode
-            while (refChild != null) {
-                when {
-                    refChild.isVariable() -> {
-                        receiverName = refChild.text.removePrefix("$")
-                    }
-                    refChild.elementType == PhpTokenTypes.IDENTIFIER -> {
-                        fieldName = refChild.text
-                    }
-                }
-                refChild = refChild.treeNext
-            }
-
-            if (receiverName == "this" && fieldName?.equals(targetFieldName, ignoreCase = true) == true) {
-                return FieldAssignmentInfo(
-                    fieldName = fieldName,
-                    receiverText = receiverName,
-                    assignedValue = assignedValue,
-                    offset = fieldReference.startOffset
-                )
-            }
-        }
-
-        return null
-    }
-
-    private fun findViewBuilderCalls(node: ASTNode): List<ViewBuilderCallInfo> {
-        val result = mutableListOf<ViewBuilderCallInfo>()
-        findViewBuilderCallsRecursive(node, result, -1)
         return result
     }
 
-    private fun findViewBuilderCallsRecursive(
-        node: ASTNode,
-        result: MutableList<ViewBuilderCallInfo>,
-        containingMethodOffset: Int = -1
+    // Lets the render graph map controller references to actions without loading PSI.
+    private fun addContainingMethodNames(
+        result: MutableMap<String, List<ViewReferenceData>>,
+        methods: List<MethodInfo>
     ) {
-        // Track when we enter a CLASS_METHOD
-        val currentMethodOffset = if (node.isClassMethod()) {
-            node.startOffset
-        } else {
-            containingMethodOffset
-        }
-
-        // Check if this node represents a method reference
-        if (node.isMethodReference()) {
-            val viewBuilderCall = parseViewBuilderCall(node, currentMethodOffset)
-            if (viewBuilderCall != null) {
-                result.add(viewBuilderCall)
-            }
-        }
-
-        // Recursively check child nodes
-        var child = node.firstChildNode
-        while (child != null) {
-            findViewBuilderCallsRecursive(child, result, currentMethodOffset)
-            child = child.treeNext
-        }
-    }
-
-    private fun parseViewBuilderCall(
-        node: ASTNode,
-        containingMethodOffset: Int
-    ): ViewBuilderCallInfo? {
-        // Look for:
-        //   1. $this->viewBuilder()->setTemplate('name')
-        //   2. $this->viewBuilder()->setTemplatePath('path')
-        //   3. $this->viewBuilder()->setTemplatePath('path')->setTemplate('name')  (chained)
-        //
-        // For chained calls, both setTemplatePath and setTemplate are returned as separate
-        // ViewBuilderCallInfo objects to preserve state tracking behavior.
-        //
-        // AST structure:
-        //   Normal: METHOD_REFERENCE (setTemplate/setTemplatePath)
-        //     -> receiver: METHOD_REFERENCE (viewBuilder)
-        //         -> receiver: VARIABLE ($this)
-        //   Chained: METHOD_REFERENCE (setTemplate)
-        //     -> receiver: METHOD_REFERENCE (setTemplatePath)
-        //         -> receiver: METHOD_REFERENCE (viewBuilder)
-        //             -> receiver: VARIABLE ($this)
-
-        // Quick check: get method name first for early rejection
-        val methodName = getMethodName(node)
-        if (methodName != "setTemplate" && methodName != "setTemplatePath") {
-            return null  // Early exit for non-target methods
-        }
-
-        // Now parse the rest of the structure
-        var parameterValue: String? = null
-        var receiverMethodRef: ASTNode? = null
-
-        // Parse the outer method reference (setTemplate or setTemplatePath)
-        var child = node.firstChildNode
-        while (child != null) {
-            when {
-                child.isMethodReference() -> {
-                    receiverMethodRef = child
-                }
-                child.isParameterList() -> {
-                    // Extract single string parameter
-                    val significantChildren = mutableListOf<ASTNode>()
-                    var paramChild = child.firstChildNode
-                    while (paramChild != null) {
-                        if (paramChild.elementType != TokenType.WHITE_SPACE && paramChild.elementType != PhpTokenTypes.opCOMMA) {
-                            significantChildren.add(paramChild)
-                        }
-                        paramChild = paramChild.treeNext
-                    }
-                    if (significantChildren.size == 1) {
-                        parameterValue = extractStringLiteral(significantChildren[0])
-                    }
-                }
-            }
-            child = child.treeNext
-        }
-
-        if (receiverMethodRef == null) {
-            return null
-        }
-
-        // Pattern 1: Normal calls - receiver is viewBuilder()
-        if (isViewBuilderMethodCall(receiverMethodRef)) {
-            // Use passed-in offset instead of walking up tree
-            return ViewBuilderCallInfo(
-                methodName = methodName,
-                parameterValue = parameterValue,
-                offset = node.startOffset,
-                containingMethodStartOffset = containingMethodOffset
-            )
-        }
-
-        // Pattern 2: Chained calls - setTemplate's receiver is setTemplatePath
-        // Check receiver method name to see if it's setTemplatePath
-        val receiverMethodName = getMethodName(receiverMethodRef)
-        if (methodName == "setTemplate" && receiverMethodName == "setTemplatePath") {
-            // Verify the chain goes back to viewBuilder()
-            val viewBuilderNode = getReceiverMethodRef(receiverMethodRef)
-            if (viewBuilderNode != null && isViewBuilderMethodCall(viewBuilderNode)) {
-                // Use passed-in offset instead of walking up tree
-                // Return as normal setTemplate - state tracking will handle the path
-                return ViewBuilderCallInfo(
-                    methodName = "setTemplate",
-                    parameterValue = parameterValue,  // Just the template name, not combined!
-                    offset = node.startOffset,
-                    containingMethodStartOffset = containingMethodOffset
-                )
-            }
-        }
-
-        // Pattern 3: Chained setTemplatePath - will be processed normally by Pattern 1
-        // AST traversal visits it separately, so no special handling needed
-
-        return null
-    }
-
-    /**
-     * Get the method name from a METHOD_REFERENCE node
-     */
-    private fun getMethodName(node: ASTNode): String? {
-        var child = node.firstChildNode
-        while (child != null) {
-            if (child.elementType == PhpTokenTypes.IDENTIFIER) {
-                return child.text
-            }
-            child = child.treeNext
-        }
-        return null
-    }
-
-    /**
-     * Get the receiver METHOD_REFERENCE from a METHOD_REFERENCE node
-     */
-    private fun getReceiverMethodRef(node: ASTNode): ASTNode? {
-        var child = node.firstChildNode
-        while (child != null) {
-            if (child.isMethodReference()) {
-                return child
-            }
-            child = child.treeNext
+        if (methods.isEmpty()) {
+            return
         }
-        return null
-    }
-
-    private fun isViewBuilderMethodCall(node: ASTNode): Boolean {
-        // Check if this is a METHOD_REFERENCE with name "viewBuilder" and receiver "$this"
-        var receiverVariable: String? = null
-        var methodName: String? = null
-
-        var child = node.firstChildNode
-        while (child != null) {
-            when {
-                child.isVariable() -> {
-                    receiverVariable = child.text.removePrefix("$")
-                }
-                child.elementType == PhpTokenTypes.IDENTIFIER -> {
-                    methodName = child.text
+        // Methods are collected in document order, so their offsets are ascending
+        val offsets = IntArray(methods.size) { methods[it].offset }
+        for ((key, list) in result) {
+            result[key] = list.map { data ->
+                var index = offsets.binarySearch(data.offset)
+                if (index < 0) {
+                    index = -index - 2
                 }
+                if (index < 0) data else data.copy(containingMethodName = methods[index].name)
             }
-            child = child.treeNext
         }
-
-        return receiverVariable == "this" && methodName == "viewBuilder"
-    }
-
-    override fun map(inputData: FileContent): MutableMap<String, List<ViewReferenceData>> {
-        val result = mutableMapOf<String, List<ViewReferenceData>>()
-        val psiFile = inputData.psiFile
-        val project = psiFile.project
-        val projectDir = project.guessProjectDir() ?: return result
-        val settings = Settings.getInstance(project)
-
-        if (!settings.enabled) {
-            return result
-        }
-
-        val virtualFile = psiFile.virtualFile
-        if (virtualFile.nameWithoutExtension.endsWith("Test")) {
-            return result
-        }
-
-        // Use AST traversal instead of PSI for method calls
-        val rootNode = psiFile.node ?: return result
-        val astRenderCalls = findMethodCallsByName(rootNode, "render")
-            .filter { it.receiverText == "this" && it.firstParameterText != null }
-        val astElementCalls = findMethodCallsByName(rootNode, "element")
-            .filter { it.receiverText == "this" && it.firstParameterText != null }
-        val astViewFieldAssignments = findFieldAssignments(rootNode, "view")
-            .filter { it.receiverText == "this" && it.assignedValue != null }
-
-        // Early bailout: Quick text scan before AST traversal for viewBuilder calls
-        val astViewBuilderCalls = if (!inputData.contentAsText.contains("viewBuilder")) {
-            // Skip viewBuilder parsing entirely
-            emptyList()
-        } else {
-            findViewBuilderCalls(rootNode)
-                .filter { it.parameterValue != null }
-        }
-
-        val isController = isCakeControllerFile(virtualFile)
-        if (
-            astRenderCalls.isEmpty() &&
-            astElementCalls.isEmpty() &&
-            astViewFieldAssignments.isEmpty() &&
-            astViewBuilderCalls.isEmpty() &&
-            !isController
-        ) {
-            return result
-        }
-
-        indexRenderCalls(result, projectDir, astRenderCalls, virtualFile)
-        indexElementCalls(result, projectDir, astElementCalls, virtualFile)
-        indexViewFieldAssignments(result, projectDir, astViewFieldAssignments, virtualFile)
-        indexViewBuilderCalls(result, projectDir, astViewBuilderCalls, virtualFile)
-
-        if (isController) {
-            // Use AST traversal instead of PSI for method declarations
-            val astMethods = findMethodDeclarations(rootNode)
-                .filter { it.isPublic && !cakeSkipRenderingMethods.contains(it.name.lowercase()) }
-            
-            indexImplicitRender(result, projectDir, settings, astMethods, virtualFile)
-        }
-
-        return result
     }
 
     private fun indexRenderCalls(
@@ -655,7 +201,6 @@ object ViewFileDataIndexer : DataIndexer<String, List<ViewReferenceData>, FileCo
     private fun indexImplicitRender(
         result: MutableMap<String, List<ViewReferenceData>>,
         projectDir: VirtualFile,
-        settings: Settings,
         methods: List<MethodInfo>,
         controllerFile: VirtualFile
     ) {
@@ -667,22 +212,22 @@ object ViewFileDataIndexer : DataIndexer<String, List<ViewReferenceData>, FileCo
         val viewPathPrefix = viewPathPrefixFromSourceFile(projectDir, controllerFile)
             ?: return
 
-        val controllerInfo = lookupControllerFileInfo(controllerFile, settings)
-
+        // Whether the controller is CakePHP 2 (method name used as-is) or 3+
+        // (camel case converted to underscores) depends on the settings, so index
+        // both spellings. Entries whose spelling doesn't match the controller's
+        // version are dropped at query time.
         methods.forEach { method ->
-            val fullViewPath = fullImplicitViewPath(
-                viewPathPrefix,
-                controllerInfo,
-                method.name
-            )
-            val oldList = result.getOrDefault(fullViewPath, emptyList())
-            val newViewReferenceData = ViewReferenceData(
-                methodName = method.name,
-                elementType = ElementType.METHOD,
-                offset = method.offset
-            )
-            val newList = oldList + listOf(newViewReferenceData)
-            result[fullViewPath] = newList
+            val implicitViewPaths = implicitViewPathCandidates(viewPathPrefix, method.name)
+            for (fullViewPath in implicitViewPaths) {
+                val oldList = result.getOrDefault(fullViewPath, emptyList())
+                val newViewReferenceData = ViewReferenceData(
+                    methodName = method.name,
+                    elementType = ElementType.METHOD,
+                    offset = method.offset
+                )
+                val newList = oldList + listOf(newViewReferenceData)
+                result[fullViewPath] = newList
+            }
         }
     }
 
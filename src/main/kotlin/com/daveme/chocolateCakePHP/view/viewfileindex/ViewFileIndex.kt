@@ -1,5 +1,6 @@
 package com.daveme.chocolateCakePHP.view.viewfileindex
 
+import com.daveme.chocolateCakePHP.cake.CakeIndexInputFilter
 import com.intellij.util.indexing.*
 import com.intellij.util.io.DataExternalizer
 import com.intellij.util.io.EnumeratorStringDescriptor
@@ -19,14 +20,11 @@ class ViewFileIndex : FileBasedIndexExtension<String, List<ViewReferenceData>>()
         ViewReferenceDataExternalizer
 
     override fun getVersion(): Int {
-        return 17
+        return 22
     }
 
     override fun getInputFilter(): FileBasedIndex.InputFilter {
-        return FileBasedIndex.InputFilter { file ->
-            val isEqual = file.fileType.name == "PHP"
-            isEqual
-        }
+        return CakeIndexInputFilter(acceptTemplates = true)
     }
 
     override fun dependsOnFileContent(): Boolean {
@@ -4,6 +4,7 @@ import com.daveme.chocolateCakePHP.*
 import com.daveme.chocolateCakePHP.cake.*
 import com.intellij.openapi.progress.ProgressManager
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.project.guessProjectDir
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.psi.PsiElement
 import com.intellij.psi.PsiManager
@@ -16,7 +17,6 @@ import com.intellij.util.indexing.ID
 import com.jetbrains.php.lang.psi.elements.FieldReference
 import com.jetbrains.php.lang.psi.elements.Method
 import com.jetbrains.php.lang.psi.elements.MethodReference
-import java.io.File
 
 val VIEW_FILE_INDEX_KEY : ID<String, List<ViewReferenceData>> =
     ID.create("com.daveme.chocolateCakePHP.view.viewfileindex.ViewFileIndex.v2")
@@ -31,36 +31,53 @@ enum class ElementType {
 data class ViewReferenceData(
     val methodName: String,
     val elementType: ElementType,
-    val offset: Int
+    val offset: Int,
+    // The controller method the reference is in, null outside of controllers
+    val containingMethodName: String? = null
 )
 
-data class PsiElementAndPath(
-    val path: String,
-    val elementPointer: SmartPsiElementPointer<PsiElement>
+/**
+ * A reference to a view or element, read from the view file index without
+ * loading PSI. PSI is only loaded by [findPsiElement], when navigating.
+ */
+class ViewFileReference(
+    val file: VirtualFile,
+    val offset: Int,
+    val elementType: ElementType,
+    val methodName: String,
+    // The controller method the reference is in, null outside of controllers
+    val containingMethodName: String?,
 ) {
-    val nameWithoutExtension: String by lazy { File(path).nameWithoutExtension }
-    val controllerPath: ControllerPath? by lazy {  controllerPathFromPsiElementAndPath() }
-    val psiElement: PsiElement? get() = elementPointer.element
+    val path: String get() = file.path
+    val nameWithoutExtension: String get() = file.nameWithoutExtension
+    val controllerPath: ControllerPath? by lazy(LazyThreadSafetyMode.PUBLICATION) {
+        controllerPathFromControllerFile(file)
+    }
 
-    private fun controllerPathFromPsiElementAndPath(): ControllerPath? {
-        val parts = path.split("/")
-        if (parts.size < 2) {
-            return null
-        }
-        return if ("Controller" in parts) {
-            ControllerPath(
-                prefix = parts.reversed()
-                    .drop(1)
-                    .takeWhile { it != "Controller" }
-                    .joinToString("/"),
-                name = nameWithoutExtension.controllerBaseName() ?: return null
-            )
-        } else {
-            null
+    /**
+     * The method, method call or field reference at [offset].
+     *
+     * Assumes: read lock held
+     */
+    fun findPsiElement(project: Project): PsiElement? {
+        val psiFile = PsiManager.getInstance(project).findFile(file) ?: return null
+        val leaf = psiFile.findElementAt(offset) ?: return null
+        return when (elementType) {
+            ElementType.METHOD_REFERENCE -> PsiTreeUtil.getParentOfType(leaf, MethodReference::class.java, false)
+            ElementType.METHOD -> PsiTreeUtil.getParentOfType(leaf, Method::class.java, false)
+            ElementType.FIELD_ASSIGNMENT -> PsiTreeUtil.getParentOfType(leaf, FieldReference::class.java, false)
+            ElementType.VIEW_BUILDER -> PsiTreeUtil.getParentOfType(leaf, MethodReference::class.java, false)
         }
     }
-}
 
+    /**
+     * A pointer to [findPsiElement]'s element, for keeping it across read actions.
+     */
+    fun createPointer(project: Project): SmartPsiElementPointer<PsiElement>? {
+        val element = findPsiElement(project) ?: return null
+        return SmartPointerManager.getInstance(project).createSmartPsiElementPointer(element)
+    }
+}
 
 data class ViewPathPrefix(
     val prefix: String
@@ -122,6 +139,24 @@ private fun isCakeTwoController(
             !topSourceDir.children.any { it.nameWithoutExtension == "Template" }
 }
 
+/**
+ * Applies the settings-dependent part of implicit rendering that the index
+ * leaves out: the CakePHP 2 vs. 3+ spelling of the view path.
+ */
+internal class ImplicitViewPaths(
+    projectDir: VirtualFile,
+    controllerFile: VirtualFile,
+    settings: Settings
+) {
+    private val viewPathPrefix = viewPathPrefixFromSourceFile(projectDir, controllerFile)
+    private val controllerInfo = lookupControllerFileInfo(controllerFile, settings)
+
+    fun rendersImplicitly(methodName: String, filenameKey: String): Boolean {
+        val prefix = viewPathPrefix ?: return false
+        return fullImplicitViewPath(prefix, controllerInfo, methodName) == filenameKey
+    }
+}
+
 object ViewFileIndexService {
     fun canonicalizeFilenameToKey(
         templatesDirectory: TemplatesDir,
@@ -147,30 +182,42 @@ object ViewFileIndexService {
         return result
     }
 
-    // Assumes: read lock held + smart mode (indices ready)
-    fun referencingElementsInSmartReadAction(
+    /**
+     * The files and places that render [filenameKey], straight from the index.
+     *
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun referencesInSmartReadAction(
         project: Project,
         filenameKey: String
-    ): List<PsiElementAndPath> {
-        val result = mutableListOf<PsiElementAndPath>()
+    ): List<ViewFileReference> {
+        val result = mutableListOf<ViewFileReference>()
+        val settings = Settings.getInstance(project)
+        if (!settings.enabled) {
+            return result
+        }
+        val projectDir = project.guessProjectDir() ?: return result
         val fileIndex = FileBasedIndex.getInstance()
         val scope = GlobalSearchScope.projectScope(project)
-        val spm = SmartPointerManager.getInstance(project)
 
         fileIndex.processValues(VIEW_FILE_INDEX_KEY, filenameKey, null,
             { indexedFile, referenceDataList ->
                 ProgressManager.checkCanceled()
-                val psiFile = PsiManager.getInstance(project).findFile(indexedFile) ?: return@processValues true
+                val implicitViewPaths by lazy { ImplicitViewPaths(projectDir, indexedFile, settings) }
                 for (data in referenceDataList) {
-                    ProgressManager.checkCanceled()
-                    val leaf = psiFile.findElementAt(data.offset) ?: continue
-                    val element = when (data.elementType) {
-                        ElementType.METHOD_REFERENCE -> PsiTreeUtil.getParentOfType(leaf, MethodReference::class.java, false)
-                        ElementType.METHOD -> PsiTreeUtil.getParentOfType(leaf, Method::class.java, false)
-                        ElementType.FIELD_ASSIGNMENT -> PsiTreeUtil.getParentOfType(leaf, FieldReference::class.java, false)
-                        ElementType.VIEW_BUILDER -> PsiTreeUtil.getParentOfType(leaf, MethodReference::class.java, false)
-                    } ?: continue
-                    result += PsiElementAndPath(indexedFile.path, spm.createSmartPsiElementPointer(element))
+                    if (
+                        data.elementType == ElementType.METHOD &&
+                        !implicitViewPaths.rendersImplicitly(data.methodName, filenameKey)
+                    ) {
+                        continue
+                    }
+                    result += ViewFileReference(
+                        file = indexedFile,
+                        offset = data.offset,
+                        elementType = data.elementType,
+                        methodName = data.methodName,
+                        containingMethodName = data.containingMethodName
+                    )
                 }
                 true
             },
@@ -179,9 +226,30 @@ object ViewFileIndexService {
         return result
     }
 
+    /**
+     * The PSI elements that render [filenameKey], for navigation.
+     *
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun referencingElementsInSmartReadAction(
+        project: Project,
+        filenameKey: String
+    ): List<PsiElement> {
+        val references = referencesInSmartReadAction(project, filenameKey)
+        val result = ArrayList<PsiElement>(references.size)
+        for (reference in references) {
+            ProgressManager.checkCanceled()
+            val element = reference.findPsiElement(project) ?: continue
+            if (element.isValid) {
+                result += element
+            }
+        }
+        return result
+    }
+
 }
 
-private fun isTemplateDir(currentDir: VirtualFile): Boolean {
+internal fun isTemplateDir(currentDir: VirtualFile): Boolean {
     return currentDir.name == "templates" ||
             currentDir.name == "Template" ||
             currentDir.name == "View"
@@ -267,6 +335,20 @@ fun fullExplicitViewPath(
         "${viewPathPrefix.prefix}${renderPath.path}"
 }
 
+/**
+ * The implicit view paths for a controller action under both the CakePHP 2
+ * and the CakePHP 3+ naming conventions. Identical spellings are only
+ * returned once.
+ */
+fun implicitViewPathCandidates(
+    viewPathPrefix: ViewPathPrefix,
+    methodName: String
+): List<String> {
+    val underscored = "${viewPathPrefix.prefix}${methodName.camelCaseToUnderscore()}"
+    val asIs = "${viewPathPrefix.prefix}${methodName}"
+    return if (underscored == asIs) listOf(asIs) else listOf(underscored, asIs)
+}
+
 fun fullImplicitViewPath(
     viewPathPrefix: ViewPathPrefix,
     controllerInfo: ControllerInfo,
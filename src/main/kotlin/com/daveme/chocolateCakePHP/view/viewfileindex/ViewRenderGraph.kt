@@ -0,0 +1,190 @@
+package com.daveme.chocolateCakePHP.view.viewfileindex
+
+import com.daveme.chocolateCakePHP.FileStamps
+import com.daveme.chocolateCakePHP.Settings
+import com.daveme.chocolateCakePHP.cake.templatesDirectoryOfViewFile
+import com.daveme.chocolateCakePHP.isAnyControllerClass
+import com.daveme.chocolateCakePHP.view.viewvariableindex.ViewVariablesKey
+import com.daveme.chocolateCakePHP.view.viewvariableindex.controllerMethodKey
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.progress.ProgressManager
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.psi.util.CachedValue
+import com.intellij.psi.util.CachedValueProvider
+import com.intellij.psi.util.CachedValuesManager
+import com.intellij.util.indexing.FileBasedIndex
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The controller actions rendering one view, and what they were read from:
+ * the view keys followed to find them, and the files referring to those keys
+ * in the view file index.
+ *
+ * It stays current as long as none of those files change, no other file
+ * starts referring to one of the keys, and the settings are the same. So
+ * editing a controller or template outside the closure leaves it alone.
+ */
+class RenderClosure internal constructor(
+    val actions: List<ViewVariablesKey>,
+    val viewKeys: Set<String>,
+    val files: FileStamps,
+    private val settingsStamp: Long,
+    indexStamp: Long,
+) {
+    // The view file index stamp the keys were last checked against
+    @Volatile
+    private var checkedIndexStamp = indexStamp
+
+    /**
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun isUpToDate(project: Project): Boolean {
+        if (settingsStamp != Settings.getInstance(project).modificationTracker.modificationCount ||
+            !files.isUpToDate()) {
+            return false
+        }
+        val fileIndex = FileBasedIndex.getInstance()
+        val indexStamp = fileIndex.getIndexModificationStamp(VIEW_FILE_INDEX_KEY, project)
+        if (indexStamp == checkedIndexStamp) {
+            return true
+        }
+        // Some file in the index changed. It only matters if it now refers to
+        // one of the keys, as the files already referring to them are checked above.
+        val scope = GlobalSearchScope.projectScope(project)
+        for (key in viewKeys) {
+            ProgressManager.checkCanceled()
+            if (!files.files.containsAll(fileIndex.getContainingFiles(VIEW_FILE_INDEX_KEY, key, scope))) {
+                return false
+            }
+        }
+        checkedIndexStamp = indexStamp
+        return true
+    }
+}
+
+/**
+ * Which controller actions end up rendering a view or element, following
+ * `render()`, `element()`, `$this->view` and `viewBuilder()` references from
+ * the view file index transitively (an element rendered by a view rendered by
+ * an action belongs to that action too).
+ *
+ * The closure for each view key is computed on first use from index data only
+ * (see [ViewFileIndexService.referencesInSmartReadAction]), without loading PSI,
+ * and memoized until one of the files it was read from changes (see
+ * [RenderClosure.isUpToDate]). The memo is dropped when the settings change.
+ */
+@Service(Service.Level.PROJECT)
+class ViewRenderGraph(private val project: Project) {
+
+    private class Snapshot {
+        val closuresByViewKey = ConcurrentHashMap<String, RenderClosure>()
+    }
+
+    private val snapshot: CachedValue<Snapshot> =
+        CachedValuesManager.getManager(project).createCachedValue {
+            CachedValueProvider.Result.create(
+                Snapshot(),
+                Settings.getInstance(project).modificationTracker
+            )
+        }
+
+    /**
+     * The keys (see [controllerMethodKey]) of the controller actions that render
+     * [filenameKey], directly or through other views and elements.
+     *
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun controllerActionsInSmartReadAction(filenameKey: String): List<ViewVariablesKey> =
+        renderClosureInSmartReadAction(filenameKey).actions
+
+    /**
+     * The controller actions rendering [filenameKey], with the files they
+     * were found from.
+     *
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun renderClosureInSmartReadAction(filenameKey: String): RenderClosure {
+        val settings = Settings.getInstance(project)
+        val memo = snapshot.value.closuresByViewKey
+        memo[filenameKey]?.let { closure ->
+            if (closure.isUpToDate(project)) {
+                return closure
+            }
+        }
+        val closure = computeClosure(settings, filenameKey, memo)
+        memo[filenameKey] = closure
+        return closure
+    }
+
+    private fun computeClosure(
+        settings: Settings,
+        filenameKey: String,
+        memo: Map<String, RenderClosure>
+    ): RenderClosure {
+        // Read first, so changes made while walking are caught by the next check
+        val settingsStamp = settings.modificationTracker.modificationCount
+        val fileIndex = FileBasedIndex.getInstance()
+        val indexStamp = fileIndex.getIndexModificationStamp(VIEW_FILE_INDEX_KEY, project)
+        if (!settings.enabled) {
+            return RenderClosure(emptyList(), emptySet(), FileStamps(emptyList()), settingsStamp, indexStamp)
+        }
+
+        val scope = GlobalSearchScope.projectScope(project)
+        val result = LinkedHashSet<ViewVariablesKey>()
+        val viewKeys = LinkedHashSet<String>()
+        val files = LinkedHashSet<VirtualFile>()
+        val visitedKeys = hashSetOf(filenameKey)
+        val toProcess = ArrayDeque<String>()
+        toProcess.add(filenameKey)
+
+        while (toProcess.isNotEmpty()) {
+            ProgressManager.checkCanceled()
+            val key = toProcess.removeFirst()
+            // Closures already computed are complete, so no need to walk them again
+            val known = if (key == filenameKey) null else memo[key]?.takeIf { it.isUpToDate(project) }
+            if (known != null) {
+                result.addAll(known.actions)
+                viewKeys.addAll(known.viewKeys)
+                files.addAll(known.files.files)
+                continue
+            }
+            viewKeys.add(key)
+            files.addAll(fileIndex.getContainingFiles(VIEW_FILE_INDEX_KEY, key, scope))
+            processReferences(settings, key,
+                onAction = { result.add(it) },
+                onView = { referencingKey ->
+                    if (visitedKeys.add(referencingKey)) {
+                        toProcess.add(referencingKey)
+                    }
+                }
+            )
+        }
+        return RenderClosure(result.toList(), viewKeys, FileStamps(files), settingsStamp, indexStamp)
+    }
+
+    private fun processReferences(
+        settings: Settings,
+        filenameKey: String,
+        onAction: (ViewVariablesKey) -> Unit,
+        onView: (String) -> Unit
+    ) {
+        var previousFile: VirtualFile? = null
+        for (reference in ViewFileIndexService.referencesInSmartReadAction(project, filenameKey)) {
+            ProgressManager.checkCanceled()
+            if (reference.nameWithoutExtension.isAnyControllerClass()) {
+                val controllerPath = reference.controllerPath ?: continue
+                val methodName = reference.containingMethodName ?: continue
+                onAction(controllerMethodKey(controllerPath, methodName))
+            } else if (reference.file != previousFile) {
+                // A view or element renders the key once however many times it refers to it
+                previousFile = reference.file
+                val templatesDir = templatesDirectoryOfViewFile(project, settings, reference.file)
+                    ?: continue
+                onView(ViewFileIndexService.canonicalizeFilenameToKey(templatesDir, settings, reference.path))
+            }
+        }
+    }
+
+}
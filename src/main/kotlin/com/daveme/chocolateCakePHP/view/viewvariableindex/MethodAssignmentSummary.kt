@@ -0,0 +1,92 @@
+package com.daveme.chocolateCakePHP.view.viewvariableindex
+
+import com.daveme.chocolateCakePHP.PRIMITIVE_TYPES
+import com.intellij.psi.PsiFile
+import com.intellij.psi.util.CachedValueProvider
+import com.intellij.psi.util.CachedValuesManager
+import com.intellij.psi.util.PsiTreeUtil
+import com.jetbrains.php.lang.psi.elements.AssignmentExpression
+import com.jetbrains.php.lang.psi.elements.Method
+import com.jetbrains.php.lang.psi.elements.Variable
+import com.jetbrains.php.lang.psi.resolve.types.PhpType
+
+/**
+ * The local variable assignments and parameter types of one controller method.
+ *
+ * Built with a single walk of the method and cached on it, so resolving every
+ * `$this->set()` entry of an action doesn't rescan the method for each one.
+ */
+class MethodAssignmentSummary private constructor(method: Method) {
+
+    // Assignments to each local variable, ordered by start offset
+    private val assignmentsByName: Map<String, List<AssignmentExpression>>
+
+    val parameterTypes: Map<String, PhpType>
+
+    init {
+        val byName = HashMap<String, MutableList<AssignmentExpression>>()
+        for (assignment in PsiTreeUtil.findChildrenOfType(method, AssignmentExpression::class.java)) {
+            val variable = assignment.variable as? Variable ?: continue
+            val name = variable.name ?: continue
+            byName.getOrPut(name) { mutableListOf() }.add(assignment)
+        }
+        byName.values.forEach { assignments -> assignments.sortBy { it.textRange.startOffset } }
+        assignmentsByName = byName
+
+        val parameters = LinkedHashMap<String, PhpType>()
+        for (parameter in method.parameters) {
+            parameters.putIfAbsent(parameter.name, withoutNamespacedPrimitives(parameter.type))
+        }
+        parameterTypes = parameters
+    }
+
+    /**
+     * The last assignment to [variableName] that starts before [offset].
+     */
+    fun lastAssignmentBefore(variableName: String, offset: Int): AssignmentExpression? {
+        val assignments = assignmentsByName[variableName] ?: return null
+        var low = 0
+        var high = assignments.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (assignments[mid].textRange.startOffset < offset) {
+                low = mid + 1
+            } else {
+                high = mid
+            }
+        }
+        return if (low == 0) null else assignments[low - 1]
+    }
+
+    companion object {
+
+        fun of(method: Method): MethodAssignmentSummary =
+            CachedValuesManager.getCachedValue(method) {
+                CachedValueProvider.Result.create(MethodAssignmentSummary(method), method)
+            }
+
+        /**
+         * The summary of the method containing [offset] in [file], if any.
+         */
+        fun at(file: PsiFile, offset: Int): MethodAssignmentSummary? {
+            val element = file.findElementAt(offset) ?: return null
+            val method = PsiTreeUtil.getParentOfType(element, Method::class.java) ?: return null
+            return of(method)
+        }
+
+        // The PHP plugin sometimes reports primitive parameter types with a
+        // namespace prefix, like `\App\Controller\int`.
+        private fun withoutNamespacedPrimitives(type: PhpType): PhpType {
+            val result = PhpType()
+            type.types.forEach { typeString ->
+                val lastSegment = typeString.substringAfterLast('\\')
+                if (lastSegment.lowercase() in PRIMITIVE_TYPES && typeString.contains('\\')) {
+                    result.add(lastSegment)
+                } else {
+                    result.add(typeString)
+                }
+            }
+            return result
+        }
+    }
+}
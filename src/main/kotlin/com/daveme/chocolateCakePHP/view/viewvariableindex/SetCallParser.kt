@@ -0,0 +1,531 @@
+package com.daveme.chocolateCakePHP.view.viewvariableindex
+
+import com.daveme.chocolateCakePHP.*
+import com.intellij.lang.ASTNode
+import com.intellij.psi.TokenType
+import com.jetbrains.php.lang.lexer.PhpTokenTypes
+
+// Simplified data structure for AST-level parsing - only syntax facts
+data class SetCallInfo(
+    val variableName: String,
+    val varKind: VarKind,
+    val offset: Int,
+    val varHandle: VarHandle,
+    val typeHint: String = ViewVariableTypeHints.NONE
+)
+
+/**
+ * Extracts the view variables set by a `$this->set(...)` method reference,
+ * from the AST only.
+ *
+ * Indirect calls like `$this->set($vars)` are resolved with the value last
+ * assigned to the local variable earlier in the same method, which the caller
+ * tracks in a [MethodScope] with [recordLocalAssignment] as it walks the method
+ * in document order. The same scope gives the [ViewVariableTypeHints] of the values.
+ */
+object SetCallParser {
+
+    // Parse a method reference node to extract set call information
+    // This implements case 1: $this->set('name', $value) and case 2: $this->set(['name' => $value])
+    // Returns a list because case 2 can have multiple variables
+    fun parseSetCalls(
+        node: ASTNode,
+        scope: MethodScope = MethodScope.NONE
+    ): List<SetCallInfo> {
+        var receiverName: String? = null
+        var methodName: String? = null
+        var firstParamNode: ASTNode? = null
+        var hasSecondParam = false
+        
+        var child = node.firstChildNode
+        while (child != null) {
+            when {
+                child.isVariable() -> {
+                    receiverName = child.text.removePrefix("$")
+                }
+                child.elementType == PhpTokenTypes.IDENTIFIER -> {
+                    methodName = child.text
+                }
+                child.isParameterList() -> {
+                    val paramNodes = extractParameterNodes(child)
+                    if (paramNodes.size == 2) {
+                        firstParamNode = paramNodes[0]
+                        hasSecondParam = true
+                    } else if (paramNodes.size == 1) {
+                        firstParamNode = paramNodes[0]
+                        hasSecondParam = false
+                    }
+                }
+            }
+            child = child.treeNext
+        }
+        
+        if (receiverName == "this" && 
+            methodName?.equals("set", ignoreCase = true) == true && 
+            firstParamNode != null) {
+            
+            // Case 1: $this->set('name', $value)
+            if (hasSecondParam) {
+                val firstParamValue = extractStringLiteral(firstParamNode)
+                if (firstParamValue != null) {
+                    // Find parameter list to get the second parameter (the variable name)
+                    var paramList: ASTNode? = null
+                    var paramChild = node.firstChildNode
+                    while (paramChild != null) {
+                        if (paramChild.isParameterList()) {
+                            paramList = paramChild
+                            break
+                        }
+                        paramChild = paramChild.treeNext
+                    }
+
+                    val paramNodes = paramList?.let { extractParameterNodes(it) } ?: emptyList()
+                    val secondParamText = if (paramNodes.size >= 2) paramNodes[1].text else "unknownVar"
+
+                    // Analyze the second parameter to determine SourceKind
+                    val sourceKind = analyzeValueSource(paramNodes[1])
+                    val symbolName = secondParamText.removePrefix("$")
+
+                    return listOf(SetCallInfo(
+                        variableName = firstParamValue,
+                        varKind = VarKind.PAIR,
+                        offset = node.startOffset,
+                        varHandle = VarHandle(sourceKind, symbolName, paramNodes[1].startOffset),
+                        typeHint = ViewVariableTypeHints.of(paramNodes[1], scope)
+                    ))
+                }
+            }
+            // Case 2: $this->set(['name' => $value])
+            else if (firstParamNode.isArrayCreationExpression()) {
+                return extractVariablesFromArrayCreation(firstParamNode, VarKind.ARRAY, scope)
+            }
+            // Case 3: $this->set(compact('value'))
+            else if (isCompactFunctionCall(firstParamNode)) {
+                return extractVariablesFromCompactCall(firstParamNode, VarKind.COMPACT, scope)
+            }
+            // Case 5: $this->set($var) where $var = compact('name')
+            // Case 6: $this->set($var) where $var = ['key' => 'val']
+            else if (firstParamNode.isVariable()) {
+                return extractVariablesFromVariableIndirection(firstParamNode, scope)
+            }
+        }
+        
+        // Case 4: $this->set(['name1', 'name2'], [$val1, $val2]) - tuple assignment
+        if (receiverName == "this" &&
+            methodName?.equals("set", ignoreCase = true) == true &&
+            hasSecondParam &&
+            firstParamNode?.isArrayCreationExpression() == true) {
+
+            val paramList = node.firstChildNode?.let { child ->
+                var current = child
+                while (current != null) {
+                    if (current.isParameterList()) return@let current
+                    current = current.treeNext
+                }
+                null
+            } ?: return emptyList()
+
+            val paramNodes = extractParameterNodes(paramList)
+            if (paramNodes.size == 2 && paramNodes[1].isArrayCreationExpression()) {
+                return extractVariablesFromTupleAssignment(paramNodes[0], paramNodes[1], VarKind.TUPLE, scope)
+            }
+        }
+        
+        // Case 7: $this->set($caseSevenKeys, $caseSevenVals) where either keys or vals is a variable
+        if (receiverName == "this" &&
+            methodName?.equals("set", ignoreCase = true) == true &&
+            hasSecondParam) {
+
+            val paramList = node.firstChildNode?.let { child ->
+                var current = child
+                while (current != null) {
+                    if (current.isParameterList()) return@let current
+                    current = current.treeNext
+                }
+                null
+            } ?: return emptyList()
+
+            val paramNodes = extractParameterNodes(paramList)
+            if (paramNodes.size == 2) {
+                val keysParam = paramNodes[0]
+                val valsParam = paramNodes[1]
+
+                // Handle mixed cases where the keys or the values come from a local variable
+                if ((keysParam.isArrayCreationExpression() && valsParam.isVariable()) || keysParam.isVariable()) {
+                    return extractVariablesFromMixedTupleAssignment(node, keysParam, valsParam, scope)
+                }
+            }
+        }
+        
+        return emptyList()
+    }
+
+    /**
+     * If [node] is a plain assignment to a local variable, like `$vars = [...]`,
+     * records the assigned value as the latest one for that variable.
+     */
+    fun recordLocalAssignment(node: ASTNode, scope: MethodScope) {
+        var variableNode: ASTNode? = null
+        var seenAssign = false
+        var child = node.firstChildNode
+        while (child != null) {
+            when {
+                child.elementType == TokenType.WHITE_SPACE -> {}
+                variableNode == null -> {
+                    if (!child.isVariable()) return
+                    variableNode = child
+                }
+                !seenAssign -> {
+                    // Compound assignments like `.=` don't give a value we can use
+                    if (child.elementType != PhpTokenTypes.opASGN) return
+                    seenAssign = true
+                }
+                else -> {
+                    scope.localAssignments[variableNode.text.removePrefix("$")] = child
+                    return
+                }
+            }
+            child = child.treeNext
+        }
+    }
+
+    // Extract parameter nodes from a parameter list (returns actual AST nodes, not just strings)
+    private fun extractParameterNodes(paramListNode: ASTNode): List<ASTNode> {
+        val paramNodes = mutableListOf<ASTNode>()
+        
+        var child = paramListNode.firstChildNode
+        while (child != null) {
+            if (child.elementType != TokenType.WHITE_SPACE && 
+                child.elementType != PhpTokenTypes.opCOMMA) {
+                paramNodes.add(child)
+            }
+            child = child.treeNext
+        }
+        
+        return paramNodes
+    }
+    
+    // Extract variables from array creation expression: ['name' => $value, 'title' => $pageTitle]
+    // Parses hash array elements to extract key-value pairs
+    private fun extractVariablesFromArrayCreation(
+        arrayNode: ASTNode,
+        varKind: VarKind,
+        scope: MethodScope
+    ): List<SetCallInfo> {
+        val variables = mutableListOf<SetCallInfo>()
+        
+        // Find all hash array elements within the array creation expression
+        var child = arrayNode.firstChildNode
+        while (child != null) {
+            if (child.isHashArrayElement()) {
+                val keyValuePair = parseHashArrayElement(child)
+                if (keyValuePair != null) {
+                    // For array case, we need to find the value part of the hash element
+                    val valueNode = arrayValueNode(child)
+                    variables.add(SetCallInfo(
+                        variableName = keyValuePair,
+                        varKind = varKind,
+                        offset = child.startOffset,
+                        varHandle = extractArrayValueHandle(child, valueNode),
+                        typeHint = valueNode?.let { ViewVariableTypeHints.of(it, scope) } ?: ViewVariableTypeHints.NONE
+                    ))
+                }
+            }
+            child = child.treeNext
+        }
+        
+        return variables
+    }
+    
+    // Parse a single hash array element: 'key' => $value
+    // Returns the key string if it's a string literal, null otherwise
+    private fun parseHashArrayElement(hashElement: ASTNode): String? {
+        var keyNode: ASTNode? = null
+        
+        // Find the Array key child node
+        var child = hashElement.firstChildNode
+        while (child != null) {
+            if (child.isArrayKey()) {
+                keyNode = child
+                break
+            }
+            child = child.treeNext
+        }
+        
+        // Extract string literal from the key node
+        return keyNode?.let { extractStringLiteral(it) }
+    }
+    
+    // Find the value part of a hash array element
+    private fun arrayValueNode(hashElement: ASTNode): ASTNode? {
+        // Find the Array value child node
+        var child = hashElement.firstChildNode
+        while (child != null) {
+            if (child.isArrayValue()) {
+                // Get the actual value node (first child of Array value)
+                return child.firstChildNode
+            }
+            child = child.treeNext
+        }
+        return null
+    }
+
+    // Extract VarHandle from the value part of a hash array element
+    private fun extractArrayValueHandle(hashElement: ASTNode, valueNode: ASTNode?): VarHandle {
+        return if (valueNode != null) {
+            valueHandle(valueNode)
+        } else {
+            // Fallback for unknown array values
+            VarHandle(SourceKind.UNKNOWN, "unknown_array_value", hashElement.startOffset)
+        }
+    }
+    
+    // Describe where the value of a variable comes from, for resolving its type later
+    private fun valueHandle(valueNode: ASTNode): VarHandle {
+        val sourceKind = analyzeValueSource(valueNode)
+        val symbolName = when (sourceKind) {
+            SourceKind.LOCAL -> valueNode.text.removePrefix("$")
+            SourceKind.LITERAL -> valueNode.text.removeSurrounding("'").removeSurrounding("\"")
+            else -> valueNode.text
+        }
+        return VarHandle(sourceKind, symbolName, valueNode.startOffset)
+    }
+
+    // Analyze an AST node to determine what kind of value source it represents
+    private fun analyzeValueSource(valueNode: ASTNode): SourceKind {
+        return when {
+            valueNode.isVariable() -> {
+                // $foo - could be PARAM, LOCAL, or UNKNOWN
+                // For now, we'll mark as LOCAL and let resolveByHandle figure it out
+                SourceKind.LOCAL
+            }
+            valueNode.isString() -> SourceKind.LITERAL
+            valueNode.isMethodReference() -> SourceKind.EXPRESSION
+            valueNode.isFunctionCall() -> SourceKind.EXPRESSION
+            valueNode.isFieldReference() -> {
+                // $this->foo - property access is now handled by EXPRESSION
+                SourceKind.EXPRESSION
+            }
+            valueNode.isArrayAccessExpression() -> SourceKind.EXPRESSION
+            else -> {
+                // Check for numeric literals
+                if (valueNode.text.matches(Regex("\\d+"))) {
+                    SourceKind.LITERAL
+                } else {
+                    SourceKind.UNKNOWN
+                }
+            }
+        }
+    }
+    
+    // Check if a node is a compact() function call
+    // For now, we'll do a simple text-based check and improve later
+    private fun isCompactFunctionCall(node: ASTNode): Boolean {
+        val nodeText = node.text.trim()
+        return nodeText.startsWith("compact(", ignoreCase = true) || 
+               nodeText.contains("compact(", ignoreCase = true)
+    }
+    
+    // Extract variables from compact() function call: compact('foo', 'bar') -> [foo, bar]
+    private fun extractVariablesFromCompactCall(
+        compactNode: ASTNode,
+        varKind: VarKind,
+        scope: MethodScope
+    ): List<SetCallInfo> {
+        val variables = mutableListOf<SetCallInfo>()
+        
+        // Find parameter list in compact() call
+        var paramList: ASTNode? = null
+        var child = compactNode.firstChildNode
+        while (child != null) {
+            if (child.isParameterList()) {
+                paramList = child
+                break
+            }
+            child = child.treeNext
+        }
+        
+        paramList?.let { paramListNode ->
+            val paramNodes = extractParameterNodes(paramListNode)
+            paramNodes.forEach { paramNode ->
+                val variableName = extractStringLiteral(paramNode)
+                if (variableName != null) {
+                    // For compact, the variable name in the string becomes both the key and the symbol to resolve
+                    val varHandle = VarHandle(
+                        sourceKind = SourceKind.LOCAL, // compact() references local variables
+                        symbolName = variableName,
+                        offset = paramNode.startOffset
+                    )
+                    variables.add(SetCallInfo(
+                        variableName = variableName,
+                        varKind = varKind,
+                        offset = paramNode.startOffset,
+                        varHandle = varHandle,
+                        typeHint = ViewVariableTypeHints.ofLocal(variableName, scope)
+                    ))
+                }
+            }
+        }
+        
+        return variables
+    }
+    
+    // Extract variables from tuple assignment: $this->set(['n1', 'n2'], [$v1, $v2])
+    // When the values array is unknown, the names are still extracted
+    private fun extractVariablesFromTupleAssignment(
+        keysArray: ASTNode,
+        valuesArray: ASTNode?,
+        varKind: VarKind,
+        scope: MethodScope
+    ): List<SetCallInfo> {
+        val variables = mutableListOf<SetCallInfo>()
+        
+        // Extract string literals from keys array
+        val keyNames = mutableListOf<String>()
+        var keyChild = keysArray.firstChildNode
+        while (keyChild != null) {
+            if (keyChild.isArrayValue()) {
+                val valueChild = keyChild.firstChildNode
+                if (valueChild != null) {
+                    val keyName = extractStringLiteral(valueChild)
+                    if (keyName != null) {
+                        keyNames.add(keyName)
+                    }
+                }
+            }
+            keyChild = keyChild.treeNext
+        }
+        
+        if (valuesArray == null) {
+            return keyNames.map { keyName ->
+                SetCallInfo(
+                    variableName = keyName,
+                    varKind = varKind,
+                    offset = keysArray.startOffset,
+                    varHandle = VarHandle(SourceKind.UNKNOWN, "", keysArray.startOffset)
+                )
+            }
+        }
+
+        // Extract value nodes from values array
+        val valueNodes = mutableListOf<ASTNode>()
+        var valueChild = valuesArray.firstChildNode
+        while (valueChild != null) {
+            if (valueChild.isArrayValue()) {
+                val actualValue = valueChild.firstChildNode
+                if (actualValue != null) {
+                    valueNodes.add(actualValue)
+                }
+            }
+            valueChild = valueChild.treeNext
+        }
+        
+        // Pair up keys and values
+        for (i in keyNames.indices) {
+            if (i < valueNodes.size) {
+                variables.add(SetCallInfo(
+                    variableName = keyNames[i],
+                    varKind = varKind,
+                    offset = keysArray.startOffset,
+                    varHandle = valueHandle(valueNodes[i]),
+                    typeHint = ViewVariableTypeHints.of(valueNodes[i], scope)
+                ))
+            }
+        }
+        
+        return variables
+    }
+    
+    // Extract variables from variable indirection cases like:
+    // Case 5: $this->set($var) where $var = compact('name')
+    // Case 6: $this->set($var) where $var = ['key' => 'val']
+    private fun extractVariablesFromVariableIndirection(
+        variableNode: ASTNode,
+        scope: MethodScope
+    ): List<SetCallInfo> {
+        // Parameters and values we can't see syntactically give no variables
+        val assignedValue = scope.localAssignments[variableNode.text.removePrefix("$")]
+            ?: return emptyList()
+        return when {
+            assignedValue.isArrayCreationExpression() ->
+                extractVariablesFromArrayCreation(assignedValue, VarKind.VARIABLE_ARRAY, scope)
+            isCompactFunctionCall(assignedValue) ->
+                extractVariablesFromCompactCall(assignedValue, VarKind.VARIABLE_COMPACT, scope)
+            else -> emptyList()
+        }
+    }
+    
+    // Extract variables from mixed tuple assignment cases like:
+    // Case 7: $this->set($key, $val) where $key = 'name'
+    // Case 8: $this->set($keys, $vals) where either keys or vals is a variable assigned an array
+    private fun extractVariablesFromMixedTupleAssignment(
+        setCallNode: ASTNode,
+        keysParam: ASTNode,
+        valsParam: ASTNode,
+        scope: MethodScope
+    ): List<SetCallInfo> {
+        val keysNode = if (keysParam.isVariable()) {
+            scope.localAssignments[keysParam.text.removePrefix("$")] ?: return emptyList()
+        } else {
+            keysParam
+        }
+
+        if (keysNode.isString()) {
+            val variableName = extractStringLiteral(keysNode) ?: return emptyList()
+            return listOf(SetCallInfo(
+                variableName = variableName,
+                varKind = VarKind.VARIABLE_PAIR,
+                offset = setCallNode.startOffset,
+                varHandle = valueHandle(valsParam),
+                typeHint = ViewVariableTypeHints.of(valsParam, scope)
+            ))
+        }
+        if (!keysNode.isArrayCreationExpression()) {
+            return emptyList()
+        }
+
+        val valsNode = if (valsParam.isVariable()) {
+            scope.localAssignments[valsParam.text.removePrefix("$")]
+        } else {
+            valsParam
+        }
+        return extractVariablesFromTupleAssignment(
+            keysNode,
+            valsNode?.takeIf { it.isArrayCreationExpression() },
+            VarKind.MIXED_TUPLE,
+            scope
+        )
+    }
+    
+    // Extract string literal from AST node (borrowed from ViewFileDataIndexer)
+    private fun extractStringLiteral(node: ASTNode): String? {
+        // First check if this node itself is a STRING
+        if (node.isString()) {
+            val lit = node.findChildByType(PhpTokenTypes.STRING_LITERAL)
+            val text = (lit ?: node).text
+            return text.removeSurrounding("'").removeSurrounding("\"")
+        }
+
+        // If not, try to find a STRING child (e.g., for "Array key" nodes that contain STRING)
+        var stringChild: ASTNode? = null
+        var child = node.firstChildNode
+        while (child != null) {
+            if (child.isString()) {
+                stringChild = child
+                break
+            }
+            child = child.treeNext
+        }
+
+        if (stringChild != null) {
+            val lit = stringChild.findChildByType(PhpTokenTypes.STRING_LITERAL)
+            val text = (lit ?: stringChild).text
+            return text.removeSurrounding("'").removeSurrounding("\"")
+        }
+
+        // If it's a VARIABLE or other non-string type, return null
+        // This prevents variables like $key from being treated as string literals
+        return null
+    }
+
+}
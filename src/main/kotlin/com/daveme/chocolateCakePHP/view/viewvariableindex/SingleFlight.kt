@@ -0,0 +1,84 @@
+package com.daveme.chocolateCakePHP.view.viewvariableindex
+
+import com.intellij.openapi.progress.ProcessCanceledException
+import com.intellij.openapi.progress.ProgressManager
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+/**
+ * Table of in-flight computations, so concurrent callers asking for the same
+ * key share one result instead of each computing it.
+ *
+ * The first caller for a key computes the value, and the others wait for it,
+ * checking for their own cancellation while they wait. If the computing
+ * caller is cancelled, its cancellation isn't handed to the waiting callers:
+ * one of them takes over the computation instead.
+ */
+class SingleFlight<K : Any, V> {
+
+    private class Call<V>(val owner: Thread) {
+        val result = CompletableFuture<V>()
+    }
+
+    private val inFlight = ConcurrentHashMap<K, Call<V>>()
+
+    fun run(key: K, compute: () -> V): V {
+        while (true) {
+            ProgressManager.checkCanceled()
+            val call = Call<V>(Thread.currentThread())
+            val existing = inFlight.putIfAbsent(key, call)
+                ?: return computeAndPublish(key, call, compute)
+            if (existing.owner === Thread.currentThread()) {
+                // Asked again while computing it, so waiting would never finish
+                return compute()
+            }
+            val result = awaitResult(existing)
+            if (result !== CANCELLED) {
+                @Suppress("UNCHECKED_CAST")
+                return result as V
+            }
+            // The computing caller was cancelled, so try again
+        }
+    }
+
+    private fun computeAndPublish(key: K, call: Call<V>, compute: () -> V): V {
+        try {
+            val value = compute()
+            call.result.complete(value)
+            return value
+        } catch (e: Throwable) {
+            call.result.completeExceptionally(e)
+            throw e
+        } finally {
+            inFlight.remove(key, call)
+        }
+    }
+
+    /**
+     * Wait for [call] to finish, returning [CANCELLED] if it was cancelled.
+     */
+    private fun awaitResult(call: Call<V>): Any? {
+        while (true) {
+            ProgressManager.checkCanceled()
+            try {
+                return call.result.get(WAIT_MILLIS, TimeUnit.MILLISECONDS)
+            } catch (e: TimeoutException) {
+                continue
+            } catch (e: ExecutionException) {
+                val cause = e.cause ?: throw e
+                if (cause is ProcessCanceledException) {
+                    return CANCELLED
+                }
+                throw cause
+            }
+        }
+    }
+
+    companion object {
+        private const val WAIT_MILLIS = 10L
+        private val CANCELLED = Any()
+    }
+}
@@ -3,20 +3,30 @@ package com.daveme.chocolateCakePHP.view.viewvariableindex
 import com.daveme.chocolateCakePHP.PhpFilesModificationTracker
 import com.intellij.openapi.components.Service
 import com.intellij.openapi.project.Project
-import com.intellij.openapi.util.Key
 import com.intellij.openapi.util.ModificationTracker
-import com.intellij.psi.PsiFile
-import com.intellij.psi.util.CachedValue
-import com.intellij.psi.util.CachedValueProvider
-import com.intellij.psi.util.CachedValuesManager
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
 
 /**
  * Cache for view variable existence checks.
  *
- * This cache stores boolean results indicating whether a variable is defined
- * for a given view file. The cache is automatically invalidated when:
- * - The view file itself changes
- * - Any PHP file in the project changes (via PhpFilesModificationTracker)
+ * This cache stores the set of variables defined for each view file, computed
+ * once for all the checks in the view. Each view's set depends only on:
+ * - The controller files whose actions render it, directly or through other
+ *   views and elements
+ * - The views and elements on the way from those actions to the view, and
+ *   the files referring to them
+ * - The settings, which decide how those references map to views
+ *
+ * Those are the files its [ViewVariableTable] was built from, so the results
+ * are kept as long as the table is (see [ViewVariableTable.isUpToDate]).
+ * Editing any other file, like a model, another controller or template, or
+ * something under `vendor`, leaves the results alone.
+ *
+ * The cache is shared by the highlighting threads and holds at most
+ * [maxEntries] results, which can be set with the
+ * `chocolatecakephp.viewVariableCacheSize` system property. The dependencies
+ * of a view are dropped along with its results.
  *
  * If the PhpFilesModificationTracker is not armed (project is not a CakePHP project),
  * the cache bypasses itself and performs direct lookups to avoid stale data.
@@ -25,63 +35,83 @@ import com.intellij.psi.util.CachedValuesManager
 class ViewVariableCache(private val project: Project) {
 
     companion object {
-        private val VARIABLE_CACHE_KEY = Key.create<CachedValue<MutableMap<String, Boolean>>>("CHOCOLATE_CAKEPHP_VIEW_VARIABLE_CACHE")
+        private const val DEFAULT_MAX_ENTRIES = 10_000
+
+        val maxEntries: Int =
+            Integer.getInteger("chocolatecakephp.viewVariableCacheSize", DEFAULT_MAX_ENTRIES)
+                .coerceAtLeast(1)
     }
 
+    /**
+     * The table a view's results were computed from. [version] is new each
+     * time the table of the view is rebuilt.
+     */
+    private class ViewDependencies(
+        val version: Long,
+        val table: ViewVariableTable,
+    )
+
+    private val dependenciesByView = ConcurrentHashMap<String, ViewDependencies>()
+
+    private val cache = ViewVariableExistenceCache(maxEntries) { filenameKey ->
+        dependenciesByView.remove(filenameKey)
+    }
+
+    // Versions are never reused, so results cached for dependencies that were
+    // evicted can't match the ones that replace them
+    private val versions = AtomicLong()
+
     /**
      * Checks if a variable is defined for the given view file.
      *
      * If the phpTracker is not armed (not a CakePHP project), bypasses caching
      * and performs a direct lookup to avoid returning stale data.
      *
-     * @param psiFile The view file to check
+     * Assumes: read lock held + smart mode (indices ready)
+     *
      * @param filenameKey The canonical filename key for the view
      * @param variableName The name of the variable to check
      * @param phpTracker Modification tracker for PHP files
-     * @param lookupFn Function to perform the actual lookup if not cached
+     * @param lookupFn Function returning all the variables defined for the view, if not cached
      * @return true if the variable is defined, false otherwise
      */
     fun isVariableDefined(
-        psiFile: PsiFile,
         filenameKey: String,
         variableName: String,
         phpTracker: ModificationTracker,
-        lookupFn: (String, String) -> Boolean
+        lookupFn: (String) -> Set<String>
     ): Boolean {
         // Check if the tracker is actually armed
         // If tracker is null or not armed, bypass caching and do direct lookup
         val tracker = phpTracker as? PhpFilesModificationTracker
         if (tracker == null || !tracker.isArmed) {
             // Not a CakePHP project or invalid tracker - don't use cache, just do direct lookup
-            return lookupFn(filenameKey, variableName)
+            return lookupFn(filenameKey).contains(variableName)
         }
 
-        val cachedValuesManager = CachedValuesManager.getManager(project)
-
-        // Get or create the cache for this file
-        val variableCache = cachedValuesManager.getCachedValue(
-            psiFile,
-            VARIABLE_CACHE_KEY,
-            {
-                CachedValueProvider.Result.create(
-                    mutableMapOf<String, Boolean>(),
-                    psiFile,  // Invalidate when the view file changes
-                    phpTracker  // Invalidate when any PHP file changes
-                )
-            },
-            false
-        )
-
-        // Create a cache key for this specific variable lookup
-        val cacheKey = "$filenameKey::$variableName"
-
-        // Return cached value if present, otherwise compute and cache
-        if (variableCache.containsKey(cacheKey)) {
-            return variableCache[cacheKey]!!
+        val dependencies = currentDependencies(filenameKey)
+        return cache.getOrCompute(filenameKey, dependencies.version, variableName) {
+            lookupFn(filenameKey)
         }
+    }
 
-        val result = lookupFn(filenameKey, variableName)
-        variableCache[cacheKey] = result
-        return result
+    private fun currentDependencies(filenameKey: String): ViewDependencies {
+        val table = project.getService(ViewVariableTableService::class.java)
+            .tableInSmartReadAction(filenameKey)
+        val previous = dependenciesByView[filenameKey]
+        if (previous != null && previous.table === table) {
+            return previous
+        }
+        val dependencies = ViewDependencies(
+            version = versions.incrementAndGet(),
+            table = table,
+        )
+        dependenciesByView[filenameKey] = dependencies
+        return dependencies
     }
+
+    /**
+     * Hit, miss and eviction counts since the project was opened.
+     */
+    fun stats(): ViewVariableExistenceCache.Stats = cache.stats()
 }
@@ -0,0 +1,141 @@
+package com.daveme.chocolateCakePHP.view.viewvariableindex
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A bounded, thread-safe cache of whether a variable is defined for a view.
+ *
+ * Each filename key maps to one entry holding the complete set of variables
+ * defined for the view and the stamp it was computed at. The first check for
+ * a view computes the whole set, and every later check is a map lookup and a
+ * set lookup, allocating nothing. A stamp change drops the set the next time
+ * the view is looked up.
+ *
+ * When the total number of cached variables goes over [maxEntries], whole
+ * views are evicted, least recently used first, and [onEvict] is called
+ * with their filename keys.
+ */
+class ViewVariableExistenceCache(
+    val maxEntries: Int,
+    private val onEvict: (String) -> Unit = {},
+) {
+
+    data class Stats(
+        val hits: Long,
+        val misses: Long,
+        val evictions: Long,
+        val size: Int,
+    )
+
+    private class FileEntry(val stamp: Long, val definedVariables: Set<String>) {
+        // Empty sets still take a slot, so views without variables are bounded too
+        val weight = maxOf(1, definedVariables.size)
+        @Volatile
+        var lastUsed = 0L
+    }
+
+    private val files = ConcurrentHashMap<String, FileEntry>()
+
+    // Guarded by [files]: only changed while holding its monitor
+    private var size = 0
+
+    private val clock = AtomicLong()
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+    private val evictions = AtomicLong()
+
+    init {
+        require(maxEntries > 0) { "maxEntries must be positive: $maxEntries" }
+    }
+
+    /**
+     * Whether [variableName] is defined for the view [filenameKey], from the
+     * cached set of its variables or the set returned by [lookupFn], which is
+     * then cached.
+     *
+     * [stamp] must increase whenever the view's variables may have changed.
+     * [lookupFn] is called without any lock held, so it may run more than once
+     * for the same view when threads race.
+     */
+    fun getOrCompute(
+        filenameKey: String,
+        stamp: Long,
+        variableName: String,
+        lookupFn: () -> Set<String>
+    ): Boolean {
+        val fileEntry = files[filenameKey]
+        if (fileEntry != null && fileEntry.stamp == stamp) {
+            fileEntry.lastUsed = clock.incrementAndGet()
+            hits.incrementAndGet()
+            return fileEntry.definedVariables.contains(variableName)
+        }
+        misses.incrementAndGet()
+        val definedVariables = lookupFn()
+        store(filenameKey, stamp, definedVariables)
+        return definedVariables.contains(variableName)
+    }
+
+    private fun store(filenameKey: String, stamp: Long, definedVariables: Set<String>) {
+        synchronized(files) {
+            val previous = files[filenameKey]
+            if (previous != null) {
+                // Sets computed at an older stamp, or again at the same one, aren't needed
+                if (previous.stamp >= stamp) {
+                    return
+                }
+                size -= previous.weight
+            }
+            val fileEntry = FileEntry(stamp, definedVariables)
+            fileEntry.lastUsed = clock.incrementAndGet()
+            files[filenameKey] = fileEntry
+            size += fileEntry.weight
+            if (size > maxEntries) {
+                evictLeastRecentlyUsed(filenameKey, fileEntry)
+            }
+        }
+    }
+
+    // Assumes: lock on [files] held
+    private fun evictLeastRecentlyUsed(currentKey: String, current: FileEntry) {
+        while (size > maxEntries) {
+            var oldestKey: String? = null
+            var oldest: FileEntry? = null
+            for ((key, fileEntry) in files) {
+                if (fileEntry !== current && (oldest == null || fileEntry.lastUsed < oldest.lastUsed)) {
+                    oldestKey = key
+                    oldest = fileEntry
+                }
+            }
+            if (oldestKey == null || oldest == null) {
+                // Only the current view is left, and it's over the bound by itself
+                files.values.remove(current)
+                size -= current.weight
+                evictions.incrementAndGet()
+                onEvict(currentKey)
+                return
+            }
+            files.remove(oldestKey)
+            size -= oldest.weight
+            evictions.incrementAndGet()
+            onEvict(oldestKey)
+        }
+    }
+
+    fun clear() {
+        synchronized(files) {
+            files.clear()
+            size = 0
+        }
+    }
+
+    fun stats(): Stats {
+        val currentSize = synchronized(files) { size }
+        return Stats(
+            hits = hits.get(),
+            misses = misses.get(),
+            evictions = evictions.get(),
+            size = currentSize,
+        )
+    }
+}
@@ -1,5 +1,6 @@
 package com.daveme.chocolateCakePHP.view.viewvariableindex
 
+import com.daveme.chocolateCakePHP.cake.CakeIndexInputFilter
 import com.intellij.util.indexing.*
 import com.intellij.util.io.DataExternalizer
 import com.intellij.util.io.EnumeratorStringDescriptor
@@ -19,14 +20,11 @@ class ViewVariableIndex : FileBasedIndexExtension<ViewVariablesKey, ViewVariable
         ViewVariableRawVarsExternalizer
 
     override fun getVersion(): Int {
-        return 17
+        return 24
     }
 
     override fun getInputFilter(): FileBasedIndex.InputFilter {
-        return FileBasedIndex.InputFilter { file ->
-            val isEqual = file.fileType.name == "PHP"
-            isEqual
-        }
+        return CakeIndexInputFilter(acceptTemplates = false)
     }
 
     override fun dependsOnFileContent(): Boolean {
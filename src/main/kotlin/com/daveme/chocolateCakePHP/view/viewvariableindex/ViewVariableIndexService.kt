@@ -2,26 +2,12 @@ package com.daveme.chocolateCakePHP.view.viewvariableindex
 
 import com.daveme.chocolateCakePHP.*
 import com.daveme.chocolateCakePHP.cake.ControllerPath
-import com.daveme.chocolateCakePHP.cake.templatesDirectoryOfViewFile
-import com.daveme.chocolateCakePHP.view.viewfileindex.PsiElementAndPath
-import com.daveme.chocolateCakePHP.view.viewfileindex.ViewFileIndexService
-import com.intellij.openapi.application.ReadAction
 import com.intellij.openapi.project.Project
 import com.intellij.psi.PsiElement
 import com.intellij.psi.PsiFile
-import com.intellij.psi.PsiManager
-import com.intellij.psi.search.GlobalSearchScope
-import com.intellij.psi.util.PsiTreeUtil
-import com.intellij.util.indexing.FileBasedIndex
 import com.intellij.util.indexing.ID
-import com.jetbrains.php.lang.psi.elements.ArrayCreationExpression
-import com.jetbrains.php.lang.psi.elements.AssignmentExpression
-import com.jetbrains.php.lang.psi.elements.FunctionReference
-import com.jetbrains.php.lang.psi.elements.Method
 import com.jetbrains.php.lang.psi.elements.ParameterList
 import com.jetbrains.php.lang.psi.elements.PhpTypedElement
-import com.jetbrains.php.lang.psi.elements.StringLiteralExpression
-import com.jetbrains.php.lang.psi.elements.Variable
 import com.jetbrains.php.lang.psi.resolve.types.PhpType
 
 // Maps MovieController:methodName
@@ -51,7 +37,6 @@ enum class SourceKind {
     PROPERTY,   // comes from an object property reference like $this->foo
     LITERAL,    // comes from a literal value like 'string' or 123
     EXPRESSION, // comes from any typed expression (method calls, property access, variables, etc.)
-    MIXED_ASSIGNMENT, // comes from mixed tuple assignment requiring further resolution
     UNKNOWN     // couldn't determine syntactically
 }
 
@@ -68,8 +53,16 @@ data class RawViewVar(
     val variableName: String,
     val varKind: VarKind,
     val offset: Int,
-    val varHandle: VarHandle // Describes where the value comes from for type resolution
+    val varHandle: VarHandle, // Describes where the value comes from for type resolution
+    val typeHint: String = ViewVariableTypeHints.NONE // Type worked out at index time, if any
 ) {
+    /**
+     * The type from the index-time [typeHint], without loading the controller.
+     * Null when there is no hint or it doesn't resolve, so [resolveType] is needed.
+     */
+    fun resolveTypeFromHint(project: Project): PhpType? =
+        ViewVariableTypeHints.resolve(typeHint, project)
+
     // Type resolution happens ONLY when needed, with full PSI context
     fun resolveType(project: Project, controllerFile: PsiFile? = null): PhpType {
         return when (varKind) {
@@ -103,31 +96,34 @@ data class RawViewVar(
     }
     
     private fun resolveTupleType(project: Project, controllerFile: PsiFile?): PhpType {
-        // TODO: Use PSI to resolve tuple assignment types
-        return createFallbackType()
+        // For TUPLE: $this->set(['name'], [$value])
+        // Use varHandle to find $value and resolve its type
+        return resolveByHandle(project, controllerFile, VarKind.TUPLE)
     }
-    
+
     private fun resolveVariablePairType(project: Project, controllerFile: PsiFile?): PhpType {
-        // TODO: Use PSI to resolve indirect variable assignment
-        return createFallbackType()
+        // For VARIABLE_PAIR: $key = 'name'; $this->set($key, $value)
+        // The value is inside the set() call, like for PAIR
+        return resolveByHandle(project, controllerFile, VarKind.PAIR)
     }
-    
+
     private fun resolveVariableArrayType(project: Project, controllerFile: PsiFile?): PhpType {
-        // TODO: Use PSI to resolve indirect array assignment
-        return createFallbackType()
+        // For VARIABLE_ARRAY: $vars = ['name' => $value]; $this->set($vars)
+        // The value is inside the assigned array, like for ARRAY
+        return resolveByHandle(project, controllerFile, VarKind.ARRAY)
     }
-    
+
     private fun resolveVariableCompactType(project: Project, controllerFile: PsiFile?): PhpType {
-        // TODO: Use PSI to resolve indirect compact assignment
-        return createFallbackType()
+        // For VARIABLE_COMPACT: $vars = compact('name'); $this->set($vars)
+        return resolveByHandle(project, controllerFile, VarKind.COMPACT)
     }
-    
+
     private fun resolveMixedTupleType(project: Project, controllerFile: PsiFile?): PhpType {
-        // TODO: Use PSI to resolve mixed tuple assignment like $this->set($keysVar, $valsVar)
-        // This requires finding assignments to both variables and pairing them up
-        return createFallbackType()
+        // For MIXED_TUPLE: $this->set($keys, $values), where the index paired up
+        // each name with its value from the arrays assigned to the locals
+        return resolveByHandle(project, controllerFile, VarKind.TUPLE)
     }
-    
+
     // Central method that resolves types based on VarHandle information
     private fun resolveByHandle(project: Project, controllerFile: PsiFile?, varKind: VarKind): PhpType {
         return when (varHandle.sourceKind) {
@@ -154,10 +150,6 @@ data class RawViewVar(
                     else -> createFallbackType() // For COMPACT, TUPLE, or other unsupported types
                 }
             }
-            SourceKind.MIXED_ASSIGNMENT -> {
-                // TODO: Resolve mixed tuple assignment by finding variable assignments
-                createFallbackType()
-            }
             SourceKind.UNKNOWN -> createFallbackType()
         }
     }
@@ -167,29 +159,12 @@ data class RawViewVar(
             return createFallbackType()
         }
 
-        // Find the PSI element at the offset specified in varHandle
-        val psiElementAtOffset = controllerFile.findElementAt(varHandle.offset)
-        if (psiElementAtOffset == null) {
-            return createFallbackType()
-        }
-
         // Find the containing method to limit our search scope
-        val containingMethod = PsiTreeUtil.getParentOfType(psiElementAtOffset, Method::class.java)
-        if (containingMethod == null) {
-            return createFallbackType()
-        }
+        val summary = MethodAssignmentSummary.at(controllerFile, varHandle.offset)
+            ?: return createFallbackType()
 
-        // Strategy 1: Look for assignments to this variable within the method
-        val assignments = PsiTreeUtil.findChildrenOfType(containingMethod, com.jetbrains.php.lang.psi.elements.AssignmentExpression::class.java)
-        val relevantAssignments = assignments.filter { assignment ->
-            val variable = assignment.variable
-            variable is Variable && variable.name == varHandle.symbolName &&
-            // Only consider assignments that come before our offset
-            assignment.textRange.startOffset < varHandle.offset
-        }
-
-        // Use the last assignment before our offset (closest one)
-        val lastAssignment = relevantAssignments.maxByOrNull { it.textRange.startOffset }
+        // Strategy 1: Use the last assignment to this variable before our offset (closest one)
+        val lastAssignment = summary.lastAssignmentBefore(varHandle.symbolName, varHandle.offset)
         if (lastAssignment != null) {
             val variable = lastAssignment.variable
             if (variable is com.jetbrains.php.lang.psi.elements.PhpTypedElement) {
@@ -198,32 +173,7 @@ data class RawViewVar(
         }
 
         // Strategy 2: Check if it's a method parameter
-        val parameters = containingMethod.parameters
-        val matchingParam = parameters.firstOrNull { it.name == varHandle.symbolName }
-        if (matchingParam != null) {
-            // Get the type and clean up any namespace pollution for primitive types
-            val paramType = matchingParam.type
-
-            // PHP primitive types that should never have namespace prefixes
-            val primitiveTypes = PRIMITIVE_TYPES
-
-            // Create a new PhpType with cleaned type strings
-            val cleanedType = PhpType()
-            paramType.types.forEach { typeString ->
-                // Check if this looks like a primitive with an incorrect namespace prefix
-                val lastSegment = typeString.substringAfterLast('\\')
-                val cleanedTypeString = if (lastSegment.lowercase() in primitiveTypes && typeString.contains('\\')) {
-                    // This is a primitive type with a namespace prefix - strip it
-                    lastSegment
-                } else {
-                    // Keep the full type name for classes/interfaces
-                    typeString
-                }
-                cleanedType.add(cleanedTypeString)
-            }
-
-            return cleanedType
-        }
+        summary.parameterTypes[varHandle.symbolName]?.let { return it }
 
         // Fallback: couldn't resolve
         return createFallbackType()
@@ -399,181 +349,33 @@ data class ViewVariableValue(
 
 class ViewVariables : HashMap<ViewVariableName, ViewVariableValue>()
 
-// New version using RawViewVar for direct mapping with embedded type resolution
-class ViewVariablesWithRawVars : HashMap<ViewVariableName, RawViewVar>()
-
 val VIEW_VARIABLE_INDEX_KEY: ID<ViewVariablesKey, ViewVariablesWithRawVars> =
     ID.create("com.daveme.chocolateCakePHP.viewvariableindex.v4")
 
 
 object ViewVariableIndexService {
 
-    private fun controllerKeyFromElementAndPath(
-        elementAndPath: PsiElementAndPath
-    ): String? {
-        val psiElement = elementAndPath.psiElement ?: return null
-        val element = if (psiElement is Method)
-            psiElement
-        else
-            PsiTreeUtil.getParentOfType(psiElement, Method::class.java)
-        if (element == null || !element.isValid) {
-            return null
-        }
-        val controllerPath = elementAndPath.controllerPath ?: return null
-        return controllerMethodKey(controllerPath, element.name)
-    }
-
     fun lookupVariableTypeFromViewPathInSmartReadAction(
         project: Project,
-        settings: Settings,
         filenameKey: String,
         variableName: String,
     ): PhpType {
-        val fileList = ViewFileIndexService.referencingElementsInSmartReadAction(project, filenameKey)
-        val toProcess = fileList.toMutableList()
-        val visited = mutableSetOf<String>() // paths
-        val result = PhpType()
-        var maxLookups = 15
-
-        while (toProcess.isNotEmpty()) {
-            if (maxLookups == 0) {
-                break
-            }
-            maxLookups -= 1
-            val elementAndPath = toProcess.removeAt(0)
-            visited.add(elementAndPath.path)
-            if (elementAndPath.nameWithoutExtension.isAnyControllerClass()) {
-                val controllerKey = controllerKeyFromElementAndPath(elementAndPath)
-                    ?: continue
-                val variableType = lookupVariableTypeFromControllerKey(project, controllerKey, variableName)
-                    ?: continue
-                result.add(variableType)
-                continue
-            }
-            val containingFile = ReadAction.compute<com.intellij.psi.PsiFile?, Nothing> {
-                elementAndPath.psiElement?.containingFile
-            } ?: continue
-            val templatesDir = templatesDirectoryOfViewFile(project, settings, containingFile)
-               ?: continue
-            val newFilenameKey = ViewFileIndexService.canonicalizeFilenameToKey(
-                templatesDir,
-                settings,
-                elementAndPath.path
-            )
-            val newFileList = ViewFileIndexService.referencingElementsInSmartReadAction(
-                project,
-                newFilenameKey
-            )
-            for (newPsiElementAndPath in newFileList) {
-                if (visited.contains(newPsiElementAndPath.path)) {
-                    continue
-                }
-                toProcess.add(newPsiElementAndPath)
-            }
-        }
-
-        return result
-    }
-
-    private fun lookupVariableTypeFromControllerKey(
-        project: Project,
-        controllerKey: String,
-        variableName: String
-    ): PhpType? {
-        val fileIndex = FileBasedIndex.getInstance()
-        val searchScope = GlobalSearchScope.allScope(project)
-        val psiManager = com.intellij.psi.PsiManager.getInstance(project)
-        val result = PhpType()
-
-        // Use processValues to get access to the VirtualFile (controller file)
-        fileIndex.processValues(VIEW_VARIABLE_INDEX_KEY, controllerKey, null,
-            { controllerVirtualFile, viewVariablesMap: ViewVariablesWithRawVars ->
-                val controllerPsiFile = psiManager.findFile(controllerVirtualFile)
-                val rawVar: RawViewVar? = (viewVariablesMap as HashMap<ViewVariableName, RawViewVar>).get(variableName)
-                if (rawVar != null) {
-                    val types: PhpType = rawVar.resolveType(project, controllerPsiFile)
-                    result.add(types)
-                }
-                true // continue processing
-            },
-            searchScope
-        )
-
-        return if (result.types.isEmpty()) null else result
-    }
-
-    private fun lookupVariablesFromControllerKey(
-        project: Project,
-        controllerKey: String,
-    ): List<Pair<PsiFile?, ViewVariablesWithRawVars>> {
-        val fileIndex = FileBasedIndex.getInstance()
-        val searchScope = GlobalSearchScope.allScope(project)
-        val psiManager = com.intellij.psi.PsiManager.getInstance(project)
-        val result = mutableListOf<Pair<PsiFile?, ViewVariablesWithRawVars>>()
-
-        fileIndex.processValues(VIEW_VARIABLE_INDEX_KEY, controllerKey, null,
-            { controllerVirtualFile, viewVariablesMap: ViewVariablesWithRawVars ->
-                val controllerPsiFile = psiManager.findFile(controllerVirtualFile)
-                result.add(Pair(controllerPsiFile, viewVariablesMap))
-                true // continue processing
-            },
-            searchScope
-        )
-
-        return result
+        return project.getService(ViewVariableTableService::class.java)
+            .tableInSmartReadAction(filenameKey)
+            .typeOf(variableName)
     }
 
     fun lookupVariablesFromViewPathInSmartReadAction(
         project: Project,
-        settings: Settings,
         filenameKey: String,
     ): ViewVariables {
-        val fileList = ViewFileIndexService.referencingElementsInSmartReadAction(project, filenameKey)
-        val toProcess = fileList.toMutableList()
-        val visited = mutableSetOf<String>() // paths
         val result = ViewVariables()
-        var maxLookups = 15
-
-        while (toProcess.isNotEmpty()) {
-            if (maxLookups == 0) {
-                break
-            }
-            maxLookups -= 1
-            val elementAndPath = toProcess.removeAt(0)
-            visited.add(elementAndPath.path)
-            if (elementAndPath.nameWithoutExtension.isAnyControllerClass()) {
-                val controllerKey = controllerKeyFromElementAndPath(elementAndPath)
-                    ?: continue
-                val variables = lookupVariablesFromControllerKey(project, controllerKey)
-                variables.forEach { (controllerPsiFile, rawVarCollection) ->
-                    // Convert RawViewVar to ViewVariableValue for backward compatibility
-                    rawVarCollection.forEach { (name, rawVar) ->
-                        val resolvedType = rawVar.resolveType(project, controllerPsiFile)
-                        result[name] = ViewVariableValue(resolvedType.toString(), rawVar.offset)
-                    }
-                }
-                continue
-            }
-            val containingFile2 = ReadAction.compute<com.intellij.psi.PsiFile?, Nothing> {
-                elementAndPath.psiElement?.containingFile
-            } ?: continue
-            val templatesDir = templatesDirectoryOfViewFile(project, settings, containingFile2)
-                ?: continue
-            val newFilenameKey = ViewFileIndexService.canonicalizeFilenameToKey(
-                templatesDir,
-                settings,
-                elementAndPath.path
-            )
-            val newFileList = ViewFileIndexService.referencingElementsInSmartReadAction(
-                project,
-                newFilenameKey
-            )
-            for (newPsiElementAndPath in newFileList) {
-                if (visited.contains(newPsiElementAndPath.path)) {
-                    continue
-                }
-                toProcess.add(newPsiElementAndPath)
-            }
+        val table = project.getService(ViewVariableTableService::class.java)
+            .tableInSmartReadAction(filenameKey)
+        for (name in table.names) {
+            // The last controller setting a variable gives its navigation offset
+            val offset = table.variables(name).last().offset
+            result[name] = ViewVariableValue(table.typeOf(name).toString(), offset)
         }
         return result
     }
@@ -582,306 +384,29 @@ object ViewVariableIndexService {
      * Check if a variable exists in the view path without resolving its type.
      * This is faster than lookupVariableTypeFromViewPathInSmartReadAction as it avoids type resolution.
      *
-     * Phase 1: Supports static patterns (PAIR, ARRAY, COMPACT, TUPLE) via direct map lookup.
-     * Future phases will add support for dynamic patterns (VARIABLE_ARRAY, etc.).
+     * Indirect patterns (VARIABLE_ARRAY, etc.) are resolved to concrete names
+     * when indexing, so this never needs to load PSI.
      */
     fun variableExistsInViewPath(
         project: Project,
-        settings: Settings,
         filenameKey: String,
         variableName: String
     ): Boolean {
-        val fileList = ViewFileIndexService.referencingElementsInSmartReadAction(project, filenameKey)
-        val toProcess = fileList.toMutableList()
-        val visited = mutableSetOf<String>()
-        var maxLookups = 15
-
-        while (toProcess.isNotEmpty()) {
-            if (maxLookups == 0) break
-            maxLookups -= 1
-
-            val elementAndPath = toProcess.removeAt(0)
-            visited.add(elementAndPath.path)
-
-            if (elementAndPath.nameWithoutExtension.isAnyControllerClass()) {
-                val controllerKey = controllerKeyFromElementAndPath(elementAndPath) ?: continue
-
-                if (variableExistsInController(project, controllerKey, variableName)) {
-                    return true
-                }
-                continue
-            }
-
-            // Handle view file references (traverse to find controllers)
-            val containingFile = ReadAction.compute<PsiFile?, Nothing> {
-                elementAndPath.psiElement?.containingFile
-            } ?: continue
-
-            val templatesDir = templatesDirectoryOfViewFile(project, settings, containingFile) ?: continue
-            val newFilenameKey = ViewFileIndexService.canonicalizeFilenameToKey(
-                templatesDir, settings, elementAndPath.path
-            )
-            val newFileList = ViewFileIndexService.referencingElementsInSmartReadAction(
-                project, newFilenameKey
-            )
-            for (newPsiElementAndPath in newFileList) {
-                if (visited.contains(newPsiElementAndPath.path)) continue
-                toProcess.add(newPsiElementAndPath)
-            }
-        }
-
-        return false
-    }
-
-    /**
-     * Extract variable names from dynamic pattern entries.
-     * Dispatches to appropriate extraction method based on VarKind.
-     *
-     * Phase 2: Supports VARIABLE_ARRAY
-     * Phase 3: Supports VARIABLE_COMPACT
-     * Phase 4: Supports VARIABLE_PAIR
-     * Phase 5: Supports MIXED_TUPLE
-     */
-    private fun extractVariableNamesFromDynamicPattern(
-        rawVar: RawViewVar,
-        controllerFile: PsiFile?
-    ): Set<String> {
-        if (controllerFile == null) return emptySet()
-
-        return when (rawVar.varKind) {
-            VarKind.VARIABLE_ARRAY -> extractVariableArrayNames(rawVar, controllerFile)
-            VarKind.VARIABLE_COMPACT -> extractVariableCompactNames(rawVar, controllerFile)
-            VarKind.VARIABLE_PAIR -> extractVariablePairName(rawVar, controllerFile)
-            VarKind.MIXED_TUPLE -> extractMixedTupleName(rawVar, controllerFile)
-            else -> emptySet()
-        }
-    }
-
-    /**
-     * Extract variable names from VARIABLE_ARRAY pattern.
-     * Example: $vars = ['movie' => ..., 'actors' => ...]; $this->set($vars);
-     * Returns: ["movie", "actors"]
-     *
-     * Note: Currently the indexer marks VARIABLE_ARRAY, VARIABLE_COMPACT, and VARIABLE_PAIR as VARIABLE_ARRAY,
-     * so this function checks the assignment value type and delegates appropriately.
-     */
-    private fun extractVariableArrayNames(
-        rawVar: RawViewVar,
-        controllerFile: PsiFile
-    ): Set<String> {
-        val psiElementAtOffset = controllerFile.findElementAt(rawVar.varHandle.offset) ?: return emptySet()
-        val containingMethod = PsiTreeUtil.getParentOfType(psiElementAtOffset, Method::class.java) ?: return emptySet()
-
-        // Find the last assignment to this variable before the $this->set() call
-        val assignments = PsiTreeUtil.findChildrenOfType(containingMethod, AssignmentExpression::class.java)
-        val relevantAssignment = assignments
-            .filter { assignment ->
-                val variable = assignment.variable
-                variable is Variable &&
-                variable.name == rawVar.varHandle.symbolName &&
-                assignment.textRange.startOffset < rawVar.varHandle.offset
-            }
-            .maxByOrNull { it.textRange.startOffset }
-            ?: return emptySet()
-
-        val value = relevantAssignment.value ?: return emptySet()
-
-        // Check if this is actually a compact() call (indexer doesn't distinguish yet)
-        if (value is FunctionReference && value.name == "compact") {
-            return extractVariableCompactNames(rawVar, controllerFile)
-        }
-
-        // Check if this is actually a string literal (VARIABLE_PAIR pattern)
-        if (value is StringLiteralExpression) {
-            return extractVariablePairName(rawVar, controllerFile)
-        }
-
-        // Extract keys from the array assignment: $vars = ['movie' => ..., 'actors' => ...]
-        if (value !is ArrayCreationExpression) return emptySet()
-
-        val keys = mutableSetOf<String>()
-        for (hashElement in value.hashElements) {
-            val key = hashElement.key
-            if (key is StringLiteralExpression) {
-                keys.add(key.contents)
-            }
-        }
-
-        return keys
+        return project.getService(ViewVariableTableService::class.java)
+            .tableInSmartReadAction(filenameKey)
+            .isDefined(variableName)
     }
 
     /**
-     * Extract variable names from VARIABLE_COMPACT pattern.
-     * Example: $vars = compact('movie', 'actors'); $this->set($vars);
-     * Returns: ["movie", "actors"]
+     * All the variables defined for the view, without resolving their types.
      */
-    private fun extractVariableCompactNames(
-        rawVar: RawViewVar,
-        controllerFile: PsiFile
-    ): Set<String> {
-        val psiElementAtOffset = controllerFile.findElementAt(rawVar.varHandle.offset) ?: return emptySet()
-        val containingMethod = PsiTreeUtil.getParentOfType(psiElementAtOffset, Method::class.java) ?: return emptySet()
-
-        // Find assignment: $vars = compact('movie', 'actors')
-        val assignments = PsiTreeUtil.findChildrenOfType(containingMethod, AssignmentExpression::class.java)
-        val relevantAssignment = assignments
-            .filter { assignment ->
-                val variable = assignment.variable
-                variable is Variable &&
-                variable.name == rawVar.varHandle.symbolName &&
-                assignment.textRange.startOffset < rawVar.varHandle.offset
-            }
-            .maxByOrNull { it.textRange.startOffset }
-            ?: return emptySet()
-
-        val value = relevantAssignment.value
-        if (value !is FunctionReference || value.name != "compact") return emptySet()
-
-        // Extract string parameters from compact()
-        val keys = mutableSetOf<String>()
-        val parameterList = value.parameterList ?: return emptySet()
-        for (param in parameterList.parameters) {
-            if (param is StringLiteralExpression) {
-                keys.add(param.contents)
-            }
-        }
-
-        return keys
-    }
-
-    /**
-     * Extract variable names from VARIABLE_PAIR pattern.
-     * Example: $key = 'movie'; $this->set($key, $val);
-     * Returns: ["movie"]
-     */
-    private fun extractVariablePairName(
-        rawVar: RawViewVar,
-        controllerFile: PsiFile
-    ): Set<String> {
-        val psiElementAtOffset = controllerFile.findElementAt(rawVar.varHandle.offset) ?: return emptySet()
-        val containingMethod = PsiTreeUtil.getParentOfType(psiElementAtOffset, Method::class.java) ?: return emptySet()
-
-        // Find assignment: $key = 'movie'
-        val assignments = PsiTreeUtil.findChildrenOfType(containingMethod, AssignmentExpression::class.java)
-        val relevantAssignment = assignments
-            .filter { assignment ->
-                val variable = assignment.variable
-                variable is Variable &&
-                variable.name == rawVar.varHandle.symbolName &&
-                assignment.textRange.startOffset < rawVar.varHandle.offset
-            }
-            .maxByOrNull { it.textRange.startOffset }
-            ?: return emptySet()
-
-        // Check if value is a string literal
-        val value = relevantAssignment.value
-        if (value is StringLiteralExpression) {
-            return setOf(value.contents)
-        }
-
-        // Could also be a parameter - check method params
-        // Note: We can't determine the value from parameter at this point
-        // as it would need to analyze call sites (too expensive)
-        return emptySet()
-    }
-
-    /**
-     * Extract variable names from MIXED_TUPLE pattern.
-     * Example: $key = 'studio'; $val = 'Warner Bros'; $this->set($key, $val);
-     * Returns: ["studio"]
-     *
-     * The symbolName format is "keyVarName|valVarName" (e.g., "key|val")
-     * We need to find the assignment to the key variable to get the actual variable name.
-     */
-    private fun extractMixedTupleName(
-        rawVar: RawViewVar,
-        controllerFile: PsiFile
-    ): Set<String> {
-        // Parse the symbolName to get both variable names
-        val parts = rawVar.varHandle.symbolName.split("|")
-        if (parts.size != 2) return emptySet()
-
-        val keyVariableName = parts[0]
-        if (keyVariableName.isEmpty()) return emptySet()
-
-        val psiElementAtOffset = controllerFile.findElementAt(rawVar.varHandle.offset) ?: return emptySet()
-        val containingMethod = PsiTreeUtil.getParentOfType(psiElementAtOffset, Method::class.java) ?: return emptySet()
-
-        // Find assignment: $key = 'studio'
-        val assignments = PsiTreeUtil.findChildrenOfType(containingMethod, AssignmentExpression::class.java)
-        val relevantAssignment = assignments
-            .filter { assignment ->
-                val variable = assignment.variable
-                variable is Variable &&
-                variable.name == keyVariableName &&
-                assignment.textRange.startOffset < rawVar.varHandle.offset
-            }
-            .maxByOrNull { it.textRange.startOffset }
-            ?: return emptySet()
-
-        // Check if value is a string literal
-        val value = relevantAssignment.value
-        if (value is StringLiteralExpression) {
-            return setOf(value.contents)
-        }
-
-        return emptySet()
-    }
-
-    /**
-     * Check if a variable exists in a specific controller without resolving its type.
-     *
-     * Phase 1: Checks static patterns via direct map key lookup (no PSI loading).
-     * Phase 2: Checks VARIABLE_ARRAY dynamic pattern (with PSI loading).
-     * Phase 3: Checks VARIABLE_COMPACT dynamic pattern (with PSI loading).
-     * Phase 4: Checks VARIABLE_PAIR dynamic pattern (with PSI loading).
-     * Phase 5: Checks MIXED_TUPLE dynamic pattern (with PSI loading).
-     */
-    private fun variableExistsInController(
+    fun variablesDefinedInViewPath(
         project: Project,
-        controllerKey: String,
-        variableName: String
-    ): Boolean {
-        val fileIndex = FileBasedIndex.getInstance()
-        val searchScope = GlobalSearchScope.allScope(project)
-        val psiManager = PsiManager.getInstance(project)
-        var found = false
-
-        fileIndex.processValues(VIEW_VARIABLE_INDEX_KEY, controllerKey, null,
-            { controllerVirtualFile, viewVariablesMap: ViewVariablesWithRawVars ->
-                // Phase 1: Check static patterns (direct key lookup - no PSI needed)
-                if (viewVariablesMap.containsKey(variableName)) {
-                    found = true
-                    return@processValues false  // Stop processing
-                }
-
-                // Phase 2-5: Check dynamic patterns (need PSI)
-                val dynamicEntries = viewVariablesMap.values.filter { rawVar ->
-                    rawVar.varKind in setOf(
-                        VarKind.VARIABLE_ARRAY,
-                        VarKind.VARIABLE_COMPACT,
-                        VarKind.VARIABLE_PAIR,
-                        VarKind.MIXED_TUPLE
-                    )
-                }
-
-                if (dynamicEntries.isNotEmpty()) {
-                    val controllerPsiFile = psiManager.findFile(controllerVirtualFile)
-                    for (entry in dynamicEntries) {
-                        val variableNames = extractVariableNamesFromDynamicPattern(entry, controllerPsiFile)
-                        if (variableName in variableNames) {
-                            found = true
-                            return@processValues false  // Stop processing
-                        }
-                    }
-                }
-
-                true  // Continue processing
-            },
-            searchScope
-        )
-
-        return found
+        filenameKey: String
+    ): Set<String> {
+        return project.getService(ViewVariableTableService::class.java)
+            .tableInSmartReadAction(filenameKey)
+            .names
     }
 
 }
@@ -1,44 +1,76 @@
 package com.daveme.chocolateCakePHP.view.viewvariableindex
 
+import com.daveme.chocolateCakePHP.*
 import com.intellij.util.io.DataExternalizer
 import java.io.DataInput
 import java.io.DataOutput
 
+/**
+ * Each variable is written as:
+ *
+ *  - one header byte: [VarKind] in bits 0-3, [SourceKind] in bits 4-6, and
+ *    bit 7 set when the handle's symbol name equals the variable name
+ *  - the variable name (the map key is always the same string, so it is
+ *    written once)
+ *  - the symbol name, unless the header says it is the variable name
+ *  - the offset as a delta from the previous variable's offset
+ *  - the handle offset as a delta from the variable's offset
+ *  - the index-time type hint, usually empty
+ */
 object ViewVariableRawVarsExternalizer : DataExternalizer<ViewVariablesWithRawVars> {
 
+    private const val FORMAT = 2
+    private const val SYMBOL_IS_VARIABLE_NAME = 0x80
+
+    private val varKinds = VarKind.values()
+    private val sourceKinds = SourceKind.values()
+
     override fun save(out: DataOutput, value: ViewVariablesWithRawVars) {
-        out.writeInt(value.size)
+        writeIndexFormat(out, FORMAT)
+        writeVarInt(out, value.size)
+        val strings = IndexStringTableWriter(out, emptyList())
+        var previousOffset = 0
         value.forEach { (key, rawVar) ->
-            out.writeUTF(key)
-            out.writeUTF(rawVar.variableName)
-            out.writeInt(rawVar.varKind.ordinal)
-            out.writeInt(rawVar.offset)
-            // Save VarHandle
-            out.writeInt(rawVar.varHandle.sourceKind.ordinal)
-            out.writeUTF(rawVar.varHandle.symbolName)
-            out.writeInt(rawVar.varHandle.offset)
+            val symbolName = rawVar.varHandle.symbolName
+            val symbolIsVariableName = symbolName == key
+            var header = rawVar.varKind.ordinal or (rawVar.varHandle.sourceKind.ordinal shl 4)
+            if (symbolIsVariableName) {
+                header = header or SYMBOL_IS_VARIABLE_NAME
+            }
+            out.writeByte(header)
+            strings.write(key)
+            if (!symbolIsVariableName) {
+                strings.write(symbolName)
+            }
+            writeOffsetDelta(out, rawVar.offset, previousOffset)
+            writeOffsetDelta(out, rawVar.varHandle.offset, rawVar.offset)
+            strings.write(rawVar.typeHint)
+            previousOffset = rawVar.offset
         }
     }
 
     override fun read(`in`: DataInput): ViewVariablesWithRawVars {
-        val size = `in`.readInt()
-        val result = ViewVariablesWithRawVars()
+        readIndexFormat(`in`, FORMAT)
+        val size = readVarInt(`in`)
+        val result = ViewVariablesWithRawVars.Builder(size)
+        val strings = IndexStringTableReader(`in`, emptyList())
+        var previousOffset = 0
         repeat(size) {
-            val key = `in`.readUTF()
-            val variableName = `in`.readUTF()
-            val varKindOrdinal = `in`.readInt()
-            val offset = `in`.readInt()
-            // Read VarHandle
-            val sourceKindOrdinal = `in`.readInt()
-            val symbolName = `in`.readUTF()
-            val handleOffset = `in`.readInt()
-            
-            val varKind = VarKind.values()[varKindOrdinal]
-            val sourceKind = SourceKind.values()[sourceKindOrdinal]
-            val varHandle = VarHandle(sourceKind, symbolName, handleOffset)
-            val rawVar = RawViewVar(variableName, varKind, offset, varHandle)
-            result[key] = rawVar
+            val header = `in`.readUnsignedByte()
+            val variableName = strings.read()
+            val symbolName = if ((header and SYMBOL_IS_VARIABLE_NAME) != 0)
+                variableName
+            else
+                strings.read()
+            val offset = readOffsetDelta(`in`, previousOffset)
+            val handleOffset = readOffsetDelta(`in`, offset)
+            val typeHint = strings.read()
+            previousOffset = offset
+
+            val varKind = varKinds[header and 0x0F]
+            val sourceKind = sourceKinds[(header shr 4) and 0x07]
+            result.add(variableName, varKind, offset, sourceKind, symbolName, handleOffset, typeHint)
         }
-        return result
+        return result.build()
     }
-}
\ No newline at end of file
+}
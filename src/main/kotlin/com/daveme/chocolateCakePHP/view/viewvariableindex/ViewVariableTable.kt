@@ -0,0 +1,171 @@
+package com.daveme.chocolateCakePHP.view.viewvariableindex
+
+import com.daveme.chocolateCakePHP.FileStamps
+import com.daveme.chocolateCakePHP.Settings
+import com.daveme.chocolateCakePHP.view.viewfileindex.RenderClosure
+import com.daveme.chocolateCakePHP.view.viewfileindex.ViewRenderGraph
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.psi.PsiManager
+import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.util.indexing.FileBasedIndex
+import com.jetbrains.php.lang.psi.resolve.types.PhpType
+
+/**
+ * One `$this->set()` entry visible in a view, with its type resolved on first use.
+ *
+ * The index-time type hint is used when there is one, and the controller
+ * file is only loaded for entries that need PSI to resolve.
+ */
+class ResolvedViewVariable(
+    val rawVar: RawViewVar,
+    val controllerFile: VirtualFile,
+    private val project: Project,
+) {
+    val name: String
+        get() = rawVar.variableName
+
+    // Where the variable is set in the controller file
+    val offset: Int
+        get() = rawVar.offset
+
+    val phpType: PhpType by lazy(LazyThreadSafetyMode.PUBLICATION) {
+        rawVar.resolveTypeFromHint(project)
+            ?: rawVar.resolveType(project, PsiManager.getInstance(project).findFile(controllerFile))
+    }
+}
+
+/**
+ * All the variables the controller actions rendering one view set for it.
+ *
+ * Built from index data only. The type of each entry is resolved the first
+ * time it's asked for.
+ */
+class ViewVariableTable(
+    private val project: Project,
+    // The actions rendering the view, null when the plugin is disabled
+    private val renderClosure: RenderClosure?,
+    sources: List<Pair<VirtualFile, ViewVariablesWithRawVars>>,
+) {
+    private val variablesByName: Map<String, List<ResolvedViewVariable>>
+
+    private val settingsStamp = Settings.getInstance(project).modificationTracker.modificationCount
+
+    private val controllerFileStamps = FileStamps(sources.map { it.first })
+
+    val controllerFiles: Set<VirtualFile>
+        get() = controllerFileStamps.files
+
+    init {
+        val byName = LinkedHashMap<String, MutableList<ResolvedViewVariable>>()
+        for ((controllerFile, variables) in sources) {
+            for (index in 0 until variables.size) {
+                val entry = ResolvedViewVariable(variables.rawVarAt(index), controllerFile, project)
+                byName.getOrPut(variables.nameAt(index)) { mutableListOf() }.add(entry)
+            }
+        }
+        variablesByName = byName
+    }
+
+    val names: Set<String>
+        get() = variablesByName.keys
+
+    fun variables(name: String): List<ResolvedViewVariable> =
+        variablesByName[name] ?: emptyList()
+
+    fun typeOf(name: String): PhpType {
+        val result = PhpType()
+        for (variable in variables(name)) {
+            result.add(variable.phpType)
+        }
+        return result
+    }
+
+    fun isDefined(name: String): Boolean =
+        variablesByName.containsKey(name)
+
+    /**
+     * Whether the table would still be built the same: none of the controllers
+     * it was built from, nor the views and elements on the way to them changed.
+     *
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun isUpToDate(): Boolean =
+        settingsStamp == Settings.getInstance(project).modificationTracker.modificationCount &&
+            controllerFileStamps.isUpToDate() &&
+            (renderClosure == null || renderClosure.isUpToDate(project))
+}
+
+/**
+ * Per-view [ViewVariableTable]s, so completion, the type provider and the
+ * undefined variable suppressor share one lookup and one type resolution
+ * per variable.
+ *
+ * Each table is rebuilt when a file it was built from changes (see
+ * [ViewVariableTable.isUpToDate]), so editing a controller or template
+ * that doesn't render the view leaves its table alone. Threads asking for
+ * the same view while its table is being built wait for that table instead
+ * of building their own.
+ *
+ * At most [maxTables] views keep a table, least recently used ones are
+ * dropped first. The limit can be set with the
+ * `chocolatecakephp.viewVariableTableCacheSize` system property.
+ */
+@Service(Service.Level.PROJECT)
+class ViewVariableTableService(private val project: Project) {
+
+    companion object {
+        private const val DEFAULT_MAX_TABLES = 1_000
+
+        val maxTables: Int =
+            Integer.getInteger("chocolatecakephp.viewVariableTableCacheSize", DEFAULT_MAX_TABLES)
+                .coerceAtLeast(1)
+    }
+
+    // Access ordered, guarded by its own monitor
+    private val tables = object : LinkedHashMap<String, ViewVariableTable>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, ViewVariableTable>) =
+            size > maxTables
+    }
+
+    private val inFlight = SingleFlight<String, ViewVariableTable>()
+
+    /**
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun tableInSmartReadAction(filenameKey: String): ViewVariableTable {
+        upToDateTable(filenameKey)?.let { return it }
+        return inFlight.run(filenameKey) {
+            // Another thread may have built it while this one waited
+            upToDateTable(filenameKey) ?: computeTable(filenameKey).also { table ->
+                synchronized(tables) { tables[filenameKey] = table }
+            }
+        }
+    }
+
+    private fun upToDateTable(filenameKey: String): ViewVariableTable? =
+        synchronized(tables) { tables[filenameKey] }?.takeIf { it.isUpToDate() }
+
+    private fun computeTable(filenameKey: String): ViewVariableTable {
+        if (!Settings.getInstance(project).enabled) {
+            return ViewVariableTable(project, null, emptyList())
+        }
+        val renderClosure = project.getService(ViewRenderGraph::class.java)
+            .renderClosureInSmartReadAction(filenameKey)
+        val fileIndex = FileBasedIndex.getInstance()
+        val searchScope = GlobalSearchScope.allScope(project)
+        val sources = mutableListOf<Pair<VirtualFile, ViewVariablesWithRawVars>>()
+        for (controllerKey in renderClosure.actions) {
+            fileIndex.processValues(VIEW_VARIABLE_INDEX_KEY, controllerKey, null,
+                { controllerFile, variables: ViewVariablesWithRawVars ->
+                    sources.add(Pair(controllerFile, variables))
+                    true
+                },
+                searchScope
+            )
+        }
+        return ViewVariableTable(project, renderClosure, sources)
+    }
+
+}
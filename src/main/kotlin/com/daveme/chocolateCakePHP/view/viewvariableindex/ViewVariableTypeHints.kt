@@ -0,0 +1,351 @@
+package com.daveme.chocolateCakePHP.view.viewvariableindex
+
+import com.daveme.chocolateCakePHP.*
+import com.daveme.chocolateCakePHP.cake.getPossibleTableClasses
+import com.intellij.lang.ASTNode
+import com.intellij.openapi.project.Project
+import com.intellij.psi.TokenType
+import com.jetbrains.php.PhpIndex
+import com.jetbrains.php.lang.lexer.PhpTokenTypes
+import com.jetbrains.php.lang.psi.resolve.types.PhpType
+
+/**
+ * The namespace and class imports of a PHP file, collected from the AST as
+ * it is walked, for resolving class names without PSI.
+ */
+class FileImports {
+    private var namespace = ""
+    private val importsByAlias = HashMap<String, String>()
+
+    fun addNamespace(namespaceNode: ASTNode) {
+        // Only the header: a braced namespace's node contains its whole body
+        val header = namespaceNode.text
+            .removePrefix("namespace")
+            .takeWhile { it != ';' && it != '{' }
+        namespace = header.trim().trim('\\')
+    }
+
+    fun addUseList(useListNode: ASTNode) {
+        val body = useListNode.text.removePrefix("use").trim().removeSuffix(";").trim()
+        if (body.startsWith("function ") || body.startsWith("const ")) {
+            return
+        }
+        val openBrace = body.indexOf('{')
+        val closeBrace = body.lastIndexOf('}')
+        val names = if (openBrace >= 0 && closeBrace > openBrace) {
+            // use App\Model\Entity\{Movie, Actor as Star};
+            val prefix = body.substring(0, openBrace).trim().trimEnd('\\')
+            body.substring(openBrace + 1, closeBrace).split(',').map { "$prefix\\${it.trim()}" }
+        } else {
+            body.split(',')
+        }
+        for (name in names) {
+            val parts = name.trim().split(AS_KEYWORD)
+            val fqn = parts[0].trim().trim('\\')
+            if (fqn.isEmpty()) {
+                continue
+            }
+            val alias = parts.getOrNull(1)?.trim() ?: fqn.substringAfterLast('\\')
+            importsByAlias[alias.lowercase()] = "\\" + fqn
+        }
+    }
+
+    /**
+     * The fully qualified name of a class name used in this file, or null for
+     * names like `self` that depend on the containing class.
+     */
+    fun resolveClassName(name: String): String? {
+        if (name.startsWith("\\")) {
+            return name
+        }
+        if (name.isEmpty() || name.lowercase() in CLASS_RELATIVE_NAMES) {
+            return null
+        }
+        val firstSegment = name.substringBefore('\\')
+        val imported = importsByAlias[firstSegment.lowercase()]
+        if (imported != null) {
+            return if (firstSegment == name) imported else imported + "\\" + name.substringAfter('\\')
+        }
+        return if (namespace.isEmpty()) "\\" + name else "\\" + namespace + "\\" + name
+    }
+
+    companion object {
+        private val AS_KEYWORD = Regex("\\s+as\\s+", RegexOption.IGNORE_CASE)
+        private val CLASS_RELATIVE_NAMES = setOf("self", "static", "parent")
+    }
+}
+
+/**
+ * What's known about the locals of the controller method being walked, in
+ * document order: the value last assigned to each local so far, and the type
+ * hints of the parameters.
+ */
+class MethodScope(val imports: FileImports) {
+    val localAssignments = HashMap<String, ASTNode>()
+    val parameterTypeHints = HashMap<String, String>()
+
+    fun addParameters(parameterListNode: ASTNode) {
+        var child = parameterListNode.firstChildNode
+        while (child != null) {
+            if (child.elementType != TokenType.WHITE_SPACE && child.elementType != PhpTokenTypes.opCOMMA) {
+                addParameter(child.text)
+            }
+            child = child.treeNext
+        }
+    }
+
+    private fun addParameter(parameterText: String) {
+        // `#[Attribute] private ?Movie &$movie = null`
+        val dollar = parameterText.indexOf('$')
+        if (dollar < 0) {
+            return
+        }
+        val name = parameterText.substring(dollar + 1).takeWhile { it.isLetterOrDigit() || it == '_' }
+        val declaration = parameterText.substring(0, dollar).trim().removeSuffix("&").trim()
+        if (name.isEmpty() || declaration.endsWith("...")) {
+            return
+        }
+        val declaredType = declaration.substringAfterLast(' ').substringAfterLast(']')
+        val hint = ViewVariableTypeHints.ofDeclaredType(declaredType, imports)
+        if (hint.isNotEmpty()) {
+            parameterTypeHints[name] = hint
+        }
+    }
+
+    companion object {
+        val NONE = MethodScope(FileImports())
+    }
+}
+
+/**
+ * Syntactic type hints for the values passed to `$this->set()`, captured when
+ * indexing so the type of a view variable can usually be computed without
+ * loading the controller's PSI.
+ *
+ * A hint is either a `|`-separated list of types (`int`, `\App\Model\Entity\Movie`),
+ * or one of the plugin's deferred forms starting with `#`, resolved with the
+ * settings and [PhpIndex] in [resolve]. An empty hint means the type has to be
+ * resolved from PSI.
+ */
+object ViewVariableTypeHints {
+
+    const val NONE = ""
+
+    private const val DEFERRED_PREFIX = "#"
+    private const val FETCH_TABLE = "fetchTable"
+    private const val FIND = "find"
+    private const val PAGINATE = "paginate"
+
+    // How many local variable assignments are followed, like `$b = $a; $c = $b;`
+    private const val MAX_LOCAL_DEPTH = 4
+
+    private val primitiveDeclaredTypes = PRIMITIVE_TYPES + setOf("false", "true")
+
+    /**
+     * The type hint of an expression node.
+     */
+    fun of(valueNode: ASTNode, scope: MethodScope): String =
+        of(valueNode, scope, 0)
+
+    /**
+     * The type hint of a local variable or parameter, as of the current
+     * position of the walk.
+     */
+    fun ofLocal(name: String, scope: MethodScope): String =
+        ofLocal(name, scope, 0)
+
+    private fun ofLocal(name: String, scope: MethodScope, depth: Int): String {
+        val assignedValue = scope.localAssignments[name]
+        if (assignedValue != null) {
+            return if (depth < MAX_LOCAL_DEPTH) of(assignedValue, scope, depth + 1) else NONE
+        }
+        return scope.parameterTypeHints[name] ?: NONE
+    }
+
+    private fun of(valueNode: ASTNode, scope: MethodScope, depth: Int): String {
+        return when {
+            valueNode.isString() -> "string"
+            valueNode.isNumber() -> {
+                val text = valueNode.text
+                if (text.contains('.') || (!text.startsWith("0x", ignoreCase = true) && text.contains('e', ignoreCase = true)))
+                    "float"
+                else
+                    "int"
+            }
+            valueNode.isConstantReference() -> when (valueNode.text.lowercase()) {
+                "true", "false" -> "bool"
+                "null" -> "null"
+                else -> NONE
+            }
+            // PSI gives the element types of array literals, so leave them to it
+            valueNode.isArrayCreationExpression() -> NONE
+            valueNode.isNewExpression() -> ofNewExpression(valueNode, scope.imports)
+            valueNode.isMethodReference() -> ofMethodReference(valueNode)
+            valueNode.isVariable() -> {
+                val name = valueNode.text.removePrefix("$")
+                if (name == "this") NONE else ofLocal(name, scope, depth)
+            }
+            else -> NONE
+        }
+    }
+
+    private fun ofNewExpression(node: ASTNode, imports: FileImports): String {
+        var child = node.firstChildNode
+        while (child != null) {
+            if (child.isClassReference()) {
+                return imports.resolveClassName(child.text) ?: NONE
+            }
+            child = child.treeNext
+        }
+        // Anonymous classes and `new $className`
+        return NONE
+    }
+
+    private fun ofMethodReference(node: ASTNode): String {
+        var receiver: ASTNode? = null
+        var methodName: String? = null
+        var parameterList: ASTNode? = null
+        var child = node.firstChildNode
+        while (child != null) {
+            when {
+                receiver == null && (child.isVariable() || child.isFieldReference()) -> receiver = child
+                child.elementType == PhpTokenTypes.IDENTIFIER -> methodName = child.text
+                child.isParameterList() -> parameterList = child
+            }
+            child = child.treeNext
+        }
+        if (receiver == null || methodName == null) {
+            return NONE
+        }
+
+        // $this->fetchTable('Movies'), $this->paginate(...)
+        if (receiver.isVariable() && receiver.text == "\$this") {
+            return when {
+                methodName.equals(FETCH_TABLE, ignoreCase = true) -> {
+                    val tableAlias = parameterList?.let { firstStringParameter(it) } ?: return NONE
+                    if (tableAlias.isValidTableAlias()) "$DEFERRED_PREFIX$FETCH_TABLE.$tableAlias" else NONE
+                }
+                methodName.equals(PAGINATE, ignoreCase = true) -> "$DEFERRED_PREFIX$PAGINATE"
+                else -> NONE
+            }
+        }
+
+        // $this->Movies->find(...)
+        if (receiver.isFieldReference() && methodName.equals(FIND, ignoreCase = true)) {
+            val tableAlias = thisFieldName(receiver) ?: return NONE
+            if (tableAlias.startsWithUppercaseCharacter() && tableAlias.isValidTableAlias()) {
+                return "$DEFERRED_PREFIX$FIND.$tableAlias"
+            }
+        }
+        return NONE
+    }
+
+    // The field name of `$this->Field`
+    private fun thisFieldName(fieldReference: ASTNode): String? {
+        var receiverIsThis = false
+        var fieldName: String? = null
+        var child = fieldReference.firstChildNode
+        while (child != null) {
+            when {
+                child.isVariable() -> receiverIsThis = child.text == "\$this"
+                child.elementType == PhpTokenTypes.IDENTIFIER -> fieldName = child.text
+            }
+            child = child.treeNext
+        }
+        return if (receiverIsThis) fieldName else null
+    }
+
+    private fun firstStringParameter(parameterList: ASTNode): String? {
+        var child = parameterList.firstChildNode
+        while (child != null) {
+            if (child.elementType != TokenType.WHITE_SPACE && child.elementType != PhpTokenTypes.opCOMMA) {
+                if (!child.isString()) {
+                    return null
+                }
+                val literal = child.findChildByType(PhpTokenTypes.STRING_LITERAL) ?: child
+                return literal.text.removeSurrounding("'").removeSurrounding("\"")
+            }
+            child = child.treeNext
+        }
+        return null
+    }
+
+    private fun String.isValidTableAlias(): Boolean =
+        isNotEmpty() && length < 255 && all { it.isLetterOrDigit() || it == '_' }
+
+    /**
+     * The type hint of a declared type like `?int`, `Movie` or `Movie|null`.
+     */
+    fun ofDeclaredType(declaredType: String, imports: FileImports): String {
+        if (declaredType.isEmpty() || declaredType.contains('&') || declaredType.contains('(')) {
+            return NONE
+        }
+        val types = mutableListOf<String>()
+        var typeText = declaredType
+        if (typeText.startsWith("?")) {
+            types.add("null")
+            typeText = typeText.substring(1)
+        }
+        for (part in typeText.split('|')) {
+            val lowercase = part.trim().lowercase()
+            if (lowercase in primitiveDeclaredTypes) {
+                types.add(if (lowercase == "true" || lowercase == "false") "bool" else lowercase)
+            } else {
+                types.add(imports.resolveClassName(part.trim()) ?: return NONE)
+            }
+        }
+        return types.distinct().joinToString("|")
+    }
+
+    /**
+     * The type a hint stands for, or null when the hint is empty or its type
+     * can't be found, in which case the caller should resolve it from PSI.
+     *
+     * Assumes: read lock held + smart mode (indices ready)
+     */
+    fun resolve(hint: String, project: Project): PhpType? {
+        if (hint.isEmpty()) {
+            return null
+        }
+        if (!hint.startsWith(DEFERRED_PREFIX)) {
+            val result = PhpType()
+            hint.split('|').forEach { result.add(it) }
+            return result
+        }
+
+        val settings = Settings.getInstance(project)
+        if (!settings.cake3Enabled && !settings.cake2Enabled) {
+            return null
+        }
+        val kind = hint.substring(DEFERRED_PREFIX.length).substringBefore('.')
+        val argument = hint.substringAfter('.', "")
+        val result = PhpType()
+        when (kind) {
+            FETCH_TABLE -> {
+                if (!settings.cake3Enabled) {
+                    return null
+                }
+                // Same as TableLocatorTypeProvider
+                result.add("${settings.appNamespace}\\Model\\Table\\${argument}Table")
+            }
+            FIND -> {
+                if (!settings.cake3Enabled) {
+                    return null
+                }
+                val phpIndex = PhpIndex.getInstance(project)
+                for (tableClass in phpIndex.getPossibleTableClasses(settings, argument)) {
+                    result.add(tableClass.fqn.wrapInPluginSpecificTypeForQueryBuilder())
+                    tableClass.findMethodByName(FIND)?.let { result.add(it.type.global(project)) }
+                }
+            }
+            PAGINATE -> {
+                val phpIndex = PhpIndex.getInstance(project)
+                val controllerClass = if (settings.cake3Enabled) "\\Cake\\Controller\\Controller" else "\\Controller"
+                for (klass in phpIndex.getClassesByFQN(controllerClass)) {
+                    klass.findMethodByName(PAGINATE)?.let { result.add(it.type.global(project)) }
+                }
+            }
+        }
+        return if (result.types.isEmpty()) null else result
+    }
+}
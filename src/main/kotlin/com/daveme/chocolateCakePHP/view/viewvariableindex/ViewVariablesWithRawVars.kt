@@ -0,0 +1,185 @@
+package com.daveme.chocolateCakePHP.view.viewvariableindex
+
+import java.util.AbstractMap.SimpleImmutableEntry
+
+private val varKinds = VarKind.values()
+private val sourceKinds = SourceKind.values()
+
+/**
+ * The variables set by one controller action, as stored in the view variable index.
+ *
+ * This is an immutable map backed by parallel arrays sorted by variable name:
+ * lookups are a binary search, and [RawViewVar] objects are only created for
+ * the entries that are actually read. Use [Builder] to create one.
+ */
+class ViewVariablesWithRawVars private constructor(
+    private val names: Array<String>,
+    private val varKindOrdinals: ByteArray,
+    private val offsets: IntArray,
+    private val sourceKindOrdinals: ByteArray,
+    private val symbolNames: Array<String>,
+    private val handleOffsets: IntArray,
+    private val typeHints: Array<String>,
+) : AbstractMap<ViewVariableName, RawViewVar>() {
+
+    override val size: Int
+        get() = names.size
+
+    override fun isEmpty(): Boolean = names.isEmpty()
+
+    override fun containsKey(key: ViewVariableName): Boolean = indexOf(key) >= 0
+
+    override fun get(key: ViewVariableName): RawViewVar? {
+        val index = indexOf(key)
+        return if (index < 0) null else rawVarAt(index)
+    }
+
+    override val keys: Set<ViewVariableName> by lazy(LazyThreadSafetyMode.PUBLICATION) {
+        object : AbstractSet<ViewVariableName>() {
+            override val size: Int get() = names.size
+            override fun contains(element: ViewVariableName): Boolean = indexOf(element) >= 0
+            override fun iterator(): Iterator<ViewVariableName> = names.iterator()
+        }
+    }
+
+    override val entries: Set<Map.Entry<ViewVariableName, RawViewVar>> by lazy(LazyThreadSafetyMode.PUBLICATION) {
+        object : AbstractSet<Map.Entry<ViewVariableName, RawViewVar>>() {
+            override val size: Int get() = names.size
+            override fun iterator(): Iterator<Map.Entry<ViewVariableName, RawViewVar>> {
+                return (0 until names.size).asSequence()
+                    .map { SimpleImmutableEntry(names[it], rawVarAt(it)) }
+                    .iterator()
+            }
+        }
+    }
+
+    fun nameAt(index: Int): ViewVariableName = names[index]
+
+    fun varKindAt(index: Int): VarKind = varKinds[varKindOrdinals[index].toInt()]
+
+    fun rawVarAt(index: Int): RawViewVar {
+        return RawViewVar(
+            variableName = names[index],
+            varKind = varKindAt(index),
+            offset = offsets[index],
+            varHandle = VarHandle(
+                sourceKind = sourceKinds[sourceKindOrdinals[index].toInt()],
+                symbolName = symbolNames[index],
+                offset = handleOffsets[index]
+            ),
+            typeHint = typeHints[index]
+        )
+    }
+
+    private fun indexOf(name: String): Int {
+        var low = 0
+        var high = names.size - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val cmp = names[mid].compareTo(name)
+            when {
+                cmp < 0 -> low = mid + 1
+                cmp > 0 -> high = mid - 1
+                else -> return mid
+            }
+        }
+        return -1
+    }
+
+    /**
+     * Collects variables in any order. As with a map, setting the same name
+     * twice keeps the last value.
+     */
+    class Builder(expectedSize: Int = 8) {
+        private var size = 0
+        private var names = arrayOfNulls<String>(expectedSize)
+        private var varKindOrdinals = ByteArray(expectedSize)
+        private var offsets = IntArray(expectedSize)
+        private var sourceKindOrdinals = ByteArray(expectedSize)
+        private var symbolNames = arrayOfNulls<String>(expectedSize)
+        private var handleOffsets = IntArray(expectedSize)
+        private var typeHints = arrayOfNulls<String>(expectedSize)
+
+        operator fun set(name: ViewVariableName, rawVar: RawViewVar) {
+            add(
+                name,
+                rawVar.varKind,
+                rawVar.offset,
+                rawVar.varHandle.sourceKind,
+                rawVar.varHandle.symbolName,
+                rawVar.varHandle.offset,
+                rawVar.typeHint
+            )
+        }
+
+        fun add(
+            name: ViewVariableName,
+            varKind: VarKind,
+            offset: Int,
+            sourceKind: SourceKind,
+            symbolName: String,
+            handleOffset: Int,
+            typeHint: String = ViewVariableTypeHints.NONE
+        ) {
+            if (size == names.size) {
+                grow()
+            }
+            names[size] = name
+            varKindOrdinals[size] = varKind.ordinal.toByte()
+            offsets[size] = offset
+            sourceKindOrdinals[size] = sourceKind.ordinal.toByte()
+            symbolNames[size] = symbolName
+            handleOffsets[size] = handleOffset
+            typeHints[size] = typeHint
+            size++
+        }
+
+        private fun grow() {
+            val newCapacity = maxOf(4, names.size * 2)
+            names = names.copyOf(newCapacity)
+            varKindOrdinals = varKindOrdinals.copyOf(newCapacity)
+            offsets = offsets.copyOf(newCapacity)
+            sourceKindOrdinals = sourceKindOrdinals.copyOf(newCapacity)
+            symbolNames = symbolNames.copyOf(newCapacity)
+            handleOffsets = handleOffsets.copyOf(newCapacity)
+            typeHints = typeHints.copyOf(newCapacity)
+        }
+
+        fun build(): ViewVariablesWithRawVars {
+            if (size == 0) {
+                return EMPTY
+            }
+            // Stable sort by name, then keep the last entry for each name
+            val order = (0 until size).sortedWith { a, b -> names[a]!!.compareTo(names[b]!!) }
+            val kept = ArrayList<Int>(size)
+            for (index in order) {
+                if (kept.isNotEmpty() && names[kept.last()] == names[index]) {
+                    kept[kept.size - 1] = index
+                } else {
+                    kept.add(index)
+                }
+            }
+            return ViewVariablesWithRawVars(
+                names = Array(kept.size) { names[kept[it]]!! },
+                varKindOrdinals = ByteArray(kept.size) { varKindOrdinals[kept[it]] },
+                offsets = IntArray(kept.size) { offsets[kept[it]] },
+                sourceKindOrdinals = ByteArray(kept.size) { sourceKindOrdinals[kept[it]] },
+                symbolNames = Array(kept.size) { symbolNames[kept[it]]!! },
+                handleOffsets = IntArray(kept.size) { handleOffsets[kept[it]] },
+                typeHints = Array(kept.size) { typeHints[kept[it]]!! },
+            )
+        }
+    }
+
+    companion object {
+        val EMPTY = ViewVariablesWithRawVars(
+            emptyArray(),
+            ByteArray(0),
+            IntArray(0),
+            ByteArray(0),
+            emptyArray(),
+            IntArray(0),
+            emptyArray()
+        )
+    }
+}
@@ -0,0 +1,76 @@
+package com.daveme.chocolateCakePHP.test
+
+import com.daveme.chocolateCakePHP.*
+import com.intellij.lang.ASTNode
+import com.intellij.psi.PsiFileFactory
+import com.intellij.psi.tree.IElementType
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import com.jetbrains.php.lang.PhpFileType
+import com.jetbrains.php.lang.PhpLanguage
+
+/**
+ * Checks the memoized element type helpers agree with plain debug name comparison
+ * over a large generated controller, and only compare each element type's name once.
+ */
+class ASTNodesTest : BasePlatformTestCase() {
+
+    private fun largeControllerText(): String {
+        val text = StringBuilder()
+        text.append("<?php\nnamespace App\\Controller;\n\nclass MoviesController extends AppController\n{\n")
+        repeat(500) { action ->
+            text.append("    public function action$action(\$id = null)\n    {\n")
+            text.append("        \$movie = \$this->Movies->get(\$id);\n")
+            text.append("        \$this->set('movie', \$movie);\n")
+            text.append("        \$this->set(compact('id'));\n")
+            text.append("        \$this->viewBuilder()->setTemplate('view$action');\n")
+            text.append("    }\n\n")
+        }
+        text.append("}\n")
+        return text.toString()
+    }
+
+    private fun collectNodes(root: ASTNode): List<ASTNode> {
+        val result = ArrayList<ASTNode>()
+        fun visit(node: ASTNode) {
+            result.add(node)
+            var child = node.firstChildNode
+            while (child != null) {
+                visit(child)
+                child = child.treeNext
+            }
+        }
+        visit(root)
+        return result
+    }
+
+    fun `test memoized checks agree with name comparison`() {
+        val psiFile = PsiFileFactory.getInstance(project)
+            .createFileFromText("MoviesController.php", PhpFileType.INSTANCE, largeControllerText())
+        val nodes = collectNodes(psiFile.node)
+
+        for (node in nodes) {
+            val name = node.elementType.toString()
+            assertEquals(name, equalsAlphaIgnoreCase(name, "VARIABLE"), node.isVariable())
+            assertEquals(name, equalsAlphaIgnoreCase(name, "CLASS_METHOD"), node.isClassMethod())
+            assertEquals(name, equalsAlphaIgnoreCase(name, "IDENTIFIER"), node.isIdentifier())
+        }
+        assertTrue(nodes.any { it.isClassMethod() })
+        assertTrue(nodes.any { it.isVariable() })
+    }
+
+    fun `test memoized checks read each element type name once`() {
+        var nameReads = 0
+        val elementType = object : IElementType("COUNTED_VARIABLE", PhpLanguage.INSTANCE) {
+            override fun toString(): String {
+                nameReads++
+                return super.toString()
+            }
+        }
+        val matcher = ElementTypeNameMatcher("COUNTED_VARIABLE")
+        nameReads = 0
+
+        repeat(1_000) { assertTrue(matcher.matches(elementType)) }
+        assertEquals(1, nameReads)
+    }
+
+}
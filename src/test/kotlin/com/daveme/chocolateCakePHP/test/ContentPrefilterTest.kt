@@ -0,0 +1,69 @@
+package com.daveme.chocolateCakePHP.test
+
+import com.daveme.chocolateCakePHP.ContentPrefilter
+import com.daveme.chocolateCakePHP.PhpTokenPrescan
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import java.io.File
+
+class ContentPrefilterTest : BasePlatformTestCase() {
+
+    override fun getTestDataPath(): String {
+        return "src/test/fixtures"
+    }
+
+    private fun scan(text: String) = ContentPrefilter.scan(text.toByteArray())
+
+    fun `test finds each pattern`() {
+        assertEquals(ContentPrefilter.RENDER_CALL, scan("<?php \$this->render('view');"))
+        assertEquals(ContentPrefilter.ELEMENT_CALL, scan("<?= \$this->element('menu') ?>"))
+        assertEquals(ContentPrefilter.SET_CALL, scan("<?php \$this->set('movie', \$movie);"))
+        assertEquals(ContentPrefilter.VIEW_FIELD, scan("<?php \$this->view = 'other';"))
+        assertEquals(ContentPrefilter.COMPACT_CALL, scan("<?php \$x = compact('movie');"))
+        assertEquals(ContentPrefilter.CLASS_KEYWORD, scan("<?php final class MoviesController {}"))
+        assertEquals(ContentPrefilter.ASSOCIATION_CALL, scan("<?php \$this->belongsToMany('Tags');"))
+        assertEquals(ContentPrefilter.ASSOCIATION_CALL, scan("<?php \$this->hasMany('Comments');"))
+        assertEquals(ContentPrefilter.FINDER_METHOD, scan("<?php public function findOwnedBy(\$query) {}"))
+        assertEquals(ContentPrefilter.BEHAVIOR_CALL, scan("<?php \$this->addBehavior('Timestamp');"))
+        assertEquals(
+            ContentPrefilter.VIEW_FIELD or ContentPrefilter.VIEW_BUILDER,
+            scan("<?php \$this->viewBuilder()->setTemplate('x');")
+        )
+    }
+
+    fun `test ignores case and whitespace`() {
+        assertEquals(ContentPrefilter.RENDER_CALL, scan("<?php \$this -> Render (\n'view');"))
+        assertEquals(ContentPrefilter.SET_CALL, scan("<?php \$this->SET\t('a', 1);"))
+        assertEquals(ContentPrefilter.COMPACT_CALL, scan("<?php COMPACT ('a');"))
+    }
+
+    fun `test finds nothing in unrelated content`() {
+        assertEquals(0, scan("<?php function render_page(\$set) { return \$set->count(); }"))
+        assertEquals(0, scan(""))
+    }
+
+    fun `test overlapping patterns are all found`() {
+        // "->set(" after a failed "->setTemplate" style prefix, and "->view" inside "->viewBuilder"
+        val bits = scan("<?php \$a->se->set(1); \$b->viewbuilder;")
+        assertEquals(ContentPrefilter.SET_CALL or ContentPrefilter.VIEW_FIELD or ContentPrefilter.VIEW_BUILDER, bits)
+    }
+
+    fun `test prefilter never rejects a file the token prescan accepts`() {
+        val phpFiles = File(testDataPath).walkTopDown()
+            .filter { it.isFile && it.extension == "php" }
+            .toList()
+        assertTrue("Should find fixture PHP files", phpFiles.isNotEmpty())
+
+        for (file in phpFiles) {
+            val bytes = file.readBytes()
+            val bits = ContentPrefilter.scan(bytes)
+            val prescan = PhpTokenPrescan.scan(project, String(bytes))
+            if (prescan.hasSetCalls) {
+                assertTrue("set calls in ${file.path}", (bits and ContentPrefilter.SET_CALL) != 0)
+            }
+            if (prescan.hasViewFileCandidates) {
+                assertTrue("view file candidates in ${file.path}", (bits and ContentPrefilter.VIEW_FILE_REFERENCES) != 0)
+            }
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.daveme.chocolateCakePHP.test
+
+import com.daveme.chocolateCakePHP.view.viewfileindex.ElementType
+import com.daveme.chocolateCakePHP.view.viewfileindex.ViewReferenceData
+import com.daveme.chocolateCakePHP.view.viewfileindex.ViewReferenceDataExternalizer
+import com.daveme.chocolateCakePHP.view.viewvariableindex.*
+import junit.framework.TestCase
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutput
+import java.io.DataOutputStream
+
+/**
+ * Round-trip and size checks for the compact index value formats, compared to
+ * the fixed-width format they replaced, over a generated 10k-controller project.
+ */
+class IndexExternalizerTest : TestCase() {
+
+    private val controllerCount = 10_000
+    private val actionsPerController = 6
+    private val variablesPerAction = 5
+
+    private val actionNames = listOf("index", "view", "add", "edit", "delete", "search")
+    private val variableNames = listOf("movie", "movies", "title", "user", "paginationOptions", "count")
+
+    private fun generateViewVariables(): List<ViewVariablesWithRawVars> {
+        val result = ArrayList<ViewVariablesWithRawVars>(controllerCount * actionsPerController)
+        repeat(controllerCount) { controller ->
+            var offset = 200 + controller % 97
+            repeat(actionsPerController) { action ->
+                val variables = ViewVariablesWithRawVars.Builder()
+                repeat(variablesPerAction) { variable ->
+                    val name = variableNames[(action + variable) % variableNames.size]
+                    offset += 40 + (variable * 13)
+                    val sourceKind = SourceKind.values()[(controller + variable) % SourceKind.values().size]
+                    val symbolName = if (variable % 3 == 0) "${name}Entity" else name
+                    variables[name] = RawViewVar(
+                        variableName = name,
+                        varKind = VarKind.values()[(action + variable) % 3],
+                        offset = offset,
+                        varHandle = VarHandle(sourceKind, symbolName, offset - 25)
+                    )
+                }
+                result.add(variables.build())
+            }
+        }
+        return result
+    }
+
+    private fun generateViewReferences(): List<List<ViewReferenceData>> {
+        return List(controllerCount) { controller ->
+            List(actionsPerController) { action ->
+                val methodName = if (action % 2 == 0) "render" else actionNames[action]
+                val elementType = if (action % 2 == 0) ElementType.METHOD_REFERENCE else ElementType.METHOD
+                ViewReferenceData(methodName, elementType, 300 + controller % 50 + action * 180)
+            }
+        }
+    }
+
+    private fun <T> serialize(values: List<T>, writer: (DataOutput, T) -> Unit): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { out ->
+            values.forEach { writer(out, it) }
+        }
+        return bytes.toByteArray()
+    }
+
+    fun `test raw view variables round trip and shrink`() {
+        val values = generateViewVariables()
+
+        val legacyBytes = serialize(values, ::writeLegacyRawVars)
+        val compactBytes = serialize(values) { out, value -> ViewVariableRawVarsExternalizer.save(out, value) }
+
+        val input = DataInputStream(ByteArrayInputStream(compactBytes))
+        val read = values.map { ViewVariableRawVarsExternalizer.read(input) }
+
+        assertEquals(values, read)
+        assertEquals("Should consume every byte", 0, input.available())
+        assertTrue(
+            "Compact format (${compactBytes.size} bytes) should be less than half of legacy (${legacyBytes.size} bytes)",
+            compactBytes.size * 2 < legacyBytes.size
+        )
+    }
+
+    fun `test view references round trip and shrink`() {
+        val values = generateViewReferences()
+
+        val legacyBytes = serialize(values, ::writeLegacyViewReferences)
+        val compactBytes = serialize(values) { out, value -> ViewReferenceDataExternalizer.save(out, value) }
+
+        val input = DataInputStream(ByteArrayInputStream(compactBytes))
+        val read = values.map { ViewReferenceDataExternalizer.read(input) }
+
+        assertEquals(values, read)
+        assertEquals("Should consume every byte", 0, input.available())
+        assertTrue(
+            "Compact format (${compactBytes.size} bytes) should be smaller than legacy (${legacyBytes.size} bytes)",
+            compactBytes.size < legacyBytes.size
+        )
+    }
+
+    fun `test negative and unsorted offsets round trip`() {
+        val builder = ViewVariablesWithRawVars.Builder()
+        builder["b"] = RawViewVar("b", VarKind.MIXED_TUPLE, 5000, VarHandle(SourceKind.UNKNOWN, "a|b", 10))
+        builder["a"] = RawViewVar("a", VarKind.PAIR, 10, VarHandle(SourceKind.PARAM, "a", 9000), "\\App\\Model\\Entity\\Movie")
+        builder["c"] = RawViewVar("c", VarKind.VARIABLE_ARRAY, -1, VarHandle(SourceKind.LOCAL, "a|b", -1))
+        val value = builder.build()
+
+        val bytes = serialize(listOf(value)) { out, v -> ViewVariableRawVarsExternalizer.save(out, v) }
+        val read = ViewVariableRawVarsExternalizer.read(DataInputStream(ByteArrayInputStream(bytes)))
+        assertEquals(value, read)
+    }
+
+    // The fixed-width formats used before the compact encoding.
+
+    private fun writeLegacyRawVars(out: DataOutput, value: ViewVariablesWithRawVars) {
+        out.writeInt(value.size)
+        value.forEach { (key, rawVar) ->
+            out.writeUTF(key)
+            out.writeUTF(rawVar.variableName)
+            out.writeInt(rawVar.varKind.ordinal)
+            out.writeInt(rawVar.offset)
+            out.writeInt(rawVar.varHandle.sourceKind.ordinal)
+            out.writeUTF(rawVar.varHandle.symbolName)
+            out.writeInt(rawVar.varHandle.offset)
+        }
+    }
+
+    private fun writeLegacyViewReferences(out: DataOutput, value: List<ViewReferenceData>) {
+        out.writeInt(value.size)
+        value.forEach { data ->
+            out.writeUTF(data.methodName)
+            out.writeByte(data.elementType.ordinal)
+            out.writeInt(data.offset)
+        }
+    }
+
+}
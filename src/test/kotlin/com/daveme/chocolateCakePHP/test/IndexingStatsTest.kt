@@ -0,0 +1,59 @@
+package com.daveme.chocolateCakePHP.test
+
+import com.daveme.chocolateCakePHP.IndexedFileCost
+import com.daveme.chocolateCakePHP.IndexerStats
+import com.daveme.chocolateCakePHP.IndexingStats
+import com.daveme.chocolateCakePHP.jsonParse
+import junit.framework.TestCase
+
+class IndexingStatsTest : TestCase() {
+
+    override fun tearDown() {
+        IndexingStats.reset()
+        super.tearDown()
+    }
+
+    private fun cost(path: String, wallTimeMicros: Long) =
+        IndexedFileCost(path, wallTimeMicros, nodesVisited = 100, keysEmitted = 2, serializedBytes = 40)
+
+    fun `test totals and histograms`() {
+        val stats = IndexerStats("ViewFileIndex")
+        stats.add(cost("/app/src/Controller/MoviesController.php", 3))
+        stats.add(cost("/app/src/Controller/UsersController.php", 0))
+
+        assertEquals(2L, stats.filesIndexed)
+        assertEquals(3L, stats.totalWallTimeMicros)
+        assertEquals(200L, stats.totalNodesVisited)
+        assertEquals(1L, stats.wallTimeMicros.buckets[0])
+        // 3 falls in [2, 4)
+        assertEquals(1L, stats.wallTimeMicros.buckets[2])
+    }
+
+    fun `test slowest files are bounded and sorted`() {
+        val stats = IndexerStats("ViewVariableIndex")
+        repeat(IndexerStats.MAX_SLOWEST_FILES + 10) {
+            stats.add(cost("/app/File$it.php", it.toLong()))
+        }
+
+        val slowest = stats.slowestFiles()
+        assertEquals(IndexerStats.MAX_SLOWEST_FILES, slowest.size)
+        assertEquals("/app/File59.php", slowest.first().path)
+        assertEquals(10L, slowest.last().wallTimeMicros)
+    }
+
+    fun `test report is valid json`() {
+        IndexingStats.statsFor("ViewFileIndex").add(cost("C:\\app\\\"quoted\".php", 5))
+
+        @Suppress("UNCHECKED_CAST")
+        val report = jsonParse(IndexingStats.toJson()) as Map<String, Any?>
+        val indexers = report["indexers"] as List<*>
+        assertEquals(1, indexers.size)
+
+        val indexer = indexers[0] as Map<*, *>
+        assertEquals("ViewFileIndex", indexer["indexer"])
+        assertEquals(1.0, indexer["filesIndexed"])
+        val slowestFiles = indexer["slowestFiles"] as List<*>
+        assertEquals("C:\\app\\\"quoted\".php", (slowestFiles[0] as Map<*, *>)["path"])
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.daveme.chocolateCakePHP.test
+
+import com.daveme.chocolateCakePHP.PhpPrescanResult
+import com.daveme.chocolateCakePHP.PhpTokenPrescan
+import com.daveme.chocolateCakePHP.view.viewfileindex.ViewFileASTCollector
+import com.intellij.psi.PsiFileFactory
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import com.jetbrains.php.lang.PhpFileType
+import java.io.File
+
+/**
+ * The token pre-pass must never report "nothing here" for a file the AST
+ * parsing would find something in, otherwise index entries are lost.
+ */
+class PhpTokenPrescanTest : BasePlatformTestCase() {
+
+    override fun getTestDataPath(): String {
+        return "src/test/fixtures"
+    }
+
+    fun `test prescan never misses facts found by the AST for fixture files`() {
+        val phpFiles = File(testDataPath).walkTopDown()
+            .filter { it.isFile && it.extension == "php" }
+            .sortedBy { it.path }
+            .toList()
+        assertTrue("Should find fixture PHP files", phpFiles.isNotEmpty())
+
+        for (file in phpFiles) {
+            val text = file.readText()
+            val prescan = PhpTokenPrescan.scan(project, text)
+            val psiFile = PsiFileFactory.getInstance(project)
+                .createFileFromText(file.name, PhpFileType.INSTANCE, text)
+            val facts = ViewFileASTCollector.collect(
+                psiFile.node,
+                collectViewBuilderCalls = true,
+                collectMethods = true
+            )
+
+            if (facts.hasExplicitReferences()) {
+                assertTrue("view file candidates in ${file.path}", prescan.hasViewFileCandidates)
+            }
+            if (facts.methods.isNotEmpty()) {
+                assertTrue("functions in ${file.path}", prescan.hasFunctions)
+            }
+            if (text.contains("\$this->set(")) {
+                assertTrue("set calls in ${file.path}", prescan.hasSetCalls)
+            }
+        }
+    }
+
+    fun `test finds candidates regardless of case and whitespace`() {
+        val text = """
+            <?php
+            class MovieController extends Controller {
+                public function index() {
+                    ${'$'}this ->  Render('movie/list');
+                    ${'$'}this->/* comment */set('title', 'Movies');
+                }
+            }
+        """.trimIndent()
+
+        val prescan = PhpTokenPrescan.scan(project, text)
+        assertEquals(
+            PhpPrescanResult(hasViewFileCandidates = true, hasSetCalls = true, hasFunctions = true),
+            prescan
+        )
+    }
+
+    fun `test reports nothing for plain library code`() {
+        val text = """
+            <?php
+            namespace Vendor\Library;
+
+            ${'$'}render = 'render';
+            echo render(${'$'}render);
+            const ELEMENT = 'element';
+        """.trimIndent()
+
+        assertEquals(PhpPrescanResult.NOTHING, PhpTokenPrescan.scan(project, text))
+    }
+
+    fun `test ignores identifiers in strings and comments`() {
+        val text = """
+            <?php
+            // ${'$'}this->render('commented');
+            ${'$'}message = 'call ->element() here';
+        """.trimIndent()
+
+        val prescan = PhpTokenPrescan.scan(project, text)
+        assertFalse(prescan.hasViewFileCandidates)
+        assertFalse(prescan.hasFunctions)
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.daveme.chocolateCakePHP.test
+
+import com.daveme.chocolateCakePHP.view.viewvariableindex.SingleFlight
+import com.intellij.openapi.progress.ProcessCanceledException
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class SingleFlightTest : BasePlatformTestCase() {
+
+    private val waiters = 8
+
+    private fun startWaiters(
+        singleFlight: SingleFlight<String, String>,
+        compute: () -> String
+    ): List<String> {
+        val executor = Executors.newFixedThreadPool(waiters)
+        try {
+            val ready = CountDownLatch(waiters)
+            val futures = (0 until waiters).map {
+                executor.submit(Callable {
+                    ready.countDown()
+                    singleFlight.run("Movie/index", compute)
+                })
+            }
+            ready.await(10, TimeUnit.SECONDS)
+            // Give the waiters time to find the call in flight
+            Thread.sleep(200)
+            return futures.map { it.get(30, TimeUnit.SECONDS) }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    fun `test concurrent callers share one computation`() {
+        val singleFlight = SingleFlight<String, String>()
+        val computations = AtomicInteger()
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val leader = Executors.newSingleThreadExecutor()
+        try {
+            val leaderResult = leader.submit(Callable {
+                singleFlight.run("Movie/index") {
+                    computations.incrementAndGet()
+                    started.countDown()
+                    release.await(30, TimeUnit.SECONDS)
+                    "table"
+                }
+            })
+            assertTrue(started.await(10, TimeUnit.SECONDS))
+
+            val releaser = Thread {
+                Thread.sleep(400)
+                release.countDown()
+            }
+            releaser.start()
+            val results = startWaiters(singleFlight) {
+                computations.incrementAndGet()
+                "other table"
+            }
+            releaser.join()
+
+            assertEquals("table", leaderResult.get(30, TimeUnit.SECONDS))
+            assertEquals(List(waiters) { "table" }, results)
+            assertEquals(1, computations.get())
+        } finally {
+            leader.shutdownNow()
+        }
+    }
+
+    fun `test a cancelled caller does not cancel the others`() {
+        val singleFlight = SingleFlight<String, String>()
+        val computations = AtomicInteger()
+        val started = CountDownLatch(1)
+        val cancel = CountDownLatch(1)
+        val leader = Executors.newSingleThreadExecutor()
+        try {
+            val leaderResult = leader.submit(Callable {
+                singleFlight.run("Movie/index") {
+                    computations.incrementAndGet()
+                    started.countDown()
+                    cancel.await(30, TimeUnit.SECONDS)
+                    throw ProcessCanceledException()
+                }
+            })
+            assertTrue(started.await(10, TimeUnit.SECONDS))
+
+            val canceller = Thread {
+                Thread.sleep(400)
+                cancel.countDown()
+            }
+            canceller.start()
+            val results = startWaiters(singleFlight) {
+                computations.incrementAndGet()
+                // Slow enough that the other waiters find this one in flight
+                Thread.sleep(200)
+                "table"
+            }
+            canceller.join()
+
+            try {
+                leaderResult.get(30, TimeUnit.SECONDS)
+                fail("The cancelled caller should see its own cancellation")
+            } catch (e: ExecutionException) {
+                assertTrue(e.cause is ProcessCanceledException)
+            }
+            assertEquals(List(waiters) { "table" }, results)
+            // The cancelled computation, then one waiter taking over for the rest
+            assertEquals(2, computations.get())
+        } finally {
+            leader.shutdownNow()
+        }
+    }
+
+    fun `test a nested call for the same key computes directly`() {
+        val singleFlight = SingleFlight<String, String>()
+        val result = singleFlight.run("Movie/index") {
+            singleFlight.run("Movie/index") { "inner" } + " outer"
+        }
+        assertEquals("inner outer", result)
+    }
+}
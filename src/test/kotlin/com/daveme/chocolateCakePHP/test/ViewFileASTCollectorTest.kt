@@ -0,0 +1,558 @@
+package com.daveme.chocolateCakePHP.test
+
+import com.daveme.chocolateCakePHP.*
+import com.daveme.chocolateCakePHP.view.isControllerActionName
+import com.daveme.chocolateCakePHP.view.viewfileindex.*
+import com.intellij.lang.ASTNode
+import com.intellij.psi.PsiFileFactory
+import com.intellij.psi.TokenType
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import com.jetbrains.php.lang.PhpFileType
+import com.jetbrains.php.lang.lexer.PhpTokenTypes
+import java.io.File
+
+/**
+ * Verifies the single-pass [ViewFileASTCollector] produces exactly the same facts,
+ * in the same order, as the separate per-pattern AST walks it replaced. Since
+ * [ViewFileDataIndexer] derives its keys and values only from these facts, equal
+ * facts mean equal index output.
+ */
+class ViewFileASTCollectorTest : BasePlatformTestCase() {
+
+    override fun getTestDataPath(): String {
+        return "src/test/fixtures"
+    }
+
+    fun `test fused collector matches multi-pass parsing for all fixture files`() {
+        val phpFiles = File(testDataPath).walkTopDown()
+            .filter { it.isFile && it.extension == "php" }
+            .sortedBy { it.path }
+            .toList()
+        assertTrue("Should find fixture PHP files", phpFiles.isNotEmpty())
+
+        for (file in phpFiles) {
+            val psiFile = PsiFileFactory.getInstance(project)
+                .createFileFromText(file.name, PhpFileType.INSTANCE, file.readText())
+            val rootNode = psiFile.node
+            val facts = ViewFileASTCollector.collect(
+                rootNode,
+                collectViewBuilderCalls = true,
+                collectMethods = true
+            )
+
+            val expectedRenderCalls = LegacyParser.findMethodCallsByName(rootNode, "render")
+                .filter { it.receiverText == "this" && it.firstParameterText != null }
+            val expectedElementCalls = LegacyParser.findMethodCallsByName(rootNode, "element")
+                .filter { it.receiverText == "this" && it.firstParameterText != null }
+            val expectedFieldAssignments = LegacyParser.findFieldAssignments(rootNode, "view")
+                .filter { it.receiverText == "this" && it.assignedValue != null }
+            val expectedViewBuilderCalls = LegacyParser.findViewBuilderCalls(rootNode)
+                .filter { it.parameterValue != null }
+            val expectedMethods = LegacyParser.findMethodDeclarations(rootNode)
+
+            assertEquals("render calls in ${file.path}", expectedRenderCalls, facts.renderCalls)
+            assertEquals("element calls in ${file.path}", expectedElementCalls, facts.elementCalls)
+            assertEquals("view assignments in ${file.path}", expectedFieldAssignments, facts.viewFieldAssignments)
+            assertEquals("viewBuilder calls in ${file.path}", expectedViewBuilderCalls, facts.viewBuilderCalls)
+            assertEquals("methods in ${file.path}", expectedMethods, facts.methods)
+        }
+    }
+
+    fun `test collects all fact kinds in one pass`() {
+        val phpCode = """
+            <?php
+            class MovieController extends Controller {
+                public function index() {
+                    ${'$'}this->render('movie/list');
+                    ${'$'}this->element('movie/card');
+                    ${'$'}other->render('ignored');
+                }
+                public function view() {
+                    ${'$'}this->view = 'movie/detail';
+                    ${'$'}this->viewBuilder()->setTemplatePath('Custom')->setTemplate('detail');
+                }
+                private function helper() {
+                }
+            }
+        """.trimIndent()
+
+        val psiFile = myFixture.configureByText(PhpFileType.INSTANCE, phpCode)
+        val facts = ViewFileASTCollector.collect(
+            psiFile.node,
+            collectViewBuilderCalls = true,
+            collectMethods = true
+        )
+
+        assertEquals(listOf("movie/list"), facts.renderCalls.map { it.firstParameterText })
+        assertEquals(listOf("movie/card"), facts.elementCalls.map { it.firstParameterText })
+        assertEquals(listOf("movie/detail"), facts.viewFieldAssignments.map { it.assignedValue })
+        assertEquals(
+            listOf("setTemplatePath" to "Custom", "setTemplate" to "detail"),
+            facts.viewBuilderCalls.sortedBy { it.offset }.map { it.methodName to it.parameterValue }
+        )
+        assertEquals(listOf("index", "view", "helper"), facts.methods.map { it.name })
+        assertEquals(listOf(true, true, false), facts.methods.map { it.isPublic })
+    }
+
+    fun `test skips optional passes when disabled`() {
+        val phpCode = """
+            <?php
+            class MovieController extends Controller {
+                public function index() {
+                    ${'$'}this->viewBuilder()->setTemplate('detail');
+                }
+            }
+        """.trimIndent()
+
+        val psiFile = myFixture.configureByText(PhpFileType.INSTANCE, phpCode)
+        val facts = ViewFileASTCollector.collect(
+            psiFile.node,
+            collectViewBuilderCalls = false,
+            collectMethods = false
+        )
+
+        assertTrue(facts.viewBuilderCalls.isEmpty())
+        assertTrue(facts.methods.isEmpty())
+        assertFalse(facts.hasExplicitReferences())
+    }
+
+    fun `test collects set calls per method for the view variable index`() {
+        val phpCode = """
+            <?php
+            class MovieController extends Controller {
+                public function beforeFilter() {
+                    ${'$'}this->set('ignored', 1);
+                }
+                public function index() {
+                    ${'$'}movies = [];
+                    ${'$'}this->set('movies', ${'$'}movies);
+                    ${'$'}this->render('movie/list');
+                }
+                public function view() {
+                    ${'$'}this->set(['title' => 'Movie', 'count' => 2]);
+                }
+            }
+        """.trimIndent()
+
+        val psiFile = myFixture.configureByText(PhpFileType.INSTANCE, phpCode)
+        val facts = ViewFileASTCollector.collect(
+            psiFile.node,
+            collectViewBuilderCalls = false,
+            collectMethods = true,
+            collectSetCalls = true
+        )
+
+        val setCallNames = facts.methods.associate { method ->
+            method.name to facts.setCallsByMethodOffset[method.offset].orEmpty().map { it.variableName }
+        }
+        assertEquals(listOf("ignored"), setCallNames["beforeFilter"])
+        assertEquals(listOf("movies"), setCallNames["index"])
+        assertEquals(listOf("title", "count"), setCallNames["view"])
+        assertEquals(listOf("movie/list"), facts.renderCalls.map { it.firstParameterText })
+
+        val actions = facts.methods.filter { it.isPublic && isControllerActionName(it.name) }
+        assertEquals(listOf("index", "view"), actions.map { it.name })
+    }
+
+    // The multi-pass parsing that ViewFileDataIndexer used before the fused visitor.
+    private object LegacyParser {
+
+        // Robust string literal extraction that handles different PHP plugin versions
+        private fun extractStringLiteral(node: ASTNode): String? {
+            // Accept either STRING wrapper or direct STRING_LITERAL token
+            val strNode = node.takeIf { it.isString() } ?: node
+
+            // Try child token
+            val lit = strNode.findChildByType(PhpTokenTypes.STRING_LITERAL)
+            val text = (lit ?: strNode).text
+            // Strip quotes if present
+            return text.removeSurrounding("'").removeSurrounding("\"")
+        }
+
+        // AST-based parsing implementation (tested and proven)
+        fun findMethodCallsByName(node: ASTNode, methodName: String): List<MethodCallInfo> {
+            val result = mutableListOf<MethodCallInfo>()
+            findMethodCallsRecursive(node, methodName, result)
+            return result
+        }
+
+        private fun findMethodCallsRecursive(node: ASTNode, targetMethodName: String, result: MutableList<MethodCallInfo>) {
+            // Check if this node represents a method reference
+            if (isMethodReference(node)) {
+                val methodCall = parseMethodCall(node, targetMethodName)
+                if (methodCall != null) {
+                    result.add(methodCall)
+                }
+            }
+
+            // Recursively check child nodes - avoid toList() allocation
+            var child = node.firstChildNode
+            while (child != null) {
+                findMethodCallsRecursive(child, targetMethodName, result)
+                child = child.treeNext
+            }
+        }
+
+        private fun isMethodReference(node: ASTNode): Boolean {
+            return node.isMethodReference()
+        }
+
+        private fun parseMethodCall(node: ASTNode, targetMethodName: String): MethodCallInfo? {
+            // Look for VARIABLE, arrow, identifier, parameter list pattern
+            var receiverName: String? = null
+            var methodName: String? = null
+            var parameterValue: String? = null
+
+            // Parse structure based on AST: VARIABLE -> arrow -> identifier -> (...) - avoid toList()
+            var child = node.firstChildNode
+            while (child != null) {
+                when {
+                    child.isVariable() -> {
+                        receiverName = child.text.removePrefix("$")
+                    }
+                    child.elementType == PhpTokenTypes.IDENTIFIER -> {
+                        methodName = child.text
+                    }
+                    child.isParameterList() -> {
+                        // Extract the first string parameter, ignoring additional parameters
+                        // Both element() and render() accept optional parameters - we only need the first one
+                        var paramChild = child.firstChildNode
+                        while (paramChild != null) {
+                            // Skip whitespace and commas to find actual parameters
+                            if (paramChild.elementType != TokenType.WHITE_SPACE && paramChild.elementType != PhpTokenTypes.opCOMMA) {
+                                // Try to extract string literal from the first parameter we encounter
+                                val extractedValue = extractStringLiteral(paramChild)
+                                if (extractedValue != null) {
+                                    parameterValue = extractedValue
+                                    break  // Found the first string parameter, stop looking
+                                }
+                            }
+                            paramChild = paramChild.treeNext
+                        }
+                    }
+                }
+                child = child.treeNext
+            }
+
+            // Only return if method name matches target and we have all required parts
+            if (methodName?.equals(targetMethodName, ignoreCase = true) == true && 
+                receiverName != null && parameterValue != null) {
+                return MethodCallInfo(
+                    methodName = methodName,
+                    receiverText = receiverName,
+                    firstParameterText = parameterValue,
+                    offset = node.startOffset
+                )
+            }
+
+            return null
+        }
+
+        fun findMethodDeclarations(node: ASTNode): List<MethodInfo> {
+            val result = mutableListOf<MethodInfo>()
+            findMethodDeclarationsRecursive(node, result)
+            return result
+        }
+
+        private fun findMethodDeclarationsRecursive(node: ASTNode, result: MutableList<MethodInfo>) {
+            // Check if this node represents a method declaration
+            if (isMethodDeclaration(node)) {
+                val methodInfo = parseMethodDeclaration(node)
+                if (methodInfo != null) {
+                    result.add(methodInfo)
+                }
+            }
+
+            // Recursively check child nodes - avoid toList() allocation
+            var child = node.firstChildNode
+            while (child != null) {
+                findMethodDeclarationsRecursive(child, result)
+                child = child.treeNext
+            }
+        }
+
+        private fun isMethodDeclaration(node: ASTNode): Boolean {
+            return node.isClassMethod()
+        }
+
+        private fun parseMethodDeclaration(node: ASTNode): MethodInfo? {
+            var isPublic = true  // PHP default visibility is public if unspecified
+            var methodName: String? = null
+
+            var child = node.firstChildNode
+            while (child != null) {
+                when {
+                    child.isModifierList() -> {
+                        var m = child.firstChildNode
+                        while (m != null) {
+                            when (m.elementType) {
+                                PhpTokenTypes.kwPUBLIC    -> isPublic = true
+                                PhpTokenTypes.kwPRIVATE,
+                                PhpTokenTypes.kwPROTECTED -> isPublic = false
+                            }
+                            m = m.treeNext
+                        }
+                    }
+                    child.elementType == PhpTokenTypes.IDENTIFIER -> methodName = child.text
+                }
+                child = child.treeNext
+            }
+
+            return methodName?.let {
+                MethodInfo(name = it, isPublic = isPublic, offset = node.startOffset)
+            }
+        }
+
+        fun findFieldAssignments(node: ASTNode, fieldName: String): List<FieldAssignmentInfo> {
+            val result = mutableListOf<FieldAssignmentInfo>()
+            findFieldAssignmentsRecursive(node, fieldName, result)
+            return result
+        }
+
+        private fun findFieldAssignmentsRecursive(node: ASTNode, targetFieldName: String, result: MutableList<FieldAssignmentInfo>) {
+            // Check if this node represents an assignment expression
+            if (node.isAssignmentExpression()) {
+                val fieldAssignment = parseFieldAssignment(node, targetFieldName)
+                if (fieldAssignment != null) {
+                    result.add(fieldAssignment)
+                }
+            }
+
+            // Recursively check child nodes
+            var child = node.firstChildNode
+            while (child != null) {
+                findFieldAssignmentsRecursive(child, targetFieldName, result)
+                child = child.treeNext
+            }
+        }
+
+        private fun parseFieldAssignment(node: ASTNode, targetFieldName: String): FieldAssignmentInfo? {
+            // Look for: $this->view = 'template_name'
+            // AST structure: ASSIGNMENT_EXPRESSION -> FIELD_REFERENCE (left) -> STRING (right)
+            var fieldReference: ASTNode? = null
+            var assignedValue: String? = null
+
+            var child = node.firstChildNode
+            while (child != null) {
+                when {
+                    child.isFieldReference() -> {
+                        fieldReference = child
+                    }
+                    child.isString() -> {
+                        assignedValue = extractStringLiteral(child)
+                    }
+                }
+                child = child.treeNext
+            }
+
+            // Parse the field reference to ensure it's $this->view
+            if (fieldReference != null && assignedValue != null) {
+                var receiverName: String? = null
+                var fieldName: String? = null
+
+                var refChild = fieldReference.firstChildNode
+                while (refChild != null) {
+                    when {
+                        refChild.isVariable() -> {
+                            receiverName = refChild.text.removePrefix("$")
+                        }
+                        refChild.elementType == PhpTokenTypes.IDENTIFIER -> {
+                            fieldName = refChild.text
+                        }
+                    }
+                    refChild = refChild.treeNext
+                }
+
+                if (receiverName == "this" && fieldName?.equals(targetFieldName, ignoreCase = true) == true) {
+                    return FieldAssignmentInfo(
+                        fieldName = fieldName,
+                        receiverText = receiverName,
+                        assignedValue = assignedValue,
+                        offset = fieldReference.startOffset
+                    )
+                }
+            }
+
+            return null
+        }
+
+        fun findViewBuilderCalls(node: ASTNode): List<ViewBuilderCallInfo> {
+            val result = mutableListOf<ViewBuilderCallInfo>()
+            findViewBuilderCallsRecursive(node, result, -1)
+            return result
+        }
+
+        private fun findViewBuilderCallsRecursive(
+            node: ASTNode,
+            result: MutableList<ViewBuilderCallInfo>,
+            containingMethodOffset: Int = -1
+        ) {
+            // Track when we enter a CLASS_METHOD
+            val currentMethodOffset = if (node.isClassMethod()) {
+                node.startOffset
+            } else {
+                containingMethodOffset
+            }
+
+            // Check if this node represents a method reference
+            if (node.isMethodReference()) {
+                val viewBuilderCall = parseViewBuilderCall(node, currentMethodOffset)
+                if (viewBuilderCall != null) {
+                    result.add(viewBuilderCall)
+                }
+            }
+
+            // Recursively check child nodes
+            var child = node.firstChildNode
+            while (child != null) {
+                findViewBuilderCallsRecursive(child, result, currentMethodOffset)
+                child = child.treeNext
+            }
+        }
+
+        private fun parseViewBuilderCall(
+            node: ASTNode,
+            containingMethodOffset: Int
+        ): ViewBuilderCallInfo? {
+            // Look for:
+            //   1. $this->viewBuilder()->setTemplate('name')
+            //   2. $this->viewBuilder()->setTemplatePath('path')
+            //   3. $this->viewBuilder()->setTemplatePath('path')->setTemplate('name')  (chained)
+            //
+            // For chained calls, both setTemplatePath and setTemplate are returned as separate
+            // ViewBuilderCallInfo objects to preserve state tracking behavior.
+            //
+            // AST structure:
+            //   Normal: METHOD_REFERENCE (setTemplate/setTemplatePath)
+            //     -> receiver: METHOD_REFERENCE (viewBuilder)
+            //         -> receiver: VARIABLE ($this)
+            //   Chained: METHOD_REFERENCE (setTemplate)
+            //     -> receiver: METHOD_REFERENCE (setTemplatePath)
+            //         -> receiver: METHOD_REFERENCE (viewBuilder)
+            //             -> receiver: VARIABLE ($this)
+
+            // Quick check: get method name first for early rejection
+            val methodName = getMethodName(node)
+            if (methodName != "setTemplate" && methodName != "setTemplatePath") {
+                return null  // Early exit for non-target methods
+            }
+
+            // Now parse the rest of the structure
+            var parameterValue: String? = null
+            var receiverMethodRef: ASTNode? = null
+
+            // Parse the outer method reference (setTemplate or setTemplatePath)
+            var child = node.firstChildNode
+            while (child != null) {
+                when {
+                    child.isMethodReference() -> {
+                        receiverMethodRef = child
+                    }
+                    child.isParameterList() -> {
+                        // Extract single string parameter
+                        val significantChildren = mutableListOf<ASTNode>()
+                        var paramChild = child.firstChildNode
+                        while (paramChild != null) {
+                            if (paramChild.elementType != TokenType.WHITE_SPACE && paramChild.elementType != PhpTokenTypes.opCOMMA) {
+                                significantChildren.add(paramChild)
+                            }
+                            paramChild = paramChild.treeNext
+                        }
+                        if (significantChildren.size == 1) {
+                            parameterValue = extractStringLiteral(significantChildren[0])
+                        }
+                    }
+                }
+                child = child.treeNext
+            }
+
+            if (receiverMethodRef == null) {
+                return null
+            }
+
+            // Pattern 1: Normal calls - receiver is viewBuilder()
+            if (isViewBuilderMethodCall(receiverMethodRef)) {
+                // Use passed-in offset instead of walking up tree
+                return ViewBuilderCallInfo(
+                    methodName = methodName,
+                    parameterValue = parameterValue,
+                    offset = node.startOffset,
+                    containingMethodStartOffset = containingMethodOffset
+                )
+            }
+
+            // Pattern 2: Chained calls - setTemplate's receiver is setTemplatePath
+            // Check receiver method name to see if it's setTemplatePath
+            val receiverMethodName = getMethodName(receiverMethodRef)
+            if (methodName == "setTemplate" && receiverMethodName == "setTemplatePath") {
+                // Verify the chain goes back to viewBuilder()
+                val viewBuilderNode = getReceiverMethodRef(receiverMethodRef)
+                if (viewBuilderNode != null && isViewBuilderMethodCall(viewBuilderNode)) {
+                    // Use passed-in offset instead of walking up tree
+                    // Return as normal setTemplate - state tracking will handle the path
+                    return ViewBuilderCallInfo(
+                        methodName = "setTemplate",
+                        parameterValue = parameterValue,  // Just the template name, not combined!
+                        offset = node.startOffset,
+                        containingMethodStartOffset = containingMethodOffset
+                    )
+                }
+            }
+
+            // Pattern 3: Chained setTemplatePath - will be processed normally by Pattern 1
+            // AST traversal visits it separately, so no special handling needed
+
+            return null
+        }
+
+        /**
+         * Get the method name from a METHOD_REFERENCE node
+         */
+        private fun getMethodName(node: ASTNode): String? {
+            var child = node.firstChildNode
+            while (child != null) {
+                if (child.elementType == PhpTokenTypes.IDENTIFIER) {
+                    return child.text
+                }
+                child = child.treeNext
+            }
+            return null
+        }
+
+        /**
+         * Get the receiver METHOD_REFERENCE from a METHOD_REFERENCE node
+         */
+        private fun getReceiverMethodRef(node: ASTNode): ASTNode? {
+            var child = node.firstChildNode
+            while (child != null) {
+                if (child.isMethodReference()) {
+                    return child
+                }
+                child = child.treeNext
+            }
+            return null
+        }
+
+        private fun isViewBuilderMethodCall(node: ASTNode): Boolean {
+            // Check if this is a METHOD_REFERENCE with name "viewBuilder" and receiver "$this"
+            var receiverVariable: String? = null
+            var methodName: String? = null
+
+            var child = node.firstChildNode
+            while (child != null) {
+                when {
+                    child.isVariable() -> {
+                        receiverVariable = child.text.removePrefix("$")
+                    }
+                    child.elementType == PhpTokenTypes.IDENTIFIER -> {
+                        methodName = child.text
+                    }
+                }
+                child = child.treeNext
+            }
+
+            return receiverVariable == "this" && methodName == "viewBuilder"
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.daveme.chocolateCakePHP.test
+
+import com.daveme.chocolateCakePHP.view.viewvariableindex.ViewVariableExistenceCache
+import junit.framework.TestCase
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+class ViewVariableExistenceCacheTest : TestCase() {
+
+    private fun isDefined(filenameKey: String, variableName: String) =
+        ((filenameKey.hashCode() xor variableName.hashCode()) and 1) == 0
+
+    private fun definedVariables(filenameKey: String): Set<String> =
+        (0 until 30).map { "var$it" }.filter { isDefined(filenameKey, it) }.toSet()
+
+    fun `test results are cached until the stamp changes`() {
+        val cache = ViewVariableExistenceCache(100)
+        val lookups = AtomicInteger()
+        val lookup = { lookups.incrementAndGet(); setOf("movie") }
+
+        assertTrue(cache.getOrCompute("Movie/index", 1, "movie", lookup))
+        assertTrue(cache.getOrCompute("Movie/index", 1, "movie", lookup))
+        assertEquals(1, lookups.get())
+
+        assertTrue(cache.getOrCompute("Movie/index", 2, "movie", lookup))
+        assertEquals(2, lookups.get())
+
+        val stats = cache.stats()
+        assertEquals(1, stats.hits)
+        assertEquals(2, stats.misses)
+        assertEquals(1, stats.size)
+    }
+
+    fun `test the whole view is looked up once`() {
+        val cache = ViewVariableExistenceCache(100)
+        val lookups = AtomicInteger()
+        val lookup = { lookups.incrementAndGet(); setOf("movie", "director") }
+
+        assertTrue(cache.getOrCompute("Movie/index", 1, "movie", lookup))
+        assertTrue(cache.getOrCompute("Movie/index", 1, "director", lookup))
+        assertFalse(cache.getOrCompute("Movie/index", 1, "missing", lookup))
+        assertFalse(cache.getOrCompute("Movie/index", 1, "missing", lookup))
+        assertEquals(1, lookups.get())
+        assertEquals(2, cache.stats().size)
+    }
+
+    fun `test least recently used files are evicted`() {
+        val cache = ViewVariableExistenceCache(4)
+        cache.getOrCompute("Movie/index", 1, "a") { setOf("a", "b") }
+        cache.getOrCompute("Movie/view", 1, "a") { setOf("a", "b") }
+        // Use Movie/index again so Movie/view is the oldest
+        cache.getOrCompute("Movie/index", 1, "b") { setOf("a", "b") }
+        cache.getOrCompute("Movie/edit", 1, "a") { setOf("a") }
+
+        val stats = cache.stats()
+        assertEquals(1, stats.evictions)
+        assertEquals(3, stats.size)
+
+        val lookups = AtomicInteger()
+        cache.getOrCompute("Movie/index", 1, "b") { lookups.incrementAndGet(); setOf("a", "b") }
+        assertEquals(0, lookups.get())
+        cache.getOrCompute("Movie/view", 1, "a") { lookups.incrementAndGet(); setOf("a", "b") }
+        assertEquals(1, lookups.get())
+    }
+
+    fun `test evicted files are reported`() {
+        val evicted = mutableListOf<String>()
+        val cache = ViewVariableExistenceCache(2) { evicted.add(it) }
+        cache.getOrCompute("Movie/index", 1, "a") { setOf("a") }
+        cache.getOrCompute("Movie/view", 1, "a") { setOf("a") }
+        assertEquals(emptyList<String>(), evicted)
+
+        cache.getOrCompute("Movie/edit", 1, "a") { setOf("a") }
+        assertEquals(listOf("Movie/index"), evicted)
+    }
+
+    fun `test concurrent lookups stay correct and bounded`() {
+        val maxEntries = 500
+        val cache = ViewVariableExistenceCache(maxEntries)
+        val threads = 16
+        val lookupsPerThread = 20_000
+        val executor = Executors.newFixedThreadPool(threads)
+        val start = CountDownLatch(1)
+        val wrongResults = AtomicInteger()
+        val computed = AtomicLong()
+
+        try {
+            val futures = (0 until threads).map { thread ->
+                executor.submit(Callable {
+                    start.await()
+                    var seed = thread * 7919 + 1
+                    repeat(lookupsPerThread) {
+                        seed = seed * 1103515245 + 12345
+                        val filenameKey = "Movie/view_${(seed ushr 8) % 40}"
+                        val variableName = "var${(seed ushr 16) % 30}"
+                        // A few stamps per file, always increasing within a thread
+                        val stamp = (it / 5_000).toLong()
+                        val result = cache.getOrCompute(filenameKey, stamp, variableName) {
+                            computed.incrementAndGet()
+                            definedVariables(filenameKey)
+                        }
+                        if (result != isDefined(filenameKey, variableName)) {
+                            wrongResults.incrementAndGet()
+                        }
+                        if (it % 1_000 == 0) {
+                            assertTrue(cache.stats().size <= maxEntries)
+                        }
+                    }
+                })
+            }
+            start.countDown()
+            futures.forEach { it.get(60, TimeUnit.SECONDS) }
+        } finally {
+            executor.shutdownNow()
+        }
+
+        val stats = cache.stats()
+        assertEquals(0, wrongResults.get())
+        assertEquals(threads.toLong() * lookupsPerThread, stats.hits + stats.misses)
+        assertEquals(computed.get(), stats.misses)
+        assertTrue("Size ${stats.size} should be at most $maxEntries", stats.size <= maxEntries)
+        assertTrue("Should have evicted something", stats.evictions > 0)
+        assertTrue("Should have hit the cache", stats.hits > 0)
+    }
+}
@@ -0,0 +1,57 @@
+package com.daveme.chocolateCakePHP.test
+
+import com.daveme.chocolateCakePHP.view.viewvariableindex.*
+import junit.framework.TestCase
+
+class ViewVariablesWithRawVarsTest : TestCase() {
+
+    private fun rawVar(name: String, kind: VarKind = VarKind.PAIR, offset: Int = 10) =
+        RawViewVar(name, kind, offset, VarHandle(SourceKind.LOCAL, name, offset + 5))
+
+    fun `test lookups by name`() {
+        val builder = ViewVariablesWithRawVars.Builder()
+        builder["title"] = rawVar("title")
+        builder["movie"] = rawVar("movie", offset = 20)
+        builder["count"] = rawVar("count", offset = 30)
+        val variables = builder.build()
+
+        assertEquals(3, variables.size)
+        assertTrue(variables.containsKey("movie"))
+        assertFalse(variables.containsKey("missing"))
+        assertEquals(rawVar("movie", offset = 20), variables["movie"])
+        assertNull(variables["missing"])
+        assertEquals(listOf("count", "movie", "title"), variables.keys.toList())
+    }
+
+    fun `test last value wins for duplicate names`() {
+        val builder = ViewVariablesWithRawVars.Builder(1)
+        builder["movie"] = rawVar("movie", offset = 1)
+        builder["actor"] = rawVar("actor")
+        builder["movie"] = rawVar("movie", offset = 2)
+        val variables = builder.build()
+
+        assertEquals(2, variables.size)
+        assertEquals(2, variables["movie"]!!.offset)
+    }
+
+    fun `test equals a hash map with the same entries`() {
+        val builder = ViewVariablesWithRawVars.Builder()
+        val expected = HashMap<String, RawViewVar>()
+        for (name in listOf("b", "a", "c")) {
+            builder[name] = rawVar(name)
+            expected[name] = rawVar(name)
+        }
+        val variables = builder.build()
+
+        assertEquals(expected, variables)
+        assertEquals(expected.hashCode(), variables.hashCode())
+        variables.forEach { (name, value) -> assertEquals(expected[name], value) }
+    }
+
+    fun `test empty builder`() {
+        val variables = ViewVariablesWithRawVars.Builder().build()
+        assertTrue(variables.isEmpty())
+        assertFalse(variables.containsKey("anything"))
+    }
+
+}
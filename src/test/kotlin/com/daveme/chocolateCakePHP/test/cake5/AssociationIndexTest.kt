@@ -0,0 +1,176 @@
+package com.daveme.chocolateCakePHP.test.cake5
+
+import com.daveme.chocolateCakePHP.Settings
+import com.daveme.chocolateCakePHP.lookupCompleteType
+import com.daveme.chocolateCakePHP.model.ContainGotoDeclarationHandler
+import com.daveme.chocolateCakePHP.model.associationindex.AssociationIndexService
+import com.daveme.chocolateCakePHP.model.associationindex.AssociationType
+import com.daveme.chocolateCakePHP.test.configureByFilePathAndText
+import com.intellij.psi.util.PsiTreeUtil
+import com.jetbrains.php.lang.psi.elements.FieldReference
+
+class AssociationIndexTest : Cake5BaseTestCase() {
+
+    override fun setUpTestFiles() {
+        myFixture.configureByFiles(
+            "cake5/src5/Controller/ArticleController.php",
+            "cake5/src5/Model/Table/AuthorsTable.php",
+            "cake5/src5/Model/Table/CommentsTable.php",
+            "cake5/src5/Model/Table/MoviesTable.php",
+            "cake5/vendor/cakephp.php",
+            "cake5/vendor/test/test_plugin/src/Model/Table/PluginItemsTable.php"
+        )
+        myFixture.addFileToProject("cake5/src5/Model/Table/PostsTable.php", """
+        <?php
+        namespace App\Model\Table;
+
+        use Cake\ORM\Table;
+
+        class PostsTable extends Table
+        {
+            public function initialize(array ${'$'}config): void
+            {
+                parent::initialize(${'$'}config);
+
+                ${'$'}this->belongsTo('Writers', [
+                    'className' => 'Editors',
+                    'propertyName' => 'writer',
+                ]);
+                ${'$'}this->hasMany('Remarks', ['className' => CommentsTable::class]);
+                ${'$'}this->belongsToMany('Films')->setClassName('Movies');
+                ${'$'}this->hasOne('PluginItems', ['className' => 'TestPlugin.PluginItems']);
+            }
+        }
+        """.trimIndent())
+        myFixture.addFileToProject("cake5/src5/Model/Table/EditorsTable.php", """
+        <?php
+        namespace App\Model\Table;
+
+        use Cake\ORM\Table;
+
+        class EditorsTable extends Table
+        {
+            public function initialize(array ${'$'}config): void
+            {
+                ${'$'}this->hasMany('Addresses');
+            }
+        }
+        """.trimIndent())
+    }
+
+    fun `test associations are indexed with their options`() {
+        val associations = AssociationIndexService.associations(project, "\\App\\Model\\Table\\PostsTable")
+            .associateBy { it.alias }
+        assertEquals(setOf("Writers", "Remarks", "Films", "PluginItems"), associations.keys)
+
+        val writers = associations.getValue("Writers")
+        assertEquals(AssociationType.BELONGS_TO, writers.type)
+        assertEquals("Editors", writers.className)
+        assertEquals("writer", writers.propertyName)
+        assertEquals("\\App\\Model\\Table\\CommentsTable", associations.getValue("Remarks").className)
+        assertEquals("Movies", associations.getValue("Films").className)
+
+        val settings = Settings.getInstance(project)
+        assertEquals(
+            "\\TestPlugin\\Model\\Table\\PluginItemsTable",
+            AssociationIndexService.targetTableClass(settings, associations.getValue("PluginItems"))
+        )
+        assertEquals(
+            listOf("\\App\\Model\\Table\\EditorsTable"),
+            AssociationIndexService.targetTableClassesOfPath(
+                project, settings, listOf("\\App\\Model\\Table\\PostsTable"), listOf("Writers")
+            )
+        )
+        assertNull(
+            AssociationIndexService.targetTableClassesOfPath(
+                project, settings, listOf("\\App\\Model\\Table\\PostsTable"), listOf("Authors")
+            )
+        )
+    }
+
+    fun `test nested controller field resolves to the associated table`() {
+        myFixture.configureByFilePathAndText("cake5/src5/Controller/ArticleController.php", """
+        <?php
+        namespace App\Controller;
+
+        use Cake\Controller\Controller;
+
+        class ArticleController extends Controller
+        {
+            public function index() {
+                ${'$'}this->Posts->Wri<caret>ters->find();
+            }
+        }
+        """.trimIndent())
+
+        val element = myFixture.file.findElementAt(myFixture.caretOffset)
+        val fieldReference = PsiTreeUtil.getParentOfType(element, FieldReference::class.java)!!
+        val types = fieldReference.type.lookupCompleteType(project, null).types
+        assertTrue(types.contains("\\App\\Model\\Table\\EditorsTable"))
+        assertFalse(types.contains("\\App\\Model\\Table\\WritersTable"))
+    }
+
+    fun `test contain completes the associations of the table`() {
+        myFixture.configureByFilePathAndText("cake5/src5/Controller/ArticleController.php", """
+        <?php
+        namespace App\Controller;
+
+        use Cake\Controller\Controller;
+
+        class ArticleController extends Controller
+        {
+            public function index() {
+                ${'$'}this->fetchTable('Posts')->find()->contain('<caret>');
+            }
+        }
+        """.trimIndent())
+
+        myFixture.completeBasic()
+        val result = myFixture.lookupElementStrings
+        assertNotNull(result)
+        assertEquals(setOf("Writers", "Remarks", "Films", "PluginItems"), result!!.toSet())
+    }
+
+    fun `test contain completes nested associations`() {
+        myFixture.configureByFilePathAndText("cake5/src5/Controller/ArticleController.php", """
+        <?php
+        namespace App\Controller;
+
+        use Cake\Controller\Controller;
+
+        class ArticleController extends Controller
+        {
+            public function index() {
+                ${'$'}this->fetchTable('Posts')->find()->contain('Writers.<caret>');
+            }
+        }
+        """.trimIndent())
+
+        val lookupElements = myFixture.completeBasic()
+        val result = myFixture.lookupElementStrings
+        // A single item is inserted right away
+        if (lookupElements == null) {
+            assertTrue(myFixture.editor.document.text.contains("'Writers.Addresses'"))
+        } else {
+            assertEquals(listOf("Addresses"), result)
+        }
+    }
+
+    fun `test contain navigates to the associated table`() {
+        myFixture.configureByFilePathAndText("cake5/src5/Controller/ArticleController.php", """
+        <?php
+        namespace App\Controller;
+
+        use Cake\Controller\Controller;
+
+        class ArticleController extends Controller
+        {
+            public function index() {
+                ${'$'}this->fetchTable('Posts')->find()->contain('<caret>Writers');
+            }
+        }
+        """.trimIndent())
+
+        assertGotoDeclarationHandlerGoesToFilename(ContainGotoDeclarationHandler(), "EditorsTable.php")
+    }
+}
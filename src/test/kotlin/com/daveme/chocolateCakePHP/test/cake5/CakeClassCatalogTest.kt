@@ -0,0 +1,52 @@
+package com.daveme.chocolateCakePHP.test.cake5
+
+import com.daveme.chocolateCakePHP.CakeClassCatalog
+import com.daveme.chocolateCakePHP.CakeClassKind
+import com.daveme.chocolateCakePHP.Settings
+
+class CakeClassCatalogTest : Cake5BaseTestCase() {
+
+    override fun setUpTestFiles() {
+        myFixture.configureByFiles(
+            "cake5/src5/Controller/AppController.php",
+            "cake5/src5/Model/Table/ArticlesTable.php",
+            "cake5/src5/Model/Table/MoviesTable.php",
+            "cake5/src5/View/Helper/MovieFormatterHelper.php",
+            "cake5/vendor/cakephp.php",
+        )
+    }
+
+    fun `test classes are grouped by short name and namespace`() {
+        val settings = Settings.getInstance(project)
+        val catalog = project.getService(CakeClassCatalog::class.java)
+        val tables = catalog.classes(CakeClassKind.TABLE, settings)
+
+        assertEquals("\\App\\Model\\Table\\MoviesTable", tables.withShortName("moviestable").single().fqn)
+        assertEquals(
+            setOf("ArticlesTable", "MoviesTable"),
+            tables.inNamespace("App\\Model\\Table").map { it.name }.toSet()
+        )
+        assertEquals(
+            listOf("MovieFormatterHelper"),
+            catalog.classes(CakeClassKind.HELPER, settings).classes.map { it.name }
+        )
+    }
+
+    fun `test the catalog is kept until a class changes`() {
+        val settings = Settings.getInstance(project)
+        val catalog = project.getService(CakeClassCatalog::class.java)
+        val tables = catalog.classes(CakeClassKind.TABLE, settings)
+        assertSame(tables, catalog.classes(CakeClassKind.TABLE, settings))
+
+        myFixture.addFileToProject("cake5/src5/Model/Table/GenresTable.php", """
+        <?php
+        namespace App\Model\Table;
+
+        class GenresTable extends \Cake\ORM\Table {
+        }
+        """.trimIndent())
+
+        val updated = catalog.classes(CakeClassKind.TABLE, settings)
+        assertEquals(1, updated.withShortName("GenresTable").size)
+    }
+}
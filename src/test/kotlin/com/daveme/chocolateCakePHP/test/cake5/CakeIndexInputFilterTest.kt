@@ -0,0 +1,56 @@
+package com.daveme.chocolateCakePHP.test.cake5
+
+import com.daveme.chocolateCakePHP.cake.CakeIndexInputFilter
+import com.intellij.util.indexing.IndexedFileImpl
+
+class CakeIndexInputFilterTest : Cake5BaseTestCase() {
+
+    override fun setUpTestFiles() {
+        myFixture.configureByFiles(
+            "cake5/vendor/cakephp.php"
+        )
+    }
+
+    private fun accepts(acceptTemplates: Boolean, path: String): Boolean {
+        val file = myFixture.addFileToProject(path, "<?php\n").virtualFile
+        return CakeIndexInputFilter(acceptTemplates).acceptInput(IndexedFileImpl(file, project))
+    }
+
+    fun `test accepts controllers and templates`() {
+        assertTrue(accepts(true, "cake5/src5/Controller/MovieController.php"))
+        assertTrue(accepts(true, "cake5/src5/Controller/Admin/MovieController.php"))
+        assertTrue(accepts(true, "cake5/templates/Movie/artist.php"))
+        assertTrue(accepts(true, "cake5/templates/element/Director/filmography.php"))
+    }
+
+    fun `test view variable filter only accepts controllers`() {
+        assertTrue(accepts(false, "cake5/src5/Controller/MovieController.php"))
+        assertFalse(accepts(false, "cake5/templates/Movie/artist.php"))
+    }
+
+    fun `test rejects files the indexers would ignore`() {
+        assertFalse(accepts(true, "cake5/src5/Model/Table/MoviesTable.php"))
+        assertFalse(accepts(true, "cake5/src5/Controller/Controller.php"))
+        assertFalse(accepts(true, "cake5/tests/TestCase/Controller/MovieControllerTest.php"))
+        assertFalse(accepts(true, "cake5/src5/Controller/notes.txt"))
+    }
+
+    fun `test rejects vendor and tmp directories`() {
+        assertFalse(accepts(true, "cake5/vendor/cakephp/cakephp/src/Controller/ErrorController.php"))
+        assertFalse(accepts(true, "cake5/vendor/cakephp/cakephp/templates/Error/error400.php"))
+        assertFalse(accepts(true, "cake5/tmp/cache/templates/cached.php"))
+        assertFalse(accepts(true, "cake5/node_modules/pkg/templates/index.php"))
+    }
+
+    fun `test accepts configured plugin paths under vendor`() {
+        assertTrue(accepts(true, "cake5/vendor/test/test_plugin/src/Controller/PluginController.php"))
+        assertTrue(accepts(true, "cake5/vendor/test/test_plugin/templates/Plugin/index.php"))
+    }
+
+    fun `test plugin paths only match from the app root`() {
+        assertFalse(accepts(true, "cake5/vendor/acme/vendor/test/test_plugin/templates/Plugin/index.php"))
+        assertFalse(accepts(true, "cake5/tests/test_app/vendor/test/test_plugin/templates/Plugin/index.php"))
+        assertFalse(accepts(true, "cake5/vendor/test/test_plugin/tests/test_app/templates/Plugin/index.php"))
+    }
+
+}
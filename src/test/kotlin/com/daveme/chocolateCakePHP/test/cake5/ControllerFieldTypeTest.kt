@@ -0,0 +1,75 @@
+package com.daveme.chocolateCakePHP.test.cake5
+
+import com.daveme.chocolateCakePHP.controller.ControllerFieldTypeProvider
+import com.daveme.chocolateCakePHP.lookupCompleteType
+import com.intellij.psi.util.PsiTreeUtil
+import com.jetbrains.php.lang.psi.elements.FieldReference
+
+class ControllerFieldTypeTest : Cake5BaseTestCase() {
+
+    override fun setUpTestFiles() {
+        myFixture.configureByFiles(
+            "cake5/src5/Controller/AppController.php",
+            "cake5/src5/Controller/Component/MovieMetadataComponent.php",
+            "cake5/src5/Model/Table/MoviesTable.php",
+            "cake5/vendor/cakephp.php"
+        )
+    }
+
+    private fun fieldTypesAtCaret(): Pair<Set<String>, Set<String>> {
+        val element = myFixture.file.findElementAt(myFixture.caretOffset)
+        val fieldReference = PsiTreeUtil.getParentOfType(element, FieldReference::class.java)!!
+        val signatures = fieldReference.type.types
+            .filter { it.startsWith("#${ControllerFieldTypeProvider.TYPE_PROVIDER_CHAR}") }
+            .toSet()
+        val completeTypes = fieldReference.type.lookupCompleteType(project, null).types
+        return Pair(signatures, completeTypes)
+    }
+
+    fun `test a table field resolves to the table that exists`() {
+        myFixture.configureByText("MovieController.php", """
+        <?php
+
+        namespace App\Controller;
+
+        use Cake\Controller\Controller;
+
+        class MovieController extends Controller
+        {
+            public function index() {
+                ${'$'}this->Mov<caret>ies->find();
+            }
+        }
+        """.trimIndent())
+
+        val (signatures, completeTypes) = fieldTypesAtCaret()
+        assertEquals(1, signatures.size)
+        assertTrue(completeTypes.contains("\\App\\Model\\Table\\MoviesTable"))
+        assertFalse(completeTypes.contains("\\App\\Model\\Table\\MoviesesTable"))
+        assertFalse(completeTypes.contains("\\App\\Controller\\Component\\MoviesComponent"))
+        assertFalse(completeTypes.contains("\\TestPlugin\\Controller\\Component\\MoviesComponent"))
+    }
+
+    fun `test a component field resolves to the component that exists`() {
+        myFixture.configureByText("MovieController.php", """
+        <?php
+
+        namespace App\Controller;
+
+        use Cake\Controller\Controller;
+
+        class MovieController extends Controller
+        {
+            public function index() {
+                ${'$'}this->MovieMeta<caret>data->generateMetadata();
+            }
+        }
+        """.trimIndent())
+
+        val (signatures, completeTypes) = fieldTypesAtCaret()
+        assertEquals(1, signatures.size)
+        assertTrue(completeTypes.contains("\\App\\Controller\\Component\\MovieMetadataComponent"))
+        assertFalse(completeTypes.contains("\\App\\Model\\Table\\MovieMetadataTable"))
+        assertFalse(completeTypes.contains("\\Cake\\Controller\\Component\\MovieMetadataComponent"))
+    }
+}
@@ -0,0 +1,189 @@
+package com.daveme.chocolateCakePHP.test.cake5
+
+import com.daveme.chocolateCakePHP.Settings
+import com.daveme.chocolateCakePHP.model.CustomFinderGotoDeclarationHandler
+import com.daveme.chocolateCakePHP.model.finderindex.FinderIndexService
+import com.daveme.chocolateCakePHP.test.configureByFilePathAndText
+
+class CustomFinderIndexTest : Cake5BaseTestCase() {
+
+    override fun setUpTestFiles() {
+        myFixture.configureByFiles(
+            "cake5/src5/Controller/AppController.php",
+            "cake5/src5/Model/Table/MoviesTable.php",
+            "cake5/vendor/cakephp.php"
+        )
+        myFixture.addFileToProject("cake5/src5/Model/Table/AppTable.php", """
+        <?php
+        namespace App\Model\Table;
+
+        use Cake\ORM\Query\SelectQuery;
+        use Cake\ORM\Table;
+
+        class AppTable extends Table
+        {
+            public function findPublished(SelectQuery ${'$'}query): SelectQuery
+            {
+                return ${'$'}query;
+            }
+        }
+        """.trimIndent())
+        myFixture.addFileToProject("cake5/src5/Model/Table/PostsTable.php", """
+        <?php
+        namespace App\Model\Table;
+
+        use App\Model\Behavior\SluggableBehavior;
+        use Cake\ORM\Query\SelectQuery;
+
+        class PostsTable extends AppTable
+        {
+            public function initialize(array ${'$'}config): void
+            {
+                ${'$'}this->addBehavior('Timestamp');
+                ${'$'}this->addBehavior('Slugs', ['className' => SluggableBehavior::class]);
+            }
+
+            /**
+             * @return \Cake\ORM\Query\SelectQuery<\App\Model\Entity\Post>
+             */
+            public function findRecent(${'$'}query)
+            {
+                return ${'$'}query;
+            }
+
+            public function findStatistics(SelectQuery ${'$'}query): array
+            {
+                return [];
+            }
+
+            private function findHidden(SelectQuery ${'$'}query): SelectQuery
+            {
+                return ${'$'}query;
+            }
+        }
+        """.trimIndent())
+        myFixture.addFileToProject("cake5/src5/Model/Table/DraftsTable.php", """
+        <?php
+        namespace App\Model\Table;
+
+        class DraftsTable extends PostsTable
+        {
+        }
+        """.trimIndent())
+        myFixture.addFileToProject("cake5/src5/Model/Behavior/SluggableBehavior.php", """
+        <?php
+        namespace App\Model\Behavior;
+
+        use Cake\ORM\Behavior;
+        use Cake\ORM\Query\SelectQuery;
+
+        class SluggableBehavior extends Behavior
+        {
+            public function findSlugged(SelectQuery ${'$'}query, string ${'$'}slug): SelectQuery
+            {
+                return ${'$'}query;
+            }
+        }
+        """.trimIndent())
+    }
+
+    fun `test finders are indexed with inherited and behavior finders`() {
+        val settings = Settings.getInstance(project)
+        val finders = FinderIndexService.customFinders(project, settings, listOf("\\App\\Model\\Table\\PostsTable"))
+            .associateBy { it.finderName }
+        assertEquals(setOf("recent", "statistics", "published", "slugged"), finders.keys)
+
+        assertEquals("\\Cake\\ORM\\Query\\SelectQuery", finders.getValue("recent").returnType)
+        assertTrue(finders.getValue("recent").returnsQuery)
+        assertEquals("array", finders.getValue("statistics").returnType)
+        assertFalse(finders.getValue("statistics").returnsQuery)
+        assertTrue(finders.getValue("slugged").returnsQuery)
+
+        // Not in the index, as it has no finders or behaviors of its own
+        val inherited = FinderIndexService.customFinders(project, settings, listOf("\\App\\Model\\Table\\DraftsTable"))
+        assertEquals(finders.keys, inherited.map { it.finderName }.toSet())
+    }
+
+    fun `test completes inherited and behavior finders`() {
+        myFixture.configureByFilePathAndText("cake5/src5/Controller/PostsController.php", """
+        <?php
+        namespace App\Controller;
+
+        use Cake\Controller\Controller;
+
+        class PostsController extends Controller
+        {
+            public function index() {
+                ${'$'}this->fetchTable('Posts')->find('<caret>');
+            }
+        }
+        """.trimIndent())
+
+        myFixture.completeBasic()
+        val result = myFixture.lookupElementStrings
+        assertNotNull(result)
+        assertTrue(result!!.containsAll(listOf("recent", "published", "slugged")))
+        assertFalse(result.contains("statistics"))
+        assertFalse(result.contains("hidden"))
+    }
+
+    fun `test navigates to a finder of a behavior`() {
+        myFixture.configureByFilePathAndText("cake5/src5/Controller/PostsController.php", """
+        <?php
+        namespace App\Controller;
+
+        use Cake\Controller\Controller;
+
+        class PostsController extends Controller
+        {
+            public function index() {
+                ${'$'}this->fetchTable('Posts')->find('<caret>slugged');
+            }
+        }
+        """.trimIndent())
+
+        assertGotoDeclarationHandlerGoesToFilename(CustomFinderGotoDeclarationHandler(), "SluggableBehavior.php")
+    }
+
+    fun `test completes every finder of a table with many finders`() {
+        val finderCount = 64
+        val methods = (1..finderCount).joinToString("\n") { i ->
+            """
+            public function findByStatus$i(SelectQuery ${'$'}query): SelectQuery
+            {
+                return ${'$'}query->where(['status' => $i]);
+            }
+            """
+        }
+        myFixture.addFileToProject("cake5/src5/Model/Table/OrdersTable.php", """
+        <?php
+        namespace App\Model\Table;
+
+        use Cake\ORM\Query\SelectQuery;
+
+        class OrdersTable extends AppTable
+        {
+        $methods
+        }
+        """.trimIndent())
+        myFixture.configureByFilePathAndText("cake5/src5/Controller/OrdersController.php", """
+        <?php
+        namespace App\Controller;
+
+        use Cake\Controller\Controller;
+
+        class OrdersController extends Controller
+        {
+            public function index() {
+                ${'$'}this->fetchTable('Orders')->find('<caret>');
+            }
+        }
+        """.trimIndent())
+
+        myFixture.completeBasic()
+        val result = myFixture.lookupElementStrings
+        assertNotNull(result)
+        assertTrue(result!!.containsAll((1..finderCount).map { "byStatus$it" }))
+        assertTrue(result.contains("published"))
+    }
+}
@@ -1,5 +1,7 @@
 package com.daveme.chocolateCakePHP.test.cake5
 
+import com.daveme.chocolateCakePHP.model.QueryMethodReturnTypes
+
 class CustomFinderTest : Cake5BaseTestCase() {
 
     override fun setUpTestFiles() {
@@ -244,4 +246,12 @@ class CustomFinderTest : Cake5BaseTestCase() {
         assertNotEmpty(result)
         assertTrue(result!!.contains("ownedBy"))
     }
-}
\ No newline at end of file
+
+    fun `test query method return types are cached per method`() {
+        val queryMethods = project.getService(QueryMethodReturnTypes::class.java)
+        assertTrue(queryMethods.queryClassMethodReturnsQuery("where"))
+        assertTrue(queryMethods.queryClassMethodReturnsQuery("WHERE"))
+        assertFalse(queryMethods.queryClassMethodReturnsQuery("toArray"))
+        assertFalse(queryMethods.queryClassMethodReturnsQuery("noSuchMethod"))
+    }
+}
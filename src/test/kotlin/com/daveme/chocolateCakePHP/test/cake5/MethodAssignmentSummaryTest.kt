@@ -0,0 +1,78 @@
+package com.daveme.chocolateCakePHP.test.cake5
+
+import com.daveme.chocolateCakePHP.view.viewvariableindex.MethodAssignmentSummary
+import com.intellij.psi.util.PsiTreeUtil
+import com.jetbrains.php.lang.psi.elements.Method
+
+class MethodAssignmentSummaryTest : Cake5BaseTestCase() {
+
+    override fun setUpTestFiles() {
+        myFixture.configureByFiles(
+            "cake5/vendor/cakephp.php"
+        )
+    }
+
+    private fun summaryOf(controllerCode: String): Pair<MethodAssignmentSummary, String> {
+        val file = myFixture.addFileToProject("cake5/src5/Controller/SummaryController.php", controllerCode)
+        val method = PsiTreeUtil.findChildOfType(file, Method::class.java)!!
+        return Pair(MethodAssignmentSummary.of(method), file.text)
+    }
+
+    fun `test last assignment before an offset`() {
+        val (summary, text) = summaryOf("""
+            <?php
+            namespace App\Controller;
+
+            class SummaryController extends AppController {
+                public function index(int ${'$'}id) {
+                    ${'$'}movie = 'first';
+                    ${'$'}this->set('a', ${'$'}movie);
+                    ${'$'}movie = 2;
+                    ${'$'}this->set('b', ${'$'}movie);
+                }
+            }
+        """.trimIndent())
+
+        val firstSet = text.indexOf("\$this->set('a'")
+        val secondSet = text.indexOf("\$this->set('b'")
+        val first = summary.lastAssignmentBefore("movie", firstSet)!!
+        val second = summary.lastAssignmentBefore("movie", secondSet)!!
+        assertEquals("'first'", first.value!!.text)
+        assertEquals("2", second.value!!.text)
+        assertNull(summary.lastAssignmentBefore("movie", text.indexOf("\$movie = 'first'")))
+        assertNull(summary.lastAssignmentBefore("missing", secondSet))
+    }
+
+    fun `test parameter types have no namespaced primitives`() {
+        val (summary, _) = summaryOf("""
+            <?php
+            namespace App\Controller;
+
+            class SummaryController extends AppController {
+                public function view(int ${'$'}id, string ${'$'}slug) {
+                }
+            }
+        """.trimIndent())
+
+        assertEquals("int", summary.parameterTypes["id"].toString())
+        assertEquals("string", summary.parameterTypes["slug"].toString())
+        assertNull(summary.parameterTypes["missing"])
+    }
+
+    fun `test summary is cached on the method`() {
+        val file = myFixture.addFileToProject("cake5/src5/Controller/SummaryController.php", """
+            <?php
+            namespace App\Controller;
+
+            class SummaryController extends AppController {
+                public function index() {
+                    ${'$'}movie = 1;
+                }
+            }
+        """.trimIndent())
+        val method = PsiTreeUtil.findChildOfType(file, Method::class.java)!!
+
+        assertSame(MethodAssignmentSummary.of(method), MethodAssignmentSummary.of(method))
+    }
+
+}
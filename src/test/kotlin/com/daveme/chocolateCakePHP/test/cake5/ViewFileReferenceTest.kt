@@ -0,0 +1,54 @@
+package com.daveme.chocolateCakePHP.test.cake5
+
+import com.daveme.chocolateCakePHP.view.viewfileindex.ElementType
+import com.daveme.chocolateCakePHP.view.viewfileindex.ViewFileIndexService
+import com.intellij.psi.PsiManager
+import com.intellij.psi.impl.PsiManagerEx
+import com.jetbrains.php.lang.psi.elements.Method
+import com.jetbrains.php.lang.psi.elements.MethodReference
+
+class ViewFileReferenceTest : Cake5BaseTestCase() {
+
+    override fun setUpTestFiles() {
+        myFixture.configureByFiles(
+            "cake5/src5/Controller/AppController.php",
+            "cake5/vendor/cakephp.php",
+        )
+    }
+
+    fun `test references are read without loading PSI`() {
+        // Created on disk only, so nothing has loaded its PSI yet
+        val controllerFile = myFixture.tempDirFixture.createFile("cake5/src5/Controller/ReviewController.php", """
+        <?php
+        namespace App\Controller;
+
+        class ReviewController extends AppController {
+            public function index() {
+            }
+
+            public function latest() {
+                ${'$'}this->render('index');
+            }
+        }
+        """.trimIndent())
+        myFixture.addFileToProject("cake5/templates/Review/index.php", "<?php\n")
+
+        val references = ViewFileIndexService.referencesInSmartReadAction(project, "Review/index")
+
+        val fileManager = (PsiManager.getInstance(project) as PsiManagerEx).fileManager
+        assertNull("Listing references should not load PSI", fileManager.getCachedPsiFile(controllerFile))
+        assertEquals(
+            setOf(ElementType.METHOD to "index", ElementType.METHOD_REFERENCE to "latest"),
+            references.map { it.elementType to it.containingMethodName }.toSet()
+        )
+        assertTrue(references.all { it.file == controllerFile })
+        assertEquals("Review", references.first().controllerPath?.name)
+
+        // PSI is only loaded when navigating
+        val method = references.first { it.elementType == ElementType.METHOD }.findPsiElement(project)
+        assertEquals("index", (method as Method).name)
+        val renderCall = references.first { it.elementType == ElementType.METHOD_REFERENCE }.findPsiElement(project)
+        assertEquals("render", (renderCall as MethodReference).name)
+    }
+
+}
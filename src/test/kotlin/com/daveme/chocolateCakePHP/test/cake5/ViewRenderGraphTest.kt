@@ -0,0 +1,70 @@
+package com.daveme.chocolateCakePHP.test.cake5
+
+import com.daveme.chocolateCakePHP.view.viewfileindex.ViewRenderGraph
+
+class ViewRenderGraphTest : Cake5BaseTestCase() {
+
+    override fun setUpTestFiles() {
+        myFixture.configureByFiles(
+            "cake5/src5/Controller/AppController.php",
+            "cake5/src5/Controller/MovieController.php",
+            "cake5/vendor/cakephp.php",
+        )
+    }
+
+    private fun actionsRendering(filenameKey: String): List<String> =
+        project.getService(ViewRenderGraph::class.java)
+            .controllerActionsInSmartReadAction(filenameKey)
+
+    fun `test implicit render maps view to action`() {
+        myFixture.addFileToProject("cake5/templates/Movie/film_director.php", """
+        <?php
+        echo 'director';
+        """.trimIndent())
+
+        assertContainsElements(actionsRendering("Movie/film_director"), "Movie:filmDirector")
+    }
+
+    fun `test elements are followed through views and other elements`() {
+        myFixture.addFileToProject("cake5/templates/Movie/film_director.php", """
+        <?php
+        echo ${'$'}this->element('Chain/link0');
+        """.trimIndent())
+        // Longer than the 15 lookups the per-query walk used to be limited to
+        val chainLength = 20
+        for (i in 0 until chainLength) {
+            myFixture.addFileToProject("cake5/templates/element/Chain/link$i.php", """
+            <?php
+            echo ${'$'}this->element('Chain/link${i + 1}');
+            """.trimIndent())
+        }
+
+        assertContainsElements(actionsRendering("element/Chain/link0"), "Movie:filmDirector")
+        assertContainsElements(actionsRendering("element/Chain/link$chainLength"), "Movie:filmDirector")
+    }
+
+    fun `test cycles between elements terminate`() {
+        myFixture.addFileToProject("cake5/templates/element/Cycle/a.php", """
+        <?php
+        echo ${'$'}this->element('Cycle/b');
+        """.trimIndent())
+        myFixture.addFileToProject("cake5/templates/element/Cycle/b.php", """
+        <?php
+        echo ${'$'}this->element('Cycle/a');
+        """.trimIndent())
+
+        assertEmpty(actionsRendering("element/Cycle/a"))
+    }
+
+    fun `test a view starting to render an element is picked up`() {
+        myFixture.addFileToProject("cake5/templates/element/Movie/poster.php", "<?php\n")
+        assertEmpty(actionsRendering("element/Movie/poster"))
+
+        myFixture.addFileToProject("cake5/templates/Movie/film_director.php", """
+        <?php
+        echo ${'$'}this->element('Movie/poster');
+        """.trimIndent())
+        assertContainsElements(actionsRendering("element/Movie/poster"), "Movie:filmDirector")
+    }
+
+}
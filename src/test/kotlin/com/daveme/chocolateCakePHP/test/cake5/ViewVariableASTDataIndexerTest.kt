@@ -221,4 +221,125 @@ class ViewVariableASTDataIndexerTest : Cake5BaseTestCase() {
         assertEquals("count should be PAIR kind", VarKind.PAIR, countVar.varKind)
         assertEquals("count source kind should be LITERAL", SourceKind.LITERAL, countVar.varHandle.sourceKind)
     }
+
+    fun `test indirect set calls are resolved to concrete names`() {
+        val controllerCode = """
+            <?php
+            namespace App\Controller;
+
+            use Cake\Controller\Controller;
+
+            class MoviesController extends Controller {
+                public function indirect(int ${'$'}id) {
+                    ${'$'}vars = ['movie' => 'Inception', 'year' => 2010];
+                    ${'$'}this->set(${'$'}vars);
+
+                    ${'$'}genre = 'Sci-Fi';
+                    ${'$'}compacted = compact('genre');
+                    ${'$'}this->set(${'$'}compacted);
+
+                    ${'$'}key = 'studio';
+                    ${'$'}val = 'Warner Bros';
+                    ${'$'}this->set(${'$'}key, ${'$'}val);
+
+                    ${'$'}keys = ['first', 'second'];
+                    ${'$'}this->set(${'$'}keys, [${'$'}id, 'two']);
+
+                    ${'$'}this->set(${'$'}unknown);
+                }
+            }
+        """.trimIndent()
+
+        val controllerFile = myFixture.addFileToProject("cake5/src5/Controller/MoviesController.php", controllerCode)
+        val fileContent = FileContentImpl.createByFile(controllerFile.virtualFile, project)
+
+        val viewVariables = ViewVariableASTDataIndexer.map(fileContent)["Movies:indirect"]!!
+
+        assertEquals(
+            listOf("first", "genre", "movie", "second", "studio", "year"),
+            viewVariables.keys.toList()
+        )
+        assertEquals(VarKind.VARIABLE_ARRAY, viewVariables["movie"]!!.varKind)
+        assertEquals(SourceKind.LITERAL, viewVariables["movie"]!!.varHandle.sourceKind)
+        assertEquals(VarKind.VARIABLE_COMPACT, viewVariables["genre"]!!.varKind)
+        assertEquals(SourceKind.LOCAL, viewVariables["genre"]!!.varHandle.sourceKind)
+        assertEquals(VarKind.VARIABLE_PAIR, viewVariables["studio"]!!.varKind)
+        assertEquals("val", viewVariables["studio"]!!.varHandle.symbolName)
+        assertEquals(VarKind.MIXED_TUPLE, viewVariables["first"]!!.varKind)
+        assertEquals("id", viewVariables["first"]!!.varHandle.symbolName)
+        assertEquals(SourceKind.LITERAL, viewVariables["second"]!!.varHandle.sourceKind)
+
+        // Types of indirect entries come from the index handles
+        val types = viewVariables.keys.associateWith { viewVariables[it]!!.resolveType(project, controllerFile).toString() }
+        assertTrue(types["year"]!!.contains("int"))
+        assertTrue(types["genre"]!!.contains("string"))
+        assertTrue(types["studio"]!!.contains("string"))
+        assertTrue(types["first"]!!.contains("int"))
+    }
+
+    fun `test later assignments do not affect earlier set calls`() {
+        val controllerCode = """
+            <?php
+            namespace App\Controller;
+
+            use Cake\Controller\Controller;
+
+            class MoviesController extends Controller {
+                public function reassigned() {
+                    ${'$'}vars = ['before' => 1];
+                    ${'$'}this->set(${'$'}vars);
+                    ${'$'}vars = ['after' => 2];
+                }
+            }
+        """.trimIndent()
+
+        val controllerFile = myFixture.addFileToProject("cake5/src5/Controller/MoviesController.php", controllerCode)
+        val fileContent = FileContentImpl.createByFile(controllerFile.virtualFile, project)
+
+        val viewVariables = ViewVariableASTDataIndexer.map(fileContent)["Movies:reassigned"]!!
+        assertEquals(listOf("before"), viewVariables.keys.toList())
+    }
+
+    fun `test type hints are captured when indexing`() {
+        val controllerCode = """
+            <?php
+            namespace App\Controller;
+
+            use Cake\Controller\Controller;
+            use App\Model\Entity\Movie;
+            use App\Model\Entity\{Actor as Star};
+
+            class MoviesController extends Controller {
+                public function hinted(int ${'$'}id, ?Star ${'$'}star) {
+                    ${'$'}movie = new Movie();
+                    ${'$'}alias = ${'$'}movie;
+                    ${'$'}this->set('count', 42);
+                    ${'$'}this->set('rating', 8.8);
+                    ${'$'}this->set('movie', ${'$'}alias);
+                    ${'$'}this->set(compact('id', 'star'));
+                    ${'$'}this->set('movies', ${'$'}this->fetchTable('Movies'));
+                    ${'$'}this->set('query', ${'$'}this->Movies->find());
+                    ${'$'}this->set('list', [1, 2]);
+                }
+            }
+        """.trimIndent()
+
+        val controllerFile = myFixture.addFileToProject("cake5/src5/Controller/MoviesController.php", controllerCode)
+        val fileContent = FileContentImpl.createByFile(controllerFile.virtualFile, project)
+
+        val viewVariables = ViewVariableASTDataIndexer.map(fileContent)["Movies:hinted"]!!
+        assertEquals("int", viewVariables["count"]!!.typeHint)
+        assertEquals("float", viewVariables["rating"]!!.typeHint)
+        assertEquals("\\App\\Model\\Entity\\Movie", viewVariables["movie"]!!.typeHint)
+        assertEquals("int", viewVariables["id"]!!.typeHint)
+        assertEquals("null|\\App\\Model\\Entity\\Actor", viewVariables["star"]!!.typeHint)
+        assertEquals("#fetchTable.Movies", viewVariables["movies"]!!.typeHint)
+        assertEquals("#find.Movies", viewVariables["query"]!!.typeHint)
+        // Array literals are left to PSI
+        assertEquals("", viewVariables["list"]!!.typeHint)
+
+        assertEquals("\\App\\Model\\Table\\MoviesTable",
+            viewVariables["movies"]!!.resolveTypeFromHint(project).toString())
+        assertNull(viewVariables["list"]!!.resolveTypeFromHint(project))
+    }
 }
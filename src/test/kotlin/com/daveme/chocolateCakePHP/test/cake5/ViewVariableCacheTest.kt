@@ -0,0 +1,122 @@
+package com.daveme.chocolateCakePHP.test.cake5
+
+import com.daveme.chocolateCakePHP.PhpFilesModificationTracker
+import com.daveme.chocolateCakePHP.Settings
+import com.daveme.chocolateCakePHP.view.viewvariableindex.ViewVariableCache
+import com.daveme.chocolateCakePHP.view.viewvariableindex.ViewVariableIndexService
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.psi.PsiDocumentManager
+import java.util.concurrent.atomic.AtomicInteger
+
+class ViewVariableCacheTest : Cake5BaseTestCase() {
+
+    override fun setUpTestFiles() {
+        myFixture.configureByFiles(
+            "cake5/src5/Controller/AppController.php",
+            "cake5/src5/Controller/MovieController.php",
+            "cake5/vendor/cakephp.php",
+        )
+    }
+
+    fun `test only dependencies of the view invalidate cached results`() {
+        myFixture.addFileToProject("cake5/templates/Movie/variable_array_test.php", "<?php\n")
+        val cache = project.getService(ViewVariableCache::class.java)
+        val tracker = project.getService(PhpFilesModificationTracker::class.java)
+        tracker.ensureArmed()
+        val lookups = AtomicInteger()
+        val isDefined = {
+            cache.isVariableDefined("Movie/variable_array_test", "movie", tracker) { key ->
+                lookups.incrementAndGet()
+                ViewVariableIndexService.variablesDefinedInViewPath(project, key)
+            }
+        }
+
+        assertTrue(isDefined())
+        assertTrue(isDefined())
+        assertEquals(1, lookups.get())
+
+        // Not a controller or template, so it can't affect the view
+        myFixture.addFileToProject("cake5/src5/Model/Table/GenresTable.php", """
+        <?php
+        namespace App\Model\Table;
+
+        class GenresTable extends \Cake\ORM\Table {
+        }
+        """.trimIndent())
+        assertTrue(isDefined())
+        assertEquals(1, lookups.get())
+
+        // Neither can a controller not rendering it
+        myFixture.addFileToProject("cake5/src5/Controller/GenresController.php", """
+        <?php
+        namespace App\Controller;
+
+        class GenresController extends AppController {
+            public function index() {
+                ${'$'}this->set('genres', []);
+            }
+        }
+        """.trimIndent())
+        assertTrue(isDefined())
+        assertEquals(1, lookups.get())
+
+        // The controller setting the variable does
+        val controllerFile = myFixture.findFileInTempDir("cake5/src5/Controller/MovieController.php")
+        val document = FileDocumentManager.getInstance().getDocument(controllerFile)!!
+        WriteCommandAction.runWriteCommandAction(project) {
+            document.insertString(document.textLength, "\n// changed\n")
+        }
+        PsiDocumentManager.getInstance(project).commitAllDocuments()
+        assertTrue(isDefined())
+        assertEquals(2, lookups.get())
+    }
+
+    fun `test changing the settings invalidates cached results`() {
+        myFixture.addFileToProject("cake5/templates/Movie/variable_array_test.php", "<?php\n")
+        val cache = project.getService(ViewVariableCache::class.java)
+        val tracker = project.getService(PhpFilesModificationTracker::class.java)
+        tracker.ensureArmed()
+        val lookups = AtomicInteger()
+        val isDefined = {
+            cache.isVariableDefined("Movie/variable_array_test", "movie", tracker) { key ->
+                lookups.incrementAndGet()
+                ViewVariableIndexService.variablesDefinedInViewPath(project, key)
+            }
+        }
+
+        assertTrue(isDefined())
+        assertEquals(1, lookups.get())
+
+        val settings = Settings.getInstance(project)
+        val newState = settings.state.copy()
+        newState.dataViewExtensions = listOf("json", "xml", "csv")
+        settings.loadState(newState)
+
+        assertTrue(isDefined())
+        assertEquals(2, lookups.get())
+        assertTrue(isDefined())
+        assertEquals(2, lookups.get())
+    }
+
+    fun `test all the checks in a view share one lookup`() {
+        myFixture.addFileToProject("cake5/templates/Movie/variable_array_test.php", "<?php\n")
+        val cache = project.getService(ViewVariableCache::class.java)
+        val tracker = project.getService(PhpFilesModificationTracker::class.java)
+        tracker.ensureArmed()
+        val lookups = AtomicInteger()
+        val isDefined = { name: String ->
+            cache.isVariableDefined("Movie/variable_array_test", name, tracker) { key ->
+                lookups.incrementAndGet()
+                ViewVariableIndexService.variablesDefinedInViewPath(project, key)
+            }
+        }
+
+        assertTrue(isDefined("movie"))
+        assertTrue(isDefined("director"))
+        assertTrue(isDefined("year"))
+        assertFalse(isDefined("studio"))
+        assertEquals(1, lookups.get())
+    }
+
+}
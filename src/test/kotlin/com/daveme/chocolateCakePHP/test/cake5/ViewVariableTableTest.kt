@@ -0,0 +1,71 @@
+package com.daveme.chocolateCakePHP.test.cake5
+
+import com.daveme.chocolateCakePHP.view.viewvariableindex.ViewVariableTable
+import com.daveme.chocolateCakePHP.view.viewvariableindex.ViewVariableTableService
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.psi.PsiDocumentManager
+
+class ViewVariableTableTest : Cake5BaseTestCase() {
+
+    override fun setUpTestFiles() {
+        myFixture.configureByFiles(
+            "cake5/src5/Controller/AppController.php",
+            "cake5/src5/Controller/MovieController.php",
+            "cake5/vendor/cakephp.php",
+        )
+    }
+
+    private fun tableFor(filenameKey: String): ViewVariableTable =
+        project.getService(ViewVariableTableService::class.java)
+            .tableInSmartReadAction(filenameKey)
+
+    fun `test static variables are listed with their types`() {
+        myFixture.addFileToProject("cake5/templates/Movie/array_variety_test.php", "<?php\n")
+
+        val table = tableFor("Movie/array_variety_test")
+        assertContainsElements(table.names, "title", "count", "total")
+        assertTrue(table.isDefined("count"))
+        assertFalse(table.isDefined("missing"))
+        assertTrue(table.typeOf("count").toString().contains("int"))
+        assertEmpty(table.typeOf("missing").types)
+    }
+
+    fun `test dynamic variables are defined`() {
+        myFixture.addFileToProject("cake5/templates/Movie/variable_array_test.php", "<?php\n")
+
+        val table = tableFor("Movie/variable_array_test")
+        assertTrue(table.isDefined("movie"))
+        assertTrue(table.isDefined("director"))
+        assertFalse(table.isDefined("studio"))
+    }
+
+    fun `test table is shared until a file it was built from changes`() {
+        myFixture.addFileToProject("cake5/templates/Movie/array_variety_test.php", "<?php\n")
+
+        val first = tableFor("Movie/array_variety_test")
+        assertSame(first, tableFor("Movie/array_variety_test"))
+
+        // Doesn't render the view, so the table is kept
+        myFixture.addFileToProject("cake5/src5/Controller/OtherController.php", """
+        <?php
+        namespace App\Controller;
+
+        class OtherController extends AppController {
+            public function index() {
+                ${'$'}this->set('other', 1);
+            }
+        }
+        """.trimIndent())
+        assertSame(first, tableFor("Movie/array_variety_test"))
+
+        val controllerFile = myFixture.findFileInTempDir("cake5/src5/Controller/MovieController.php")
+        val document = FileDocumentManager.getInstance().getDocument(controllerFile)!!
+        WriteCommandAction.runWriteCommandAction(project) {
+            document.insertString(document.textLength, "\n// changed\n")
+        }
+        PsiDocumentManager.getInstance(project).commitAllDocuments()
+        assertNotSame(first, tableFor("Movie/array_variety_test"))
+    }
+
+}
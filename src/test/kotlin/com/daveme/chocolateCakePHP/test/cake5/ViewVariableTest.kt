@@ -464,14 +464,8 @@ class ViewVariableTest: Cake5BaseTestCase() {
         myFixture.checkHighlighting(true, false, false)
     }
 
-    // Phase 4: VARIABLE_PAIR pattern
-    // Note: The indexer currently does not create VARIABLE_PAIR entries.
-    // When $this->set($key, $val) is encountered with both parameters as variables,
-    // it creates MIXED_TUPLE instead. The extraction code is in place for VARIABLE_PAIR,
-    // but it won't be triggered until the indexer is updated or MIXED_TUPLE (Phase 5) is implemented.
-
-    // Phase 5: MIXED_TUPLE pattern
-    fun `test MIXED_TUPLE pattern suppresses undefined variable warnings`() {
+    // VARIABLE_PAIR pattern: $this->set($key, $val) where $key = 'studio'
+    fun `test VARIABLE_PAIR pattern suppresses undefined variable warnings`() {
         myFixture.enableInspections(com.jetbrains.php.lang.inspections.PhpUndefinedVariableInspection::class.java)
 
         myFixture.addFileToProject("cake5/templates/Movie/variable_pair_test.php", """